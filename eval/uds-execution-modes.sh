@@ -0,0 +1,29 @@
+#! /usr/bin/env bash
+
+# Compares the UDS execution modes (-Duds.executionMode) on the LU_1000_LU and C250 request profiles with UDSTester.
+# Run from the repository root after building with ant. Prints one line per mode, profile and repetition with the
+# throughput of every primary configuration, in requests/s.
+#
+# Virtual threads need Java 21+. On older JVMs the virtual mode falls back to the cached thread pool, so it is skipped.
+#
+# Usage: eval/uds-execution-modes.sh [repetitions]
+
+REPS=${1:-2}
+CP=${CP:-"dist/BFT-SMaRt.jar:lib/*"}
+
+MODES="cached pooled"
+JAVA_MAJOR=$(java -version 2>&1 | head -1 | sed -E 's/.*version "(1\.)?([0-9]+).*/\2/')
+if [ "$JAVA_MAJOR" -ge 21 ]; then
+    MODES="$MODES virtual"
+else
+    echo "Java $JAVA_MAJOR does not support virtual threads, skipping the virtual execution mode" >&2
+fi
+
+for rep in $(seq 1 "$REPS"); do
+    for mode in $MODES; do
+        java -Duds.executionMode="$mode" -cp "$CP" de.uniulm.vs.art.uds.UDSTester 100000 1000 2 true LU 2>/dev/null \
+            | tail -1 | sed "s/^/$mode LU_1000_LU: /"
+        java -Duds.executionMode="$mode" -cp "$CP" de.uniulm.vs.art.uds.UDSTester 100000 250 2 true C 2>/dev/null \
+            | tail -1 | sed "s/^/$mode C250: /"
+    done
+done
@@ -0,0 +1,179 @@
+package de.optscore.reconfiguration.cpu;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+/**
+ * Binds threads to CPU cores on Linux hosts without native code: the kernel
+ * thread id of the calling thread is read from /proc/thread-self, and the
+ * affinity is set with the taskset utility (sched_setaffinity). Where this is
+ * not possible (other operating systems, no taskset, not permitted), pinning
+ * is a no-op.
+ */
+public final class LinuxThreadAffinity {
+
+	private static final Logger logger = Logger
+			.getLogger(LinuxThreadAffinity.class.getName());
+
+	private static final Path THREAD_SELF = Paths.get("/proc/thread-self");
+
+	private static final Path ONLINE_CPUS = Paths
+			.get(LinuxCpuCore.CPU_DIRECTORY.toString(), "online");
+
+	private static final Path POSSIBLE_CPUS = Paths
+			.get(LinuxCpuCore.CPU_DIRECTORY.toString(), "possible");
+
+	private static final long TASKSET_TIMEOUT_MS = 5000;
+
+	private static final File DEV_NULL = new File("/dev/null");
+
+	/**
+	 * Whether pinning works on this host, determined once on first use
+	 */
+	private static class SupportHolder {
+		static final boolean supported = checkSupport();
+	}
+
+	private LinuxThreadAffinity() {
+	}
+
+	/**
+	 * @return true if threads can be pinned to cores on this host
+	 */
+	public static boolean isSupported() {
+		return SupportHolder.supported;
+	}
+
+	/**
+	 * Returns the kernel thread id of the calling thread.
+	 *
+	 * @return the thread id, or -1 if it cannot be determined
+	 */
+	public static int currentThreadId() {
+		try {
+			Path task = Files.readSymbolicLink(THREAD_SELF);
+			return Integer.parseInt(task.getFileName().toString());
+		} catch (IOException | UnsupportedOperationException
+				| NumberFormatException e) {
+			return -1;
+		}
+	}
+
+	/**
+	 * Binds a thread to a single core. Does nothing if pinning is not
+	 * supported on this host.
+	 *
+	 * @param threadId
+	 *            kernel thread id, see {@link #currentThreadId()}
+	 * @param cpu
+	 *            index of the core
+	 * @return true if the thread has been pinned
+	 */
+	public static boolean pin(int threadId, int cpu) {
+		if (!isSupported() || threadId < 0) {
+			return false;
+		}
+		return taskset("-p", "-c", Integer.toString(cpu),
+				Integer.toString(threadId));
+	}
+
+	/**
+	 * Returns the indices of the cores that are currently online, as listed
+	 * in /sys/devices/system/cpu/online (e.g. "0-3,6").
+	 *
+	 * @return the online cores in ascending order, or the cores
+	 *         0..availableProcessors-1 if the list cannot be read
+	 */
+	public static int[] onlineCpus() {
+		try {
+			String list = new String(Files.readAllBytes(ONLINE_CPUS),
+					StandardCharsets.US_ASCII).trim();
+			return parseCpuList(list);
+		} catch (IOException | NumberFormatException e) {
+			int[] cpus = new int[Runtime.getRuntime().availableProcessors()];
+			for (int i = 0; i < cpus.length; i++) {
+				cpus[i] = i;
+			}
+			return cpus;
+		}
+	}
+
+	/**
+	 * Returns the indices of all cores that can ever be online, as listed in
+	 * /sys/devices/system/cpu/possible.
+	 *
+	 * @return the possible cores in ascending order, or the online cores if
+	 *         the list cannot be read
+	 */
+	public static int[] possibleCpus() {
+		try {
+			String list = new String(Files.readAllBytes(POSSIBLE_CPUS),
+					StandardCharsets.US_ASCII).trim();
+			return parseCpuList(list);
+		} catch (IOException | NumberFormatException e) {
+			return onlineCpus();
+		}
+	}
+
+	private static int[] parseCpuList(String list) {
+		int[] cpus = new int[16];
+		int count = 0;
+		for (String range : list.split(",")) {
+			if (range.isEmpty()) {
+				continue;
+			}
+			int dash = range.indexOf('-');
+			int first = Integer.parseInt(dash < 0 ? range : range.substring(0, dash));
+			int last = dash < 0 ? first : Integer.parseInt(range.substring(dash + 1));
+			for (int cpu = first; cpu <= last; cpu++) {
+				if (count == cpus.length) {
+					cpus = Arrays.copyOf(cpus, count * 2);
+				}
+				cpus[count++] = cpu;
+			}
+		}
+		return Arrays.copyOf(cpus, count);
+	}
+
+	private static boolean checkSupport() {
+		int threadId = currentThreadId();
+		if (threadId < 0) {
+			logger.info("Cannot determine kernel thread ids, thread affinity is disabled");
+			return false;
+		}
+		// reading the affinity of a thread works if taskset is installed and may be used
+		if (!taskset("-p", Integer.toString(threadId))) {
+			logger.info("taskset is not available, thread affinity is disabled");
+			return false;
+		}
+		return true;
+	}
+
+	private static boolean taskset(String... args) {
+		String[] command = new String[args.length + 1];
+		command[0] = "taskset";
+		System.arraycopy(args, 0, command, 1, args.length);
+		try {
+			Process process = new ProcessBuilder(command)
+					.redirectErrorStream(true)
+					.redirectOutput(DEV_NULL).start();
+			if (!process.waitFor(TASKSET_TIMEOUT_MS, TimeUnit.MILLISECONDS)) {
+				process.destroy();
+				return false;
+			}
+			return process.exitValue() == 0;
+		} catch (IOException e) {
+			return false;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return false;
+		}
+	}
+}
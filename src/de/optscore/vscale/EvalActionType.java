@@ -12,7 +12,17 @@ public enum EvalActionType {
     RECONFIG_UDS_STEPS(8),
     STATS_START(9),
     STATS_DUMP(10),
-    ByTI(11);
+    ByTI(11),
+    READ_LOCK(12),
+    READ_UNLOCK(13),
+    WRITE_LOCK(14),
+    WRITE_UNLOCK(15),
+    FORK(16);
+
+    /**
+     * values() returns a new copy of the array on every call
+     */
+    private static final EvalActionType[] TYPES = values();
 
     private final int actionTypeCode;
 
@@ -23,4 +33,13 @@ public enum EvalActionType {
     public int getActionTypeCode() {
         return actionTypeCode;
     }
+
+    /**
+     * @param actionTypeCode the code of an action type
+     * @return the action type with the given code
+     * @throws ArrayIndexOutOfBoundsException if there is no action type with the given code
+     */
+    public static EvalActionType fromCode(int actionTypeCode) {
+        return TYPES[actionTypeCode];
+    }
 }
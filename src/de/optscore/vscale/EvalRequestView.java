@@ -0,0 +1,65 @@
+package de.optscore.vscale;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Read-only view of a serialized {@link EvalRequest} (action|parameter|action|parameter|...), as delivered to the
+ * replicas. The actions are decoded in place from the request's bytes when they are accessed, so the request is not
+ * copied and reading it does not allocate. A view is created once per delivered request and handed on to its
+ * execution; it has no read position, so several threads can read it at the same time.
+ */
+public final class EvalRequestView {
+
+    private static final int ACTION_BYTES = 8;
+
+    private final ByteBuffer buffer;
+
+    private final int size;
+
+    private EvalRequestView(ByteBuffer buffer) {
+        this.buffer = buffer;
+        this.size = buffer.limit() / ACTION_BYTES;
+    }
+
+    /**
+     * Creates a view of a serialized request without copying it
+     *
+     * @param command the serialized request, see {@link EvalRequest#serializeEvalRequest(EvalRequest)}
+     * @return the view of the request
+     */
+    public static EvalRequestView wrap(byte[] command) {
+        return new EvalRequestView(ByteBuffer.wrap(command));
+    }
+
+    /**
+     * @return the number of actions in the request; trailing bytes not making up a whole action are ignored
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @param i index of the action
+     * @return the code of the i-th action, see {@link EvalActionType#getActionTypeCode()}
+     */
+    public int actionCode(int i) {
+        return buffer.getInt(i * ACTION_BYTES);
+    }
+
+    /**
+     * @param i index of the action
+     * @return the type of the i-th action
+     * @throws IndexOutOfBoundsException if the request has no i-th action or its code is unknown
+     */
+    public EvalActionType actionType(int i) {
+        return EvalActionType.fromCode(actionCode(i));
+    }
+
+    /**
+     * @param i index of the action
+     * @return the parameter of the i-th action
+     */
+    public int parameter(int i) {
+        return buffer.getInt(i * ACTION_BYTES + 4);
+    }
+}
@@ -26,6 +26,15 @@ package de.optscore.vscale;
     *         <b>request profile 5</b>
     *         - LU 250 LU (lock and unlock 1 out of 1 Locks, simluate load 250µs, lock and unlock the Lock again)
     *     </li>
+    *     <li>
+    *         <b>request profile 12</b>
+    *         - R90 W10 250 (read-lock 1 out of 1 ReadWriteLocks in 90% of the requests and write-lock it in 10% of
+    *         them, simulate load 250µs, unlock the ReadWriteLock)
+    *     </li>
+    *     <li>
+    *         <b>request profile 13</b>
+    *         - F4 1000 (simulate load 1000µs, split across the request's UDS thread and 3 forked UDS threads)
+    *     </li>
  * </ul>
  */
 public enum RequestProfile {
@@ -40,7 +49,9 @@ public enum RequestProfile {
     LU_250_X3(8),
     L_250_U_LU(9),
     C250_L_50_U_LU(10),
-    LU_500_LU(11);
+    LU_500_LU(11),
+    R90_W10_250(12),
+    F4_1000(13);
 
     private final int profileId;
 
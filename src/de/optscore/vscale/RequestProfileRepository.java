@@ -11,6 +11,8 @@ public class RequestProfileRepository {
 
     private EvalRequest[] repository;
     private EvalRequest[] workload3Reqs;
+    private EvalRequest readRequest;
+    private EvalRequest writeRequest;
     private Random random;
 
     /**
@@ -41,6 +43,11 @@ public class RequestProfileRepository {
      *         <b>request profile 5</b>
      *         - LU_250_LU (lock and unlock 1 out of 1 Locks, simluate load 250µs, lock and unlock the Lock)
      *     </li>
+     *     <li>
+     *         <b>request profile 12</b>
+     *         - R90_W10_250 (read-lock (90%) or write-lock (10%) 1 out of 1 ReadWriteLocks, simulate load 250µs,
+     *         unlock the ReadWriteLock)
+     *     </li>
      * </ul>
      */
     public RequestProfileRepository() {
@@ -62,6 +69,18 @@ public class RequestProfileRepository {
                     .build();
         }
 
+        // for requestProfile 12 we randomly pick a reading or a writing request
+        this.readRequest = new EvalRequest.EvalRequestBuilder()
+                .action(EvalActionType.READ_LOCK.getActionTypeCode(), 0)
+                .action(EvalActionType.SIMULATELOAD.getActionTypeCode(), 250000)
+                .action(EvalActionType.READ_UNLOCK.getActionTypeCode(), 0)
+                .build();
+        this.writeRequest = new EvalRequest.EvalRequestBuilder()
+                .action(EvalActionType.WRITE_LOCK.getActionTypeCode(), 0)
+                .action(EvalActionType.SIMULATELOAD.getActionTypeCode(), 250000)
+                .action(EvalActionType.WRITE_UNLOCK.getActionTypeCode(), 0)
+                .build();
+
         // populate the repository
         repository[RequestProfile.NOOP.getProfileId()] =
                 new EvalRequest.EvalRequestBuilder().action(EvalActionType.READONLY.getActionTypeCode(), 0).build();
@@ -129,11 +148,18 @@ public class RequestProfileRepository {
                 .action(EvalActionType.LOCK.getActionTypeCode(), 1)
                 .action(EvalActionType.UNLOCK.getActionTypeCode(), 1)
                 .build();
+        repository[RequestProfile.F4_1000.getProfileId()] = new EvalRequest.EvalRequestBuilder()
+                .action(EvalActionType.FORK.getActionTypeCode(), 4)
+                .action(EvalActionType.SIMULATELOAD.getActionTypeCode(), 1000000)
+                .build();
+        repository[RequestProfile.R90_W10_250.getProfileId()] = null; // request profile 12 is randomized, see getRequestByProfileId() method
     }
 
     public EvalRequest getRequestForProfile(RequestProfile profile) {
         if(profile.getProfileId() == 3) {
             return workload3Reqs[random.nextInt(workload3Reqs.length)];
+        } else if(profile.getProfileId() == 12) {
+            return random.nextInt(10) == 0 ? writeRequest : readRequest;
         } else {
             return repository[profile.getProfileId()];
         }
@@ -7,6 +7,7 @@ import de.optscore.vscale.coordination.PlaybookAction;
 import de.optscore.vscale.coordination.TestcaseCoordinator;
 import de.optscore.vscale.coordination.WorkloadPlaybook;
 import de.optscore.vscale.util.BufferedStatsWriter;
+import de.optscore.vscale.util.ColumnarStatsWriter;
 import de.optscore.vscale.util.TestcaseSyncClient;
 
 import java.io.*;
@@ -142,7 +143,7 @@ public class ClientWorker implements Runnable {
             // prepare output folders for raw data
             String clientOutputPath = "eval-output-clients/" + testcaseId + "/run" + runNumber + "/";
             if(new File(clientOutputPath).mkdirs()) {
-                logger.info("Created output directory for raw client stats CSV files");
+                logger.info("Created output directory for raw client stats files");
             } else {
                 logger.finer("Could not create new directory for stats file dumps. Directory either already " +
                         "existed or permissions are incorrect.");
@@ -151,8 +152,11 @@ public class ClientWorker implements Runnable {
             // create a ClientGroupManager, which takes care of ClientGroups, with a BufferedWriter for stats logging
             this.clientGroupManager = new ClientGroupManager(minPid, maxPid,
                     new BufferedStatsWriter(clientOutputPath
-                            + "clientstats-" + machineId + "-" + machineIP + ".csv",
-                            new String[]{"clientPid", "opId", "sentTimeNs", "receivedTimeNs"}));
+                            + "clientstats-" + machineId + "-" + machineIP + ColumnarStatsWriter.FILE_EXTENSION,
+                            new String[]{"clientPid", "opId", "sentTimeNs", "receivedTimeNs"},
+                            new ColumnarStatsWriter.ColumnType[]{ColumnarStatsWriter.ColumnType.INT,
+                                    ColumnarStatsWriter.ColumnType.INT, ColumnarStatsWriter.ColumnType.LONG,
+                                    ColumnarStatsWriter.ColumnType.LONG}));
 
             // get all playbookActions for this machine and add them to a playbook
             playbookReader.lines()
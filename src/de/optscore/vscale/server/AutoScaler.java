@@ -1,5 +1,24 @@
 package de.optscore.vscale.server;
 
+import de.uniulm.vs.art.uds.DeterministicSchedulers;
+import de.uniulm.vs.art.uds.UDSOptions;
+import de.uniulm.vs.art.uds.UDScheduler;
+
 public interface AutoScaler {
+
+    /**
+     * The fewest primaries an AutoScaler may choose. 0 primaries means sequential execution without UDS threads,
+     * which only the classic scheduler supports (see {@link UDScheduler#requestReconfigurationPrimaries(int)}).
+     */
+    int MIN_PRIMARIES = UDSOptions.CLASSIC_SCHEDULER ? 0 : 1;
+
     public void decideScaling(int byTIId, int reqCounter, boolean imprecise);
+
+    /**
+     * @return the number of primaries UDS currently runs with, 0 during sequential execution
+     */
+    static int currentPrimaries() {
+        return UDSOptions.CLASSIC_SCHEDULER && UDScheduler.isSequentialExecution() ? 0 :
+                DeterministicSchedulers.getInstance().getCurrentUDSConfigurationPrimaries();
+    }
 }
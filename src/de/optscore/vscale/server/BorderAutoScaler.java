@@ -1,14 +1,15 @@
 package de.optscore.vscale.server;
 
-import de.uniulm.vs.art.uds.UDSLock;
-import de.uniulm.vs.art.uds.UDScheduler;
+import de.uniulm.vs.art.uds.DeterministicSchedulers;
 
 import java.util.Arrays;
+import java.util.concurrent.locks.Lock;
 import java.util.logging.Logger;
 
 public class BorderAutoScaler implements AutoScaler {
     private static final Logger logger = Logger.getLogger(BorderAutoScaler.class.getName());
 
+    // indexed by the number of primaries, from 0 (sequential execution) to maxPrimaries
     private int[] maxSeenRequestsPerPrim;
     private double b;
     private boolean recentlyReconfigured;
@@ -23,14 +24,14 @@ public class BorderAutoScaler implements AutoScaler {
     private final double scalingMargin = 0.9;
     private final double scalingFactor = 0.9;
 
-    private final UDSLock scalingLock;
+    private final Lock scalingLock;
 
     public BorderAutoScaler() {
-        this(8, new UDSLock(555));
+        this(8, DeterministicSchedulers.getInstance().newLock(555));
     }
 
-    public BorderAutoScaler(int maxPrimaries, UDSLock scalingLock) {
-        this.maxSeenRequestsPerPrim = new int[maxPrimaries];
+    public BorderAutoScaler(int maxPrimaries, Lock scalingLock) {
+        this.maxSeenRequestsPerPrim = new int[maxPrimaries + 1];
         Arrays.fill(this.maxSeenRequestsPerPrim, 0);
         // arbitrarily chosen high value for b (much larger than usual r)
         this.b = 1000000;
@@ -51,7 +52,7 @@ public class BorderAutoScaler implements AutoScaler {
         scalingLock.lock();
         try {
 
-            int currentPrimaries = UDScheduler.getInstance().getCurrentUDSConfigurationPrimaries();
+            int currentPrimaries = AutoScaler.currentPrimaries();
 
             // if there was a reconfiguration in the last ByTI, discard this ByTI measurement and continue in the next ByTI
             if(recentlyReconfigured) {
@@ -68,28 +69,30 @@ public class BorderAutoScaler implements AutoScaler {
             }
 
             // then check if b has to be updated
-            if(reqCounter > maxSeenRequestsPerPrim[currentPrimaries - 1]) {
+            if(reqCounter > maxSeenRequestsPerPrim[currentPrimaries]) {
                 // update maxSeenRequestsPerPrim for this primary count, then reset the stableCounter, return immediately
-                maxSeenRequestsPerPrim[currentPrimaries - 1] = reqCounter;
+                maxSeenRequestsPerPrim[currentPrimaries] = reqCounter;
                 this.throughputStableCounter = 0;
                 return;
-            } else if(reqCounter > this.scalingMargin * maxSeenRequestsPerPrim[currentPrimaries - 1]) {
+            } else if(reqCounter > this.scalingMargin * maxSeenRequestsPerPrim[currentPrimaries]) {
                 // reqCounter is between 0.9max[p] and max[p]. Increase the count of how often this happened already
                 this.throughputStableCounter++;
                 // if we have been within the scalingMargin for scalingTimeFactor times, then re-calculate b
                 if(this.throughputStableCounter >= this.scalingTimeFactor) {
-                    this.b = (this.scalingFactor * maxSeenRequestsPerPrim[currentPrimaries - 1]
-                            * 2 / currentPrimaries);
+                    this.b = (this.scalingFactor * maxSeenRequestsPerPrim[currentPrimaries]
+                            * 2 / Math.max(1, currentPrimaries));
                 }
             } else {
                 this.throughputStableCounter = 0;
             }
 
             // then see whether we are at a border and should reconfigure to a new number of primaries
-            int newP = Math.min(Math.max(1, (int) Math.ceil(2 * reqCounter / this.b)), maxSeenRequestsPerPrim.length);
+            // (0 primaries, i.e. sequential execution, if there were no requests at all)
+            int newP = Math.min(Math.max(MIN_PRIMARIES, (int) Math.ceil(2 * reqCounter / this.b)),
+                    maxSeenRequestsPerPrim.length - 1);
             if(newP != currentPrimaries) {
                 // reconfigure
-                UDScheduler.getInstance().requestReconfigurationPrimaries(newP);
+                DeterministicSchedulers.requestReconfigurationPrimaries(newP);
                 this.throughputStableCounter = 0;
                 this.recentlyReconfigured = true;
             }
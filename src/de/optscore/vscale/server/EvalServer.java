@@ -3,32 +3,38 @@ package de.optscore.vscale.server;
 import bftsmart.tom.MessageContext;
 import bftsmart.tom.ServiceReplica;
 import bftsmart.tom.server.defaultservices.DefaultSingleRecoverable;
-import com.sun.management.UnixOperatingSystemMXBean;
 import de.optscore.reconfiguration.cpu.CpuCore;
 import de.optscore.reconfiguration.cpu.CpuReconfigurationException;
 import de.optscore.reconfiguration.cpu.CpuReconfigurator;
 import de.optscore.reconfiguration.cpu.LinuxCpuReconfigurator;
 import de.optscore.vscale.EvalActionType;
+import de.optscore.vscale.EvalRequestView;
 import de.optscore.vscale.client.ClientWorker;
 import de.optscore.vscale.server.byti.ByTIManager;
 import de.optscore.vscale.util.BufferedStatsWriter;
-import de.optscore.vscale.util.CSVWriter;
+import de.optscore.vscale.util.ColumnarStatsWriter;
+import de.optscore.vscale.util.EvalReqStatsRecorder;
 import de.optscore.vscale.util.EvalReqStatsServer;
+import de.uniulm.vs.art.uds.DeterministicScheduler;
+import de.uniulm.vs.art.uds.DeterministicSchedulers;
 import de.uniulm.vs.art.uds.DummySharedState;
+import de.uniulm.vs.art.uds.UDSAffinity;
 import de.uniulm.vs.art.uds.UDSLock;
+import de.uniulm.vs.art.uds.UDSOptions;
+import de.uniulm.vs.art.uds.UDSPartitions;
 import de.uniulm.vs.art.uds.UDScheduler;
+import de.uniulm.vs.art.uds.UDSTask;
 
-import java.io.ByteArrayInputStream;
-import java.io.DataInputStream;
 import java.io.File;
 import java.io.IOException;
-import java.lang.management.ManagementFactory;
+import java.nio.file.Paths;
 import java.util.*;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
-import java.util.concurrent.LinkedBlockingDeque;
 import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
 import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.util.stream.Collectors;
@@ -48,10 +54,17 @@ public class EvalServer extends DefaultSingleRecoverable {
      */
     private final List<DummySharedState> sharedStates;
     private final List<Lock> locks;
+    private final List<ReadWriteLock> readWriteLocks;
     private final boolean withUDS;
 
     public static final long BENCHMARK_NANOTIME_OFFSET = (System.currentTimeMillis() * 1000000) - System.nanoTime();
 
+    /**
+     * Number of shared states, locks and read-write locks clients can use
+     */
+    private static final int SHARED_STATE_COUNT = 32;
+    private static final int LOCK_COUNT = 32;
+
     // measured on lab-machines used for SRDS20-paper, a CPULoadNanos loop takes ~5000ns
     private static final long calibratedLoadDuration = 5000;
 
@@ -69,16 +82,28 @@ public class EvalServer extends DefaultSingleRecoverable {
      * Stats logging stuff
      */
     public EvalReqStatsServer[][] runStats = null;
-    private Map<Long, Double> cpuStats = null;
 
-    private final UnixOperatingSystemMXBean statsBean;
+    /**
+     * Per-core CPU and scheduler telemetry, sampled between STATS_START and STATS_DUMP. Null if /proc is not available.
+     */
+    private TelemetryCollector telemetryCollector;
+
     private final ExecutorService utilityPool = Executors.newCachedThreadPool();
 
     private BufferedStatsWriter byTIStatsWriter;
     private BufferedStatsWriter rawByTIStatsWriter;
-    private BufferedStatsWriter evalReqStatsWriter;
+    private BufferedStatsWriter udsMetricsWriter;
+    private BufferedStatsWriter udsLockMetricsWriter;
 
-    private final LinkedBlockingDeque<EvalReqStatsServer> evalReqStatsServerDeque;
+    /**
+     * Writes the stats of completed requests to disk in the background, null if the file could not be created
+     */
+    private EvalReqStatsRecorder evalReqStatsRecorder;
+
+    /**
+     * Number of completed requests whose stats can be buffered before the recorder drops them
+     */
+    private static final int EVAL_REQ_STATS_CAPACITY = 1 << 16;
 
     /**
      * Logging
@@ -110,8 +135,8 @@ public class EvalServer extends DefaultSingleRecoverable {
             System.exit(1);
         }
 
-        int sharedStateCount = 32;
-        int lockCount = 32;
+        int sharedStateCount = SHARED_STATE_COUNT;
+        int lockCount = LOCK_COUNT;
         // create sharedStates EvalClients can use, which always means: lock the state's inherent UDSLock, add
         // modifying thread's name to state's internal StringList, unlock
         this.sharedStates = new ArrayList<>(sharedStateCount + 1);
@@ -123,8 +148,9 @@ public class EvalServer extends DefaultSingleRecoverable {
         // create Locks EvalClients can lock/unlock however they want
         this.locks = new ArrayList<>(lockCount + 1);
         if(withUDS) {
+            DeterministicScheduler scheduler = DeterministicSchedulers.getInstance();
             for(int i = 0; i < lockCount; i++) {
-                locks.add(new UDSLock(i));
+                locks.add(scheduler.newLock(i));
             }
         } else {
             for(int i = 0; i < lockCount; i++) {
@@ -132,19 +158,55 @@ public class EvalServer extends DefaultSingleRecoverable {
             }
         }
 
+        // create ReadWriteLocks EvalClients can read-/write-lock and unlock however they want
+        this.readWriteLocks = new ArrayList<>(lockCount + 1);
+        for(int i = 0; i < lockCount; i++) {
+            if(withUDS) {
+                // ids after the ones of the plain locks, so both can be told apart in traces and metrics
+                readWriteLocks.add(DeterministicSchedulers.getInstance().newReadWriteLock(lockCount + i));
+            } else {
+                readWriteLocks.add(new ReentrantReadWriteLock());
+            }
+        }
+
         // for logging CPU stats
-        this.statsBean = (UnixOperatingSystemMXBean) ManagementFactory
-                .getOperatingSystemMXBean();
+        try {
+            telemetryCollector = new TelemetryCollector(
+                    () -> withUDS ? DeterministicSchedulers.getInstance().getCurrentRoundNumber() : -1,
+                    () -> byTIManager != null && byTIManager.isByTIStarted() ? byTIManager.getByTIId() : -1,
+                    () -> withUDS ? AutoScaler.currentPrimaries() : -1);
+        } catch(IOException e) {
+            logger.warning("Cannot sample CPU telemetry on this host: " + e.getMessage());
+        }
 
         // individual request profiling
-        this.evalReqStatsServerDeque = new LinkedBlockingDeque<>();
-        evalReqStatsWriter = new BufferedStatsWriter(replicaOutputPath
-                + "replicastats-evalReqServer-" + id + ".csv",
-                new String[]{"currentTimeNs", "reqReceivedInServiceReplica", "reqSubmittedtoUDS",
-                        "reqStartedExecution", "reqEndedExecution", "reqFullyCompletedAndSentBackReply"});
+        // binary, convert with EvalReqStatsConverter
+        try {
+            evalReqStatsRecorder = new EvalReqStatsRecorder(Paths.get(replicaOutputPath
+                    + "replicastats-evalReqServer-" + id + ".bin"), EVAL_REQ_STATS_CAPACITY, BENCHMARK_NANOTIME_OFFSET);
+            Runtime.getRuntime().addShutdownHook(new Thread(evalReqStatsRecorder::close));
+        } catch(IOException e) {
+            e.printStackTrace();
+            logger.severe("Could not create the request stats file, request stats will not be recorded");
+        }
+
+        // UDS runtime metrics, written periodically
+        if(withUDS && UDSOptions.CLASSIC_SCHEDULER && UDSOptions.METRICS) {
+            udsMetricsWriter = new BufferedStatsWriter(replicaOutputPath
+                    + "replicastats-udsMetrics-" + id + ".csv",
+                    new String[]{"currentTimeNs", "partition", "round", "threadsTerminated", "roundDurationMeanNs",
+                            "roundDurationP50Ns", "roundDurationP99Ns", "roundDurationMaxNs", "idlePrimaries",
+                            "idlePrimaryTimeNs", "wastedSteps", "admissionWaits", "admissionWaitTimeNs"});
+            udsLockMetricsWriter = new BufferedStatsWriter(replicaOutputPath
+                    + "replicastats-udsLocks-" + id + ".csv",
+                    new String[]{"currentTimeNs", "lockId", "acquisitions", "waitTimeMeanNs", "waitTimeP99Ns",
+                            "waitTimeMaxNs", "holdTimeMeanNs", "holdTimeP99Ns", "holdTimeMaxNs"});
+            utilityPool.submit(this::writeUDSMetricsPeriodically);
+        }
 
         // TODO deal with recovery/snapshots, etc
         if(withUDS) {
+            logger.info("Using " + UDSOptions.SCHEDULER + " UDS scheduler");
             serviceReplica = new UDSServiceReplica(id, this, this);
         } else {
             serviceReplica = new ServiceReplica(id, this, this);
@@ -157,8 +219,13 @@ public class EvalServer extends DefaultSingleRecoverable {
                         "imprecise",
                         "byTICloseTime"});
         rawByTIStatsWriter = new BufferedStatsWriter(replicaOutputPath
-                + "replicastats-rawByTI-" + id + ".csv",
-                new String[]{"currentTimeNs", "senderId", "globalReqSequence", "tickReqCounter", "consensusId"});
+                + "replicastats-rawByTI-" + id + ColumnarStatsWriter.FILE_EXTENSION,
+                new String[]{"currentTimeNs", "senderId", "globalReqSequence", "tickReqCounter", "consensusId"},
+                new ColumnarStatsWriter.ColumnType[]{ColumnarStatsWriter.ColumnType.LONG,
+                        ColumnarStatsWriter.ColumnType.INT, ColumnarStatsWriter.ColumnType.LONG,
+                        ColumnarStatsWriter.ColumnType.INT, ColumnarStatsWriter.ColumnType.INT});
+        // the rows of the last chunk of a columnar file are only written when it is closed
+        Runtime.getRuntime().addShutdownHook(new Thread(rawByTIStatsWriter::close));
         new Thread(() -> {
             try {
                 Thread.sleep(10 * 1000);
@@ -177,27 +244,15 @@ public class EvalServer extends DefaultSingleRecoverable {
 
     @Override
     public byte[] executeOrdered(byte[] command, MessageContext msgCtx) {
-        // check whether there are any evalReqStats we can log to disk
-        while(!evalReqStatsServerDeque.isEmpty()) {
-            EvalReqStatsServer stats = evalReqStatsServerDeque.pollFirst();
-            if(stats != null) {
-                evalReqStatsWriter.writeEvalReqStatsServer(System.nanoTime() + BENCHMARK_NANOTIME_OFFSET, stats);
-            } else {
-                break;
-            }
-        }
-        // TODO workaround to flush stuff to disk periodically before server is shutdown externally
-        if(msgCtx.getGlobalReqSequence() % 200 == 0) {
-            evalReqStatsWriter.flush();
-        }
-
-        ByteArrayInputStream bis = new ByteArrayInputStream(command);
-        DataInputStream dis = new DataInputStream(bis);
+        return executeOrdered(EvalRequestView.wrap(command), msgCtx);
+    }
 
+    /**
+     * Executes a request whose actions have already been decoded on delivery, see {@link UDSServiceReplica}
+     */
+    public byte[] executeOrdered(EvalRequestView request, MessageContext msgCtx) {
         try {
-            // intCount = number of bytes / 4 in byte array
-            // intCount / 2 is the number of commands (per command: 1 int for command, 1 int for parameter)
-            int cmdCount = dis.available() / 4 / 2;
+            int cmdCount = request.size();
 
             // Rebuild and execute actions array from EvalClient
             StringBuilder actionLog = null;
@@ -206,77 +261,75 @@ public class EvalServer extends DefaultSingleRecoverable {
                         "actions from Client " + msgCtx.getSender() + ": [ ");
             }
 
+            // with pipelined rounds, the UDS thread leaves its round before the lock-free remainder of the request
+            int detachAt = withUDS && UDSOptions.PIPELINED_ROUNDS && UDScheduler.getCurrentUDSThread() != null ?
+                    lockFreeRemainder(request) : -1;
+
             int action;
             int parameter;
+            // number of UDS threads simulated load is split across, see FORK
+            int loadThreads = 1;
             boolean badRequest = false;
             byte[] reply = new byte[1];
             for(int i = 0; i < cmdCount; i++) {
-                action = dis.readInt();
-                parameter = dis.readInt();
+                if(i == detachAt) {
+                    UDScheduler.detachCurrentThread();
+                }
+                action = request.actionCode(i);
+                parameter = request.parameter(i);
                 if(logger.isLoggable(Level.FINER)) {
                     actionLog.append(action).append(',').append(parameter);
                     if(i != cmdCount - 1) actionLog.append(" | ");
                 }
 
                 // extract the request type
-                EvalActionType actionType = EvalActionType.values()[action];
+                EvalActionType actionType = EvalActionType.fromCode(action);
 
                 // handle the request
                 switch(actionType) {
                     case LOCK:
-                        // TODO temporary hack to start baseload when the test case starts
-                        //  only works on test cases with locking requests (like LU1000LU)
-                        // Start the byTIManagers with a slight delay depending on replicaID (phase shifted)
-                        if(!byTIManager.isByTIStarted()) {
-                            byTIManager.startByTI(serviceReplica.getId() * byTIManager.getCurrentByTITickrateMs() / 7);
-                            logger.info("Received the first request with LOCK from " + msgCtx.getSender() + ". " +
-                                    "Started ByTIManager.");
-                        }
-
+                        startByTIOnFirstLock(actionType, msgCtx);
                         badRequest = lockDummyLock(parameter);
                         break;
                     case UNLOCK:
                         badRequest = unlockDummyUDSLock(parameter);
                         break;
+                    case READ_LOCK:
+                        startByTIOnFirstLock(actionType, msgCtx);
+                        badRequest = lockDummyReadWriteLock(parameter, false);
+                        break;
+                    case READ_UNLOCK:
+                        badRequest = unlockDummyReadWriteLock(parameter, false);
+                        break;
+                    case WRITE_LOCK:
+                        startByTIOnFirstLock(actionType, msgCtx);
+                        badRequest = lockDummyReadWriteLock(parameter, true);
+                        break;
+                    case WRITE_UNLOCK:
+                        badRequest = unlockDummyReadWriteLock(parameter, true);
+                        break;
                     case ADDTOSHAREDSTATE:
                         badRequest = addToSharedState(parameter);
                         break;
                     case SIMULATELOAD:
-                        if(parameter > 0) {
+                        if(parameter > 0 && loadThreads > 1) {
+                            simulateForkedCPULoadNanos(parameter, loadThreads);
+                        } else if(parameter > 0) {
                             simulateCPULoadNanos(parameter);
                         }
                         break;
+                    case FORK:
+                        loadThreads = Math.max(1, parameter);
+                        break;
                     case READONLY:
                         // do nothing
                         reply = new byte[]{0};
                         break;
                     case STATS_START:
-                        // start CPU logging thread
-                        cpuStats = new LinkedHashMap<>(500);
-                        utilityPool.submit(() -> {
-                            logger.finer("CPULogger starting ...");
-                            double load;
-                            long currentTime;
-                            while(cpuStats != null) {
-                                load = statsBean.getProcessCpuLoad();
-                                currentTime = System.nanoTime() + EvalServer.BENCHMARK_NANOTIME_OFFSET;
-                                logger.finest("CPULogger is saving (process-)CPU load of " + load + " at "
-                                        + currentTime);
-                                try {
-                                    cpuStats.put(currentTime, load);
-                                    Thread.sleep(250);
-                                } catch(InterruptedException e) {
-                                    // nothing happens except that we log more CPU load data points than planned
-                                } catch(NullPointerException e) {
-                                    // theoretically, there is a chance that cpuStats is cleaned inbetween a loop
-                                    // start and the actual saving operation. In this case, just ignore the error and
-                                    // stop the thread like it was supposed to
-                                    logger.fine("CPULogger shutting down because of NullPointerException ...");
-                                    break;
-                                }
-                            }
-                            logger.finer("CPULogger shutting down ...");
-                        });
+                        // parameter = sampling interval in microseconds, the default if not positive
+                        if(telemetryCollector != null) {
+                            telemetryCollector.start(parameter * 1000L);
+                        }
                         break;
                     case STATS_DUMP:
                         // parameter = testcaseId
@@ -289,27 +342,19 @@ public class EvalServer extends DefaultSingleRecoverable {
                                     "testcase.");
                         }
 
-                        logger.finer("Dumping cpuStats for testcase " + parameter);
-                        // create new CSVWriter to dump stats to file for this run
-                        CSVWriter cpuLogWriter = new CSVWriter(new File("eval-output-servers/test_case_" +
-                                parameter + "/test_case_" + parameter + "-replica_" + serviceReplica.getId() +
-                                "-cpuLoad.csv"));
-
-                        // write header
-                        cpuLogWriter.writeLine(Arrays.asList("nanoTime", "allCoresLoadAvg"));
-
-                        // dump all logged CPU stats
-                        for(long time : cpuStats.keySet()) {
-                            cpuLogWriter.writeLine(Arrays.asList(Long.toString(time), cpuStats.get(time).toString()));
+                        if(telemetryCollector == null) {
+                            break;
+                        }
+                        logger.finer("Dumping telemetry for testcase " + parameter);
+                        // sampling stops until the next STATS_START
+                        telemetryCollector.stop();
+                        try {
+                            telemetryCollector.dump(Paths.get("eval-output-servers/test_case_" + parameter +
+                                    "/test_case_" + parameter + "-replica_" + serviceReplica.getId() + "-telemetry" +
+                                    ColumnarStatsWriter.FILE_EXTENSION));
+                        } catch(IOException e) {
+                            e.printStackTrace();
                         }
-                        cpuLogWriter.flush();
-                        cpuLogWriter.closeWriter();
-
-                        // clean up all logged stats (timings + CPU load log). Unnecessary, but meh whatever
-                        cpuStats.clear();
-                        // setting cpuStats to null will stop CPU logging automatically
-                        cpuStats = null;
-
                         break;
                     case REMOVE_CPU_CORES:
                         logger.warning("Deactivating " + parameter + " CPU core(s)!");
@@ -329,18 +374,23 @@ public class EvalServer extends DefaultSingleRecoverable {
                             }
                         }
                         // remove the cores
+                        boolean removed = false;
                         try {
                             this.cpuReconfigurator.removeCpuCores(parameter);
+                            removed = true;
                         } catch(CpuReconfigurationException e) {
                             e.printStackTrace();
                         }
+                        syncAffinity(-parameter, removed);
                         reply = new byte[1];
                         reply[0] = (byte) this.cpuReconfigurator.numberOfActiveCpuCores();
                         break;
                     case ADD_CPU_CORES:
                         logger.warning("Activating " + parameter + " CPU core(s)!");
+                        boolean added = false;
                         try {
                             this.cpuReconfigurator.addCpuCores(parameter);
+                            added = true;
                         } catch(IndexOutOfBoundsException e) {
                             // we tried to activate a core that wasn't present ... which shouldn't matter
                             logger.warning("Got activation request " + parameter + " core(s), while only " +
@@ -348,23 +398,37 @@ public class EvalServer extends DefaultSingleRecoverable {
                                     cpuReconfigurator.numberOfActiveCpuCores()) + " cores are available to " +
                                     "activate. Ignoring...");
                         }
+                        syncAffinity(parameter, added);
                         reply = new byte[1];
                         reply[0] = (byte) this.cpuReconfigurator.numberOfActiveCpuCores();
                         break;
                     case RECONFIG_UDS_PRIMARIES:
-                        logger.info("Reconfiguring UDS primaries to " + parameter + " ...");
                         reply = new byte[1];
-                        final int newPrimaries = parameter;
-                        Runnable reconfigPrimRunnable =
-                                () -> UDScheduler.getInstance().requestReconfigurationPrimaries(newPrimaries);
-                        UDScheduler.getInstance().addRequest(reconfigPrimRunnable, () -> {});
+                        if(parameter == 0) {
+                            // switching to sequential execution is done by UDSServiceReplica before this request
+                            // is executed, see reconfiguredPrimaries()
+                            if(UDScheduler.isSequentialExecution()) {
+                                logger.info("Executing requests sequentially without UDS");
+                            } else {
+                                logger.warning("Sequential execution is not supported by the " +
+                                        UDSOptions.SCHEDULER + " scheduler, ignoring reconfiguration to 0 " +
+                                        "primaries");
+                            }
+                            break;
+                        }
+                        logger.info("Reconfiguring UDS primaries to " + parameter + " ...");
+                        reconfigurePrimaries(parameter);
                         break;
                     case RECONFIG_UDS_STEPS:
                         logger.info("Reconfiguring UDS steps to " + parameter + " ...");
                         final int newSteps = parameter;
-                        Runnable reconfigStepsRunnable =
-                                () -> UDScheduler.getInstance().requestReconfigurationSteps(newSteps);
-                        UDScheduler.getInstance().addRequest(reconfigStepsRunnable, () -> {});
+                        if(!UDSOptions.CLASSIC_SCHEDULER) {
+                            DeterministicScheduler scheduler = DeterministicSchedulers.getInstance();
+                            scheduler.addRequest(() -> scheduler.requestReconfigurationSteps(newSteps), () -> {});
+                            break;
+                        }
+                        // during sequential execution, the steps are used once UDS executes requests again
+                        UDSPartitions.reconfigure(uds -> uds.requestReconfigurationSteps(newSteps));
                         break;
                     case ByTI:
                         if(logger.isLoggable(Level.FINEST)) {
@@ -395,9 +459,6 @@ public class EvalServer extends DefaultSingleRecoverable {
                 }
                 return reply;
             }
-        } catch(IOException e) {
-            logger.severe("IOException while reading data from request in replica: " + e.getMessage());
-            e.printStackTrace();
         } catch(CpuReconfigurationException e) {
             e.printStackTrace();
             logger.severe("Error while reconfiguring CPUs. Shutting down the server!");
@@ -438,6 +499,54 @@ public class EvalServer extends DefaultSingleRecoverable {
         return false;
     }
 
+    /**
+     * Requests a new number of primaries from the scheduler. Has to be called from within a request.
+     */
+    private void reconfigurePrimaries(int newPrimaries) {
+        if(!UDSOptions.CLASSIC_SCHEDULER) {
+            DeterministicScheduler scheduler = DeterministicSchedulers.getInstance();
+            scheduler.addRequest(() -> scheduler.requestReconfigurationPrimaries(newPrimaries), () -> {});
+            return;
+        }
+        if(UDScheduler.isSequentialExecution()) {
+            // this request is executed by the delivery thread, no UDS thread may be started. The number of primaries
+            // UDS continues with is set by the reconfiguration that switches back to UDS
+            logger.info("Executing requests sequentially, ignoring reconfiguration to " + newPrimaries + " primaries");
+            return;
+        }
+        // every UDS partition reconfigures itself in its own total order
+        UDSPartitions.reconfigure(uds -> uds.requestReconfigurationPrimaries(newPrimaries));
+    }
+
+    /**
+     * Keeps the UDS workers pinned to the online cores and the number of primaries in step with the number of cores
+     * after cores have been added or removed (with {@link UDSOptions#AFFINITY}). Called for every core request,
+     * whether or not the local core change succeeded: the cores actually online may differ between replicas, so the
+     * primaries are changed by the number of cores in the request, which is the same on every replica. The change is
+     * applied to the configuration requested at the turn of the reconfiguration, see
+     * {@link DeterministicScheduler#requestReconfigurationPrimariesBy(int)}. Only the workers' pinning depends on the
+     * local core change.
+     *
+     * @param delta number of cores added (positive) or removed (negative) by the request
+     * @param coresChanged whether the cores of this replica have been changed
+     */
+    private void syncAffinity(int delta, boolean coresChanged) {
+        if(!withUDS || !UDSOptions.AFFINITY) {
+            return;
+        }
+        if(coresChanged) {
+            int cores = UDSAffinity.coresChanged();
+            logger.info("UDS workers are pinned to " + cores + " core(s)");
+        }
+        logger.info("Changing UDS primaries by " + delta);
+        if(!UDSOptions.CLASSIC_SCHEDULER) {
+            DeterministicScheduler scheduler = DeterministicSchedulers.getInstance();
+            scheduler.addRequest(() -> scheduler.requestReconfigurationPrimariesBy(delta), () -> {});
+            return;
+        }
+        UDSPartitions.reconfigure(uds -> uds.requestReconfigurationPrimariesBy(delta));
+    }
+
     private boolean unlockDummyUDSLock(int lockId) {
         if(lockId >= locks.size()) {
             // bad request
@@ -453,6 +562,191 @@ public class EvalServer extends DefaultSingleRecoverable {
         return false;
     }
 
+    /**
+     * TODO temporary hack to start baseload when the test case starts
+     *  only works on test cases with locking requests (like LU1000LU)
+     * Start the byTIManagers with a slight delay depending on replicaID (phase shifted)
+     */
+    private void startByTIOnFirstLock(EvalActionType actionType, MessageContext msgCtx) {
+        if(!byTIManager.isByTIStarted()) {
+            byTIManager.startByTI(serviceReplica.getId() * byTIManager.getCurrentByTITickrateMs() / 7);
+            logger.info("Received the first request with " + actionType + " from " + msgCtx.getSender() + ". " +
+                    "Started ByTIManager.");
+        }
+    }
+
+    private boolean lockDummyReadWriteLock(int lockId, boolean write) {
+        if(lockId >= readWriteLocks.size()) {
+            // bad request
+            return true;
+        }
+        if(logger.isLoggable(Level.FINER)) {
+            logger.finer(Thread.currentThread().getName() + ": " + (write ? "Write" : "Read") + "-locking " +
+                    "(UDS)ReadWriteLock " + lockId);
+        }
+        ReadWriteLock readWriteLock = readWriteLocks.get(lockId);
+        (write ? readWriteLock.writeLock() : readWriteLock.readLock()).lock();
+        return false;
+    }
+
+    private boolean unlockDummyReadWriteLock(int lockId, boolean write) {
+        if(lockId >= readWriteLocks.size()) {
+            // bad request
+            return true;
+        }
+
+        // if the unlocking thread didn't hold this side of the lock, a RuntimeException
+        // (IllegalMonitorStateException) will be thrown
+        if(logger.isLoggable(Level.FINER)) {
+            logger.finer(Thread.currentThread().getName() + ": " + (write ? "Write" : "Read") + "-unlocking " +
+                    "(UDS)ReadWriteLock " + lockId);
+        }
+        ReadWriteLock readWriteLock = readWriteLocks.get(lockId);
+        (write ? readWriteLock.writeLock() : readWriteLock.readLock()).unlock();
+        return false;
+    }
+
+    /**
+     * Extracts the locks a request will take exclusively from its actions, as a hint for UDS' conflict-aware primary
+     * selection. Locks, write locks of ReadWriteLocks and the locks of shared states are numbered consecutively.
+     * Read locks are left out, since readers do not conflict with each other.
+     *
+     * @param request the actions of the request
+     * @return the lock IDs
+     */
+    public static int[] declaredLockSet(EvalRequestView request) {
+        return declaredLockSet(request, false);
+    }
+
+    /**
+     * Extracts the locks a request will take from its actions, see {@link #declaredLockSet(EvalRequestView)}.
+     *
+     * @param request        the actions of the request
+     * @param withReadLocks  true to also include ReadWriteLocks the request only reads, under the ID of their write lock
+     * @return the lock IDs
+     */
+    public static int[] declaredLockSet(EvalRequestView request, boolean withReadLocks) {
+        int cmdCount = request.size();
+        int[] lockSet = new int[cmdCount];
+        int lockCount = 0;
+        for(int i = 0; i < cmdCount; i++) {
+            int action = request.actionCode(i);
+            int parameter = request.parameter(i);
+            if(action == EvalActionType.LOCK.getActionTypeCode() && parameter < LOCK_COUNT) {
+                lockSet[lockCount++] = parameter;
+            } else if((action == EvalActionType.WRITE_LOCK.getActionTypeCode() || withReadLocks
+                    && action == EvalActionType.READ_LOCK.getActionTypeCode()) && parameter < LOCK_COUNT) {
+                lockSet[lockCount++] = LOCK_COUNT + parameter;
+            } else if(action == EvalActionType.ADDTOSHAREDSTATE.getActionTypeCode()
+                    && parameter < SHARED_STATE_COUNT) {
+                lockSet[lockCount++] = 2 * LOCK_COUNT + parameter;
+            }
+        }
+        return Arrays.copyOf(lockSet, lockCount);
+    }
+
+    /**
+     * Checks whether a request only consists of actions that neither take a lock nor touch shared state (simulated
+     * load and read-only actions), so it can bypass UDS rounds, see
+     * {@link de.uniulm.vs.art.uds.UDSFastPath}.
+     *
+     * @param request the actions of the request
+     * @return true if the request never takes a lock, false if it might or is empty
+     */
+    public static boolean isLockFree(EvalRequestView request) {
+        int cmdCount = request.size();
+        for(int i = 0; i < cmdCount; i++) {
+            int action = request.actionCode(i);
+            if(action != EvalActionType.SIMULATELOAD.getActionTypeCode()
+                    && action != EvalActionType.READONLY.getActionTypeCode()) {
+                return false;
+            }
+        }
+        return cmdCount > 0;
+    }
+
+    /**
+     * Finds the lock-free remainder of a request: the actions after its last action that is not simulated load (which
+     * is not split across forked threads) or read-only. From there on, its UDS thread can leave its round, see
+     * {@link UDScheduler#detachCurrentThread()}.
+     *
+     * @param request the actions of the request
+     * @return the index of the first action of the lock-free remainder, -1 if there is none or the request still
+     * holds a lock at its end
+     */
+    public static int lockFreeRemainder(EvalRequestView request) {
+        int cmdCount = request.size();
+        int start = 0;
+        int heldLocks = 0;
+        boolean forking = false;
+        for(int i = 0; i < cmdCount; i++) {
+            int action = request.actionCode(i);
+            int parameter = request.parameter(i);
+            if(action == EvalActionType.LOCK.getActionTypeCode()
+                    || action == EvalActionType.READ_LOCK.getActionTypeCode()
+                    || action == EvalActionType.WRITE_LOCK.getActionTypeCode()) {
+                heldLocks++;
+            } else if(action == EvalActionType.UNLOCK.getActionTypeCode()
+                    || action == EvalActionType.READ_UNLOCK.getActionTypeCode()
+                    || action == EvalActionType.WRITE_UNLOCK.getActionTypeCode()) {
+                heldLocks--;
+            } else if(action == EvalActionType.FORK.getActionTypeCode()) {
+                forking = parameter > 1;
+            }
+            // forking simulated load is a scheduling point, too
+            if(action != EvalActionType.SIMULATELOAD.getActionTypeCode()
+                    && action != EvalActionType.READONLY.getActionTypeCode()
+                    || action == EvalActionType.SIMULATELOAD.getActionTypeCode() && forking) {
+                start = i + 1;
+            }
+        }
+        return start < cmdCount && heldLocks == 0 ? start : -1;
+    }
+
+    /**
+     * Extracts the number of primaries a request reconfigures UDS to. 0 primaries switches the replica to sequential
+     * execution without UDS threads, any other number switches it back to UDS (see
+     * {@link UDSPartitions#enterSequentialExecution()}). The switch has to happen in the delivery thread, in the
+     * delivered order, so it is detected there before the request is executed.
+     *
+     * @param request the actions of the request
+     * @return the number of primaries of the last reconfiguration in the request, -1 if it contains none
+     */
+    public static int reconfiguredPrimaries(EvalRequestView request) {
+        int primaries = -1;
+        for(int i = 0; i < request.size(); i++) {
+            if(request.actionCode(i) == EvalActionType.RECONFIG_UDS_PRIMARIES.getActionTypeCode()
+                    && request.parameter(i) >= 0) {
+                primaries = request.parameter(i);
+            }
+        }
+        return primaries;
+    }
+
+    /**
+     * Writes the metrics of all UDS partitions and UDSLocks every {@link UDSOptions#METRICS_INTERVAL} ms, until the
+     * replica is shut down
+     */
+    private void writeUDSMetricsPeriodically() {
+        while(true) {
+            try {
+                Thread.sleep(UDSOptions.METRICS_INTERVAL);
+            } catch(InterruptedException e) {
+                logger.fine("UDS metrics writer shutting down ...");
+                break;
+            }
+            long currentTime = System.nanoTime() + BENCHMARK_NANOTIME_OFFSET;
+            for(int partition = 0; partition < UDSPartitions.count(); partition++) {
+                udsMetricsWriter.writeUDSMetrics(currentTime, UDSPartitions.get(partition).getMetrics());
+            }
+            for(Lock lock : locks) {
+                udsLockMetricsWriter.writeUDSLockMetrics(currentTime, ((UDSLock) lock).getMetrics());
+            }
+            udsMetricsWriter.flush();
+            udsLockMetricsWriter.flush();
+        }
+    }
+
     private void printSharedStates() {
         for(DummySharedState state : sharedStates) {
             String stateState = state.getSharedState().stream().collect(Collectors.joining(", ",
@@ -509,8 +803,13 @@ public class EvalServer extends DefaultSingleRecoverable {
         return byTIManager;
     }
 
-    public LinkedBlockingDeque<EvalReqStatsServer> getEvalReqStatsServerDeque() {
-        return evalReqStatsServerDeque;
+    /**
+     * Records the stats of a completed request, to be written to disk in the background. Never blocks.
+     */
+    public void recordEvalReqStats(EvalReqStatsServer stats) {
+        if(evalReqStatsRecorder != null) {
+            evalReqStatsRecorder.record(stats);
+        }
     }
 
     /**
@@ -555,6 +854,29 @@ public class EvalServer extends DefaultSingleRecoverable {
         }
     }
 
+    /**
+     * Splits simulated load evenly across several UDS threads: the current thread forks the given number of threads
+     * minus one (see {@link UDScheduler#fork(java.util.function.Supplier)}), simulates its own share of the load and
+     * joins the forked threads. Without UDS, the whole load is simulated by the current thread.
+     *
+     * @param durationInNanoseconds total duration of the load, in ns
+     * @param threads               number of threads the load is split across
+     */
+    private void simulateForkedCPULoadNanos(int durationInNanoseconds, int threads) {
+        int share = durationInNanoseconds / threads;
+        List<UDSTask<Void>> forked = new ArrayList<>(threads - 1);
+        for(int i = 1; i < threads; i++) {
+            forked.add(UDScheduler.fork(() -> {
+                simulateCPULoadNanos(share);
+                return null;
+            }));
+        }
+        simulateCPULoadNanos(durationInNanoseconds - share * (threads - 1));
+        for(UDSTask<Void> task : forked) {
+            task.join();
+        }
+    }
+
     /**
      * Occupies the thread by spinning for a given number of nanoseconds (slightly
      * variable depending on the current systems JVM's accuracy).
@@ -2,9 +2,9 @@ package de.optscore.vscale.server;
 
 import de.optscore.vscale.client.ClientWorker;
 import de.optscore.vscale.util.MeanVarianceSampler;
-import de.uniulm.vs.art.uds.UDSLock;
-import de.uniulm.vs.art.uds.UDScheduler;
+import de.uniulm.vs.art.uds.DeterministicSchedulers;
 
+import java.util.concurrent.locks.Lock;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -23,6 +23,7 @@ public class SimpleAutoscaler implements AutoScaler {
 
     private static final Logger logger = Logger.getLogger(SimpleAutoscaler.class.getName());
 
+    // indexed by the number of primaries, from 0 (sequential execution) to maxPrimaries
     private final ScalingBand[] scalingBands;
     private ScalingBand currentBand;
 
@@ -30,16 +31,16 @@ public class SimpleAutoscaler implements AutoScaler {
     private int newBandCountdown;
 
     private final double bandAgingFactor = 0.95d;
-    private final UDSLock scalingLock;
+    private final Lock scalingLock;
 
     public SimpleAutoscaler() {
-        this(8, new UDSLock(555));
+        this(8, DeterministicSchedulers.getInstance().newLock(555));
     }
 
-    public SimpleAutoscaler(int maxPrimaries, UDSLock scalingLock) {
+    public SimpleAutoscaler(int maxPrimaries, Lock scalingLock) {
         logger.setLevel(ClientWorker.GLOBAL_LOGGING_LEVEL);
 
-        this.scalingBands = new ScalingBand[maxPrimaries];
+        this.scalingBands = new ScalingBand[maxPrimaries + 1];
         this.currentBand = null;
         this.attemptedScaleUp = false;
         this.newBandCountdown = 0;
@@ -58,23 +59,23 @@ public class SimpleAutoscaler implements AutoScaler {
         scalingLock.lock();
         try {
 
-            int currentPrimaries = UDScheduler.getInstance().getCurrentUDSConfigurationPrimaries();
+            int currentPrimaries = AutoScaler.currentPrimaries();
             boolean scaledUp = false;
 
             // First check whether we are currently in a scaling band
             if(currentBand == null) {
                 // initial case, we haven't scaled or decided anything yet
                 // check whether a scaling band for the currently configured primaries already exists (likely not)
-                if(scalingBands[currentPrimaries - 1] == null) {
+                if(scalingBands[currentPrimaries] == null) {
                     // create new ScalingBand for this configuration
-                    scalingBands[currentPrimaries - 1] = new ScalingBand(currentPrimaries, reqCounter);
+                    scalingBands[currentPrimaries] = new ScalingBand(currentPrimaries, reqCounter);
                     // wait at least 5 ByTIs before deciding something again
                     newBandCountdown = 4;
                     if(logger.isLoggable(Level.FINE)) {
                         logger.fine("SimpleAutoScaler created new ScalingBand for " + currentPrimaries + " primaries");
                     }
                 }
-                currentBand = scalingBands[currentPrimaries - 1];
+                currentBand = scalingBands[currentPrimaries];
             }
 
             // Only do any scaling stuff if we didn't newly create a band recently
@@ -98,7 +99,7 @@ public class SimpleAutoscaler implements AutoScaler {
                 logger.fine(loggerPrefix() + "status: Checking reqCounter (" + reqCounter + ") against current bands' " +
                         "values");
             }
-            if(currentBand.getPrimaries() > 1 &&
+            if(currentBand.getPrimaries() > MIN_PRIMARIES &&
                     reqCounter < (currentBand.getMeanVarianceSampler().getMean() / 4)) {
                 // we lost significant throughput. This can be either due to a recent attempt of scaling up or because
                 // clients disconnected
@@ -109,27 +110,28 @@ public class SimpleAutoscaler implements AutoScaler {
                     // we come from an attempted upscaling, so let's reduce primaries by 1 and hope that suffices
                     currentPrimaries = currentPrimaries - 1;
                     // the band below the current one should definitely exist, since we can only come here through that
-                    currentBand = scalingBands[currentPrimaries - 1];
+                    currentBand = scalingBands[currentPrimaries];
                     // reconfigure UDS
-                    UDScheduler.getInstance().requestReconfigurationPrimaries(currentPrimaries);
+                    DeterministicSchedulers.requestReconfigurationPrimaries(currentPrimaries);
                     // and don't save the current reqCounter, we don't know which band it should belong to (yet) TODO
                     if(logger.isLoggable(Level.FINE)) {
                         logger.fine(loggerPrefix() + "scaled down by 1 primary after attempted upScaling");
                     }
                 } else {
                     // we didn't scale up last time, so it is likely clients disconnected --> go to base configuration
-                    // immediately (e.g. 1 primary)
-                    currentPrimaries = 1;
-                    if(scalingBands[currentPrimaries - 1] == null) {
-                        scalingBands[currentPrimaries - 1] = new ScalingBand(currentPrimaries, reqCounter);
+                    // immediately (sequential execution if supported, 1 primary otherwise)
+                    currentPrimaries = MIN_PRIMARIES;
+                    if(scalingBands[currentPrimaries] == null) {
+                        scalingBands[currentPrimaries] = new ScalingBand(currentPrimaries, reqCounter);
                         newBandCountdown = 2;
                     }
-                    currentBand = scalingBands[currentPrimaries - 1];
+                    currentBand = scalingBands[currentPrimaries];
                     // reconfigure UDS
-                    UDScheduler.getInstance().requestReconfigurationPrimaries(currentPrimaries);
+                    DeterministicSchedulers.requestReconfigurationPrimaries(currentPrimaries);
                     // and don't save the reqCounter at all, we don't know which band it best belongs to atm ... TODO
                     if(logger.isLoggable(Level.FINE)) {
-                        logger.fine(loggerPrefix() + "scaled down to 1 primary after sudden drop in throughput");
+                        logger.fine(loggerPrefix() + "scaled down to " + currentPrimaries + " primaries after sudden drop in " +
+                                "throughput");
                     }
                 }
 
@@ -145,7 +147,7 @@ public class SimpleAutoscaler implements AutoScaler {
                 if(logger.isLoggable(Level.FINE)) {
                     logger.fine(loggerPrefix() + "detected rise in throughput: " + reqCounter + " reqs in ByTI");
                 }
-                if(currentPrimaries == scalingBands.length) {
+                if(currentPrimaries == scalingBands.length - 1) {
                     // we are already at max primaries, can't do anything
                     if(logger.isLoggable(Level.FINE)) {
                         logger.fine(loggerPrefix() + "can not scale up any further. Staying in band.");
@@ -153,15 +155,15 @@ public class SimpleAutoscaler implements AutoScaler {
                 } else {
                     // we can scale up into the next band
                     currentPrimaries = currentPrimaries + 1;
-                    if(currentPrimaries <= scalingBands.length && scalingBands[currentPrimaries - 1] == null) {
+                    if(currentPrimaries < scalingBands.length && scalingBands[currentPrimaries] == null) {
                         // we haven't been up to this band yet, create it using the current reqCounter (TODO is this smart?)
-                        scalingBands[currentPrimaries - 1] = new ScalingBand(currentPrimaries, reqCounter);
+                        scalingBands[currentPrimaries] = new ScalingBand(currentPrimaries, reqCounter);
                         newBandCountdown = 2;
                     }
                     // then switch to the new band ...
-                    currentBand = scalingBands[currentPrimaries - 1];
+                    currentBand = scalingBands[currentPrimaries];
                     // and reconfigure UDS ...
-                    UDScheduler.getInstance().requestReconfigurationPrimaries(currentPrimaries);
+                    DeterministicSchedulers.requestReconfigurationPrimaries(currentPrimaries);
                     // and remember we scaled up so the next time this is called we can react if things go wrong.
                     scaledUp = true;
                     if(logger.isLoggable(Level.FINE)) {
@@ -0,0 +1,391 @@
+package de.optscore.vscale.server;
+
+import de.optscore.reconfiguration.cpu.LinuxThreadAffinity;
+import de.optscore.vscale.util.ColumnarStatsWriter;
+import de.optscore.vscale.util.ColumnarStatsWriter.ColumnType;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.IntSupplier;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Samples CPU and scheduler telemetry of the replica at a fixed interval (started with the STATS_START action), to see
+ * how busy every core is while UDS runs with a given number of primaries. Every sample holds the utilisation counters
+ * of every core and of the process from /proc/stat and /proc/self/stat, the context switches and the number of
+ * runnable and blocked tasks of the host, together with the current UDS round, ByTI id and number of primaries, so
+ * samples can be aligned with rounds and ByTI intervals.
+ *
+ * Samples go to a preallocated ring; if it is full, the oldest samples are overwritten. Sampling does not allocate:
+ * the proc files are kept open and re-read into a fixed buffer. {@link #dump(Path)} (STATS_DUMP) writes the samples
+ * as a columnar stats file, with the counters turned into rates between consecutive samples.
+ *
+ * The kernel counts CPU time in ticks (usually 10ms), so utilisation sampled much faster than that is quantized and
+ * should be averaged over several samples when analyzing.
+ */
+public final class TelemetryCollector {
+
+    /**
+     * Sampling interval used if none is given
+     */
+    public static final long DEFAULT_INTERVAL_NS = 10000000L;
+
+    /**
+     * Longs the ring may hold, i.e. about 32 MiB
+     */
+    private static final int RING_LONGS = 1 << 22;
+
+    /*
+     * Layout of a sample: fixed fields, followed by busy and total ticks of every possible core (-1 if offline)
+     */
+    private static final int TIME = 0;
+    private static final int ROUND = 1;
+    private static final int BYTI_ID = 2;
+    private static final int PRIMARIES = 3;
+    private static final int PROCESS_TICKS = 4;
+    private static final int PROCESS_THREADS = 5;
+    private static final int CONTEXT_SWITCHES = 6;
+    private static final int PROCS_RUNNING = 7;
+    private static final int PROCS_BLOCKED = 8;
+    private static final int CORES = 9;
+
+    private static final Logger logger = Logger.getLogger(TelemetryCollector.class.getName());
+
+    private final IntSupplier round;
+    private final IntSupplier byTIId;
+    private final IntSupplier primaries;
+
+    private final int coreCount;
+    private final int sampleLongs;
+    private final int capacity;
+
+    /**
+     * The ring; it and the number of samples are guarded by its monitor. Starting and stopping is guarded by this
+     * collector's monitor, which must not be held by the sampling thread, since stop() waits for it.
+     */
+    private final long[] ring;
+    private long samples;
+
+    /**
+     * The sample being taken, only used by the sampling thread
+     */
+    private final long[] current;
+
+    private final FileChannel procStat;
+    private final FileChannel procSelfStat;
+    private ByteBuffer buffer = ByteBuffer.allocate(1 << 16);
+
+    private Thread sampler;
+    private volatile boolean sampling;
+
+    /**
+     * @param round     the current UDS round, -1 without UDS
+     * @param byTIId    the id of the current ByTI interval, -1 if ByTI has not started
+     * @param primaries the current number of primaries, 0 for sequential execution and -1 without UDS
+     * @throws IOException if /proc cannot be read, e.g. on hosts other than Linux
+     */
+    public TelemetryCollector(IntSupplier round, IntSupplier byTIId, IntSupplier primaries) throws IOException {
+        this.round = round;
+        this.byTIId = byTIId;
+        this.primaries = primaries;
+        int[] possible = LinuxThreadAffinity.possibleCpus();
+        this.coreCount = possible.length > 0 ? possible[possible.length - 1] + 1 : 1;
+        this.sampleLongs = CORES + 2 * coreCount;
+        this.capacity = Math.max(1024, RING_LONGS / sampleLongs);
+        this.ring = new long[capacity * sampleLongs];
+        this.current = new long[sampleLongs];
+        this.procStat = FileChannel.open(Paths.get("/proc/stat"));
+        this.procSelfStat = FileChannel.open(Paths.get("/proc/self/stat"));
+    }
+
+    /**
+     * Starts sampling, discarding all samples taken so far. Restarts sampling if it is already running.
+     *
+     * @param intervalNs time between two samples, {@link #DEFAULT_INTERVAL_NS} if not positive
+     */
+    public synchronized void start(long intervalNs) {
+        stop();
+        synchronized(ring) {
+            samples = 0;
+        }
+        long interval = intervalNs > 0 ? intervalNs : DEFAULT_INTERVAL_NS;
+        sampling = true;
+        sampler = new Thread(() -> sampleLoop(interval), "telemetry-collector");
+        sampler.setDaemon(true);
+        sampler.start();
+        if(logger.isLoggable(Level.FINER)) {
+            logger.finer("Sampling telemetry of " + coreCount + " cores every " + interval + "ns, keeping the last "
+                    + capacity + " samples");
+        }
+    }
+
+    /**
+     * Stops sampling; the samples taken so far are kept until the next start()
+     */
+    public synchronized void stop() {
+        if(sampler == null) {
+            return;
+        }
+        sampling = false;
+        LockSupport.unpark(sampler);
+        try {
+            sampler.join();
+        } catch(InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        sampler = null;
+    }
+
+    private void sampleLoop(long intervalNs) {
+        long next = System.nanoTime();
+        while(sampling) {
+            try {
+                sample();
+            } catch(IOException | RuntimeException e) {
+                logger.warning("Stopped sampling telemetry: " + e);
+                sampling = false;
+                break;
+            }
+            synchronized(ring) {
+                System.arraycopy(current, 0, ring, (int) (samples % capacity) * sampleLongs, sampleLongs);
+                samples++;
+            }
+            next += intervalNs;
+            long delay = next - System.nanoTime();
+            if(delay > 0) {
+                LockSupport.parkNanos(delay);
+            } else {
+                // fell behind, e.g. because the host is overloaded; do not try to catch up
+                next = System.nanoTime();
+            }
+        }
+    }
+
+    /**
+     * Takes a sample into {@link #current}
+     */
+    private void sample() throws IOException {
+        current[TIME] = System.nanoTime() + EvalServer.BENCHMARK_NANOTIME_OFFSET;
+        current[ROUND] = round.getAsInt();
+        current[BYTI_ID] = byTIId.getAsInt();
+        current[PRIMARIES] = primaries.getAsInt();
+        Arrays.fill(current, CORES, sampleLongs, -1);
+
+        // /proc/stat: "cpuN user nice system idle iowait irq softirq steal ..." per online core, "ctxt N",
+        // "procs_running N", "procs_blocked N"
+        int length = read(procStat);
+        int position = 0;
+        while(position < length) {
+            if(startsWith(position, length, "cpu") && position + 3 < length && isDigit(buffer.get(position + 3))) {
+                position += 3;
+                int core = (int) parseLong(position, length);
+                position = skipNumber(position, length);
+                long total = 0;
+                long idle = 0;
+                for(int field = 0; field < 8; field++) {
+                    position = skipSpaces(position, length);
+                    if(position >= length || !isDigit(buffer.get(position))) {
+                        break;
+                    }
+                    long ticks = parseLong(position, length);
+                    position = skipNumber(position, length);
+                    total += ticks;
+                    // idle and iowait
+                    if(field == 3 || field == 4) {
+                        idle += ticks;
+                    }
+                }
+                if(core < coreCount) {
+                    current[CORES + 2 * core] = total - idle;
+                    current[CORES + 2 * core + 1] = total;
+                }
+            } else if(startsWith(position, length, "ctxt ")) {
+                current[CONTEXT_SWITCHES] = parseLong(skipSpaces(position + 5, length), length);
+            } else if(startsWith(position, length, "procs_running ")) {
+                current[PROCS_RUNNING] = parseLong(skipSpaces(position + 14, length), length);
+            } else if(startsWith(position, length, "procs_blocked ")) {
+                current[PROCS_BLOCKED] = parseLong(skipSpaces(position + 14, length), length);
+            }
+            position = nextLine(position, length);
+        }
+
+        // /proc/self/stat: "pid (comm) state ..." with utime, stime in fields 14 and 15 and num_threads in field 20.
+        // comm may contain spaces and parentheses, so fields are counted from the last ')'
+        length = read(procSelfStat);
+        position = length - 1;
+        while(position >= 0 && buffer.get(position) != ')') {
+            position--;
+        }
+        long processTicks = 0;
+        for(int field = 3; field <= 20 && position < length; field++) {
+            position = skipSpaces(position + 1, length);
+            if(field == 14 || field == 15) {
+                processTicks += parseLong(position, length);
+            } else if(field == 20) {
+                current[PROCESS_THREADS] = parseLong(position, length);
+            }
+            while(position < length && buffer.get(position) != ' ') {
+                position++;
+            }
+        }
+        current[PROCESS_TICKS] = processTicks;
+    }
+
+    /**
+     * Re-reads a proc file from the start into {@link #buffer}, growing it if necessary
+     *
+     * @return the length of the file's content
+     */
+    private int read(FileChannel channel) throws IOException {
+        while(true) {
+            buffer.clear();
+            int length = 0;
+            int read;
+            while(buffer.hasRemaining() && (read = channel.read(buffer, length)) > 0) {
+                length += read;
+            }
+            if(buffer.hasRemaining()) {
+                return length;
+            }
+            buffer = ByteBuffer.allocate(buffer.capacity() * 2);
+        }
+    }
+
+    private boolean startsWith(int position, int length, String prefix) {
+        if(position + prefix.length() > length) {
+            return false;
+        }
+        for(int i = 0; i < prefix.length(); i++) {
+            if(buffer.get(position + i) != prefix.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isDigit(byte b) {
+        return b >= '0' && b <= '9';
+    }
+
+    private long parseLong(int position, int length) {
+        long value = 0;
+        while(position < length && isDigit(buffer.get(position))) {
+            value = value * 10 + (buffer.get(position++) - '0');
+        }
+        return value;
+    }
+
+    private int skipNumber(int position, int length) {
+        while(position < length && isDigit(buffer.get(position))) {
+            position++;
+        }
+        return position;
+    }
+
+    private int skipSpaces(int position, int length) {
+        while(position < length && buffer.get(position) == ' ') {
+            position++;
+        }
+        return position;
+    }
+
+    private int nextLine(int position, int length) {
+        while(position < length && buffer.get(position) != '\n') {
+            position++;
+        }
+        return position + 1;
+    }
+
+    /**
+     * Writes the samples taken so far as a columnar stats file (see {@link ColumnarStatsWriter}), one row per sample
+     * after the first. Utilisations are given in permille between a sample and the one before: for every core
+     * (-1 while offline), and for the process relative to a single core, so it exceeds 1000 when the process uses
+     * more than one core.
+     *
+     * @param file the file to write
+     * @return the number of rows written
+     */
+    public synchronized long dump(Path file) throws IOException {
+        String[] names = new String[10 + coreCount];
+        ColumnType[] types = new ColumnType[names.length];
+        String[] fixed = {"currentTimeNs", "udsRound", "byTIId", "primaries", "onlineCores",
+                "processCpuPermille", "processThreads", "contextSwitchesPerSecond", "procsRunning", "procsBlocked"};
+        System.arraycopy(fixed, 0, names, 0, fixed.length);
+        Arrays.fill(types, ColumnType.INT);
+        types[0] = ColumnType.LONG;
+        types[1] = ColumnType.LONG;
+        for(int core = 0; core < coreCount; core++) {
+            names[fixed.length + core] = "core" + core + "Permille";
+        }
+
+        long samples;
+        long rows = 0;
+        // sampling waits while the ring is dumped
+        synchronized(ring) {
+            samples = this.samples;
+            try(ColumnarStatsWriter writer = new ColumnarStatsWriter(file, names, types)) {
+                long[] corePermille = new long[coreCount];
+                long processPermille = 0;
+                for(long s = Math.max(0, samples - capacity) + 1; s < samples; s++) {
+                    int previous = (int) ((s - 1) % capacity) * sampleLongs;
+                    int sample = (int) (s % capacity) * sampleLongs;
+                    long elapsedNs = Math.max(1, ring[sample + TIME] - ring[previous + TIME]);
+
+                    int onlineCores = 0;
+                    long totalTicks = 0;
+                    for(int core = 0; core < coreCount; core++) {
+                        int busy = CORES + 2 * core;
+                        if(ring[sample + busy] < 0) {
+                            corePermille[core] = -1;
+                            continue;
+                        }
+                        onlineCores++;
+                        long ticks = ring[sample + busy + 1] - ring[previous + busy + 1];
+                        totalTicks += Math.max(0, ticks);
+                        if(ring[previous + busy] < 0) {
+                            // just came online
+                            corePermille[core] = 0;
+                        } else if(ticks > 0) {
+                            corePermille[core] = (ring[sample + busy] - ring[previous + busy]) * 1000 / ticks;
+                        }
+                        // else: no tick passed since the previous sample, keep the last utilisation
+                    }
+                    // ticks per core that passed between the samples
+                    long wallTicks = onlineCores > 0 ? totalTicks / onlineCores : 0;
+                    if(wallTicks > 0) {
+                        processPermille = (ring[sample + PROCESS_TICKS] - ring[previous + PROCESS_TICKS]) * 1000 /
+                                wallTicks;
+                    }
+
+                    writer.put(ring[sample + TIME])
+                            .put(ring[sample + ROUND])
+                            .put(ring[sample + BYTI_ID])
+                            .put(ring[sample + PRIMARIES])
+                            .put(onlineCores)
+                            .put(processPermille)
+                            .put(ring[sample + PROCESS_THREADS])
+                            .put((ring[sample + CONTEXT_SWITCHES] - ring[previous + CONTEXT_SWITCHES]) *
+                                    1000000000L / elapsedNs)
+                            .put(ring[sample + PROCS_RUNNING])
+                            .put(ring[sample + PROCS_BLOCKED]);
+                    for(int core = 0; core < coreCount; core++) {
+                        writer.put(corePermille[core]);
+                    }
+                    writer.endRow();
+                    rows++;
+                }
+            }
+        }
+        if(samples > capacity && logger.isLoggable(Level.INFO)) {
+            logger.info("Telemetry ring overflowed, dumped only the last " + capacity + " of " + samples +
+                    " samples");
+        }
+        return rows;
+    }
+}
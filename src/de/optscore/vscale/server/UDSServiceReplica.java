@@ -1,6 +1,5 @@
 package de.optscore.vscale.server;
 
-import bftsmart.parallelism.MessageContextPair;
 import bftsmart.tom.MessageContext;
 import bftsmart.tom.ServiceReplica;
 import bftsmart.tom.core.messages.TOMMessage;
@@ -8,16 +7,21 @@ import bftsmart.tom.core.messages.TOMMessageType;
 import bftsmart.tom.leaderchange.CertifiedDecision;
 import bftsmart.tom.server.Executable;
 import bftsmart.tom.server.Recoverable;
-import bftsmart.tom.server.SingleExecutable;
 import bftsmart.tom.util.TOMUtil;
 import de.optscore.vscale.EvalActionType;
+import de.optscore.vscale.EvalRequestView;
 import de.optscore.vscale.client.ClientWorker;
 import de.optscore.vscale.util.EvalReqStatsServer;
+import de.uniulm.vs.art.uds.DeterministicSchedulers;
+import de.uniulm.vs.art.uds.UDSFastPath;
+import de.uniulm.vs.art.uds.UDSOptions;
+import de.uniulm.vs.art.uds.UDSPartitions;
 import de.uniulm.vs.art.uds.UDScheduler;
 
-import java.io.ByteArrayInputStream;
-import java.io.DataInputStream;
-import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.FutureTask;
 import java.util.concurrent.atomic.AtomicInteger;
@@ -39,6 +43,26 @@ public class UDSServiceReplica extends ServiceReplica {
 
     private AtomicInteger globalReqSequence = new AtomicInteger(0);
 
+    /**
+     * True while requests are executed one after another by the delivery thread instead of by UDS threads, after
+     * UDS has been reconfigured to 0 primaries. Only used by the delivery thread.
+     */
+    private boolean sequential = false;
+
+    /**
+     * The last ByTI decision given to UDS, until the next decision has waited for it to complete. Only used by the
+     * delivery thread.
+     */
+    private FutureTask<Void> pendingDecision;
+
+    /**
+     * Envelopes whose replies have been sent, reused for later requests. Taken by the delivery thread, given back by
+     * whichever thread sent the reply. Envelopes released while the pool is full are left to the GC.
+     */
+    private final ArrayBlockingQueue<RequestEnvelope> envelopePool = new ArrayBlockingQueue<>(ENVELOPE_POOL_SIZE);
+
+    private static final int ENVELOPE_POOL_SIZE = 1024;
+
     public UDSServiceReplica(int id, Executable executor, Recoverable recoverer) {
         super(id, executor, recoverer);
 
@@ -72,6 +96,15 @@ public class UDSServiceReplica extends ServiceReplica {
             // TODO temp code to test dummyReqInsertion
             int udsReqCount = 0;
 
+            // regular requests of this decision, admitted to UDS as one batch
+            List<Runnable> udsRequests = new ArrayList<>(requestsFromConsensus.length);
+            List<Runnable> udsReplies = new ArrayList<>(requestsFromConsensus.length);
+            List<EvalReqStatsServer> udsReqStats = new ArrayList<>(requestsFromConsensus.length);
+            boolean partitioned = UDSOptions.CLASSIC_SCHEDULER && UDSPartitions.count() > 1;
+            List<int[]> udsLockSets = UDSOptions.CLASSIC_SCHEDULER && UDSOptions.CONFLICT_AWARE_PRIMARIES ?
+                    new ArrayList<>(requestsFromConsensus.length) : null;
+            List<Integer> udsPartitions = partitioned ? new ArrayList<>(requestsFromConsensus.length) : null;
+
             // loop through a batch of messages
             for (TOMMessage request : requestsFromConsensus) {
 
@@ -97,23 +130,23 @@ public class UDSServiceReplica extends ServiceReplica {
                         msgCtx.setLastInBatch();
                     }
 
+                    // decoded once here, then handed on to the execution of the request
+                    EvalRequestView evalRequest = EvalRequestView.wrap(request.getContent());
+                    RequestEnvelope envelope = acquireEnvelope(request, msgCtx, evalRequest);
+
                     // TODO do we really want to modify/use msgCtx for this?
                     msgCtx.setGlobalReqSequence(globalReqSequence.getAndIncrement());
-                    msgCtx.setEvalReqStatsServer(new EvalReqStatsServer());
+                    msgCtx.setEvalReqStatsServer(envelope.stats);
                     // profiling
                     msgCtx.getEvalReqStatsServer().setReqReceivedInServiceReplica(System.nanoTime() + EvalServer.BENCHMARK_NANOTIME_OFFSET);
                     request.deliveryTime = System.currentTimeMillis();
 
-                    MessageContextPair messageContextPair = new MessageContextPair(request, msgCtx);
-
                     // TODO temporary ByTI hacks
                     //  refactor
                     try {
                         // extract the first action type in the request to distinguish between regular and tick requests
-                        ByteArrayInputStream bis = new ByteArrayInputStream(request.getContent());
-                        DataInputStream dis = new DataInputStream(bis);
-                        EvalActionType actionType = EvalActionType.values()[dis.readInt()];
-                        int tickReqCounter = actionType == EvalActionType.ByTI ? dis.readInt() : -1;
+                        EvalActionType actionType = evalRequest.actionType(0);
+                        int tickReqCounter = actionType == EvalActionType.ByTI ? evalRequest.parameter(0) : -1;
 
                         // tell ByTI about the received request
                         if(evalServer.getByTIManager() != null && evalServer.getByTIManager().isByTIStarted()) {
@@ -132,66 +165,105 @@ public class UDSServiceReplica extends ServiceReplica {
                                 // prepare next interval (reset ByTI values in ByTIManager)
                                 evalServer.getByTIManager().prepareNextInterval();
 
-                                // let UDS schedule the decision, for determinism
+                                // let UDS schedule the decision, for determinism. Requests decided before it have to
+                                // be admitted first to keep the order
+                                submitBatch(udsRequests, udsReplies, udsReqStats, udsLockSets, udsPartitions);
+                                // the previous decision may have requested a switch between UDS and sequential
+                                // execution (e.g. by the autoscaler). It is applied here, at the same position on
+                                // every replica, once that decision has completed
+                                awaitPendingDecision();
+                                switchToRequestedExecution(msgCtx);
                                 Runnable decisionRunnable = () -> evalServer.getByTIManager()
                                         .decide(byTIId, firstNo, lastNo, reqCounter, imprecise, byTICloseTime);
-                                UDScheduler.getInstance().addRequestAndFillRound(decisionRunnable, () -> {});
+                                if(sequential) {
+                                    decisionRunnable.run();
+                                    switchToRequestedExecution(msgCtx);
+                                } else {
+                                    FutureTask<Void> decisionTask = new FutureTask<>(decisionRunnable, null);
+                                    DeterministicSchedulers.getInstance().addRequestAndFillRound(decisionTask,
+                                            () -> {});
+                                    pendingDecision = decisionTask;
+                                }
                             }
                         }
                         // if it's a regular request --> UDS thread
                         if(actionType != EvalActionType.ByTI) {
-                            // execute the business logic and get the response bytes
-                            FutureTask<byte[]> evalFuture = new FutureTask<>(() -> {
-                                // profiling
-                                msgCtx.getEvalReqStatsServer().setReqStartedExecution(System.nanoTime() + EvalServer.BENCHMARK_NANOTIME_OFFSET);
-
-                                return ((SingleExecutable) executor).
-                                        executeOrdered(messageContextPair.message.getContent(), messageContextPair.msgCtx);
-                            });
-
-                            // the runnable responsible for fulfilling the client request
-                            Runnable replyRunnable = () -> {
-                                // create the TOMMessage reply from the response bytes
-                                try {
-                                    messageContextPair.message.reply = new TOMMessage(id, messageContextPair.message.getSession(),
-                                            messageContextPair.message.getSequence(), messageContextPair.message.getOperationId(),
-                                            evalFuture.get(), SVController.getCurrentViewId(),
-                                            TOMMessageType.ORDERED_REQUEST);
-                                } catch(InterruptedException | ExecutionException e) {
-                                    logger.severe(e.getMessage());
-                                    e.printStackTrace();
-                                }
-
-                                // send out the reply
-                                replier.manageReply(messageContextPair.message, messageContextPair.msgCtx);
-
-                                // profiling
-                                msgCtx.getEvalReqStatsServer().setReqFullyCompletedAndSentBackReply(System.nanoTime() + EvalServer.BENCHMARK_NANOTIME_OFFSET);
+                            // the envelope executes the business logic, its reply continuation fulfills the
+                            // client request
+                            Runnable evalRunnable = envelope;
+                            Runnable replyRunnable = envelope.reply;
+                            // switch between UDS and sequential execution at the position of the reconfiguration in
+                            // the delivered order, so all replicas switch between the same requests
+                            int primaries = !UDSOptions.CLASSIC_SCHEDULER ? -1 :
+                                    EvalServer.reconfiguredPrimaries(evalRequest);
+                            if(primaries == 0 && !sequential) {
+                                // everything decided before has to be completed by UDS first
+                                submitBatch(udsRequests, udsReplies, udsReqStats, udsLockSets, udsPartitions);
+                                setSequential(true, msgCtx);
+                            } else if(primaries > 0 && sequential) {
+                                setSequential(false, msgCtx);
+                            }
 
-                                // add the completed request stats to the server deque so it can be logged to disk
-                                // eventually
-                                evalServer.getEvalReqStatsServerDeque().addFirst(msgCtx.getEvalReqStatsServer());
-                            };
-                            // blocking call, give request to scheduler as soon as it accepts new Runnables
-                            UDScheduler.getInstance().addRequest(evalFuture, replyRunnable);
+                            boolean fastPath = !sequential && UDSOptions.FAST_PATH &&
+                                    EvalServer.isLockFree(evalRequest);
+                            int[] lockSet = !sequential && !fastPath && udsLockSets != null ?
+                                    EvalServer.declaredLockSet(evalRequest) : null;
+                            // readers have to stay in the partition of the ReadWriteLock as well
+                            int[] involvedPartitions = !sequential && !fastPath && partitioned ? partitionsOf(
+                                    EvalServer.declaredLockSet(evalRequest, true), msgCtx.getSender()) : null;
+                            if(sequential) {
+                                // execute the request right here, nothing else runs meanwhile
+                                msgCtx.getEvalReqStatsServer().setReqSubmittedtoUDS(System.nanoTime() +
+                                        EvalServer.BENCHMARK_NANOTIME_OFFSET);
+                                evalRunnable.run();
+                                replyRunnable.run();
+                            } else if(fastPath) {
+                                // the request cannot influence the order of lock grants, so it does not need a
+                                // round. Its reply is still sent in delivery order among the fast path requests.
+                                // The envelope may be replied to and reused as soon as it has been handed over
+                                msgCtx.getEvalReqStatsServer().setReqSubmittedtoUDS(System.nanoTime() +
+                                        EvalServer.BENCHMARK_NANOTIME_OFFSET);
+                                UDSFastPath.getInstance().addRequest(evalRunnable, replyRunnable);
+                            } else if(involvedPartitions != null && involvedPartitions.length > 1) {
+                                // the request uses locks of several UDS partitions. Admit everything decided before
+                                // it first, so the partitions it holds back are the same on every replica
+                                submitBatch(udsRequests, udsReplies, udsReqStats, udsLockSets, udsPartitions);
+                                msgCtx.getEvalReqStatsServer().setReqSubmittedtoUDS(System.nanoTime() +
+                                        EvalServer.BENCHMARK_NANOTIME_OFFSET);
+                                UDSPartitions.addCrossPartitionRequest(involvedPartitions[0],
+                                        Arrays.copyOfRange(involvedPartitions, 1, involvedPartitions.length),
+                                        evalRunnable, replyRunnable);
+                            } else {
+                                // collect the request, the whole batch is given to the scheduler at once
+                                udsRequests.add(evalRunnable);
+                                udsReplies.add(replyRunnable);
+                                udsReqStats.add(msgCtx.getEvalReqStatsServer());
+                                if(udsLockSets != null) {
+                                    udsLockSets.add(lockSet);
+                                }
+                                if(udsPartitions != null) {
+                                    udsPartitions.add(involvedPartitions[0]);
+                                }
+                            }
 
                             // TODO temp code to test dummyReqInsertion
-                            udsReqCount++;
-
-                            // profiling
-                            msgCtx.getEvalReqStatsServer().setReqSubmittedtoUDS(System.nanoTime() + EvalServer.BENCHMARK_NANOTIME_OFFSET);
+                            if(!sequential && !fastPath) {
+                                udsReqCount++;
+                            }
                         } else {
                             // it's a ByTI request; just send back an empty reply
                             byte[] byTIReply = new byte[0];
-                            messageContextPair.message.reply = new TOMMessage(id,
-                                    messageContextPair.message.getSession(),
-                                    messageContextPair.message.getSequence(), messageContextPair.message.getOperationId(),
-                                    byTIReply, SVController.getCurrentViewId(), TOMMessageType.ORDERED_REQUEST);
-                            replier.manageReply(messageContextPair.message, messageContextPair.msgCtx);
+                            request.reply = new TOMMessage(id, request.getSession(), request.getSequence(),
+                                    request.getOperationId(), byTIReply, SVController.getCurrentViewId(),
+                                    TOMMessageType.ORDERED_REQUEST);
+                            replier.manageReply(request, msgCtx);
+                            envelope.release();
                         }
 
-                    } catch(IOException e) {
+                    } catch(IndexOutOfBoundsException e) {
+                        // empty request or unknown action type
                         e.printStackTrace();
+                        envelope.release();
                     }
 
                 // If the message was a reconfig-message, let SVController know and don't set noop to false
@@ -211,6 +283,9 @@ public class UDSServiceReplica extends ServiceReplica {
                 requestCount++;
             }
 
+            // blocking call, give all regular requests of this decision to the scheduler as soon as it accepts them
+            submitBatch(udsRequests, udsReplies, udsReqStats, udsLockSets, udsPartitions);
+
             // TODO temp code to test dummyReqInsertion
             // insert N - udsReqCount dummyRequests so we can be sure a round is certainly started
             /*
@@ -286,4 +361,238 @@ public class UDSServiceReplica extends ServiceReplica {
 
         //}
     }
+
+    /**
+     * Takes an envelope from the pool, or creates one if the pool is empty, and fills it with a delivered request.
+     * Only called by the delivery thread.
+     */
+    private RequestEnvelope acquireEnvelope(TOMMessage message, MessageContext msgCtx, EvalRequestView request) {
+        RequestEnvelope envelope = envelopePool.poll();
+        if(envelope == null) {
+            envelope = new RequestEnvelope();
+        } else {
+            // paths that skip a profiling step must not report the timestamps of the envelope's previous request
+            envelope.stats.reset();
+        }
+        envelope.message = message;
+        envelope.msgCtx = msgCtx;
+        envelope.request = request;
+        return envelope;
+    }
+
+    /**
+     * Everything the execution of a delivered ordered request needs: the request with its context, its profiling
+     * stats, the result of the execution and the continuation sending the reply. Running the envelope executes the
+     * request; running {@link #reply} afterwards sends the reply and returns the envelope to the pool, so the
+     * per-request Runnables, result holder and stats object are reused instead of allocated for every request.
+     *
+     * The MessageContext is still created per request, since BFT-SMaRt fixes most of its fields at construction.
+     */
+    private final class RequestEnvelope implements Runnable {
+
+        private TOMMessage message;
+        private MessageContext msgCtx;
+        private EvalRequestView request;
+
+        /**
+         * Profiling stats of the request, copied into the stats recorder of the EvalServer once the reply has been
+         * sent
+         */
+        private final EvalReqStatsServer stats = new EvalReqStatsServer();
+
+        private byte[] result;
+        private boolean failed;
+
+        /**
+         * The reply continuation, created once per envelope
+         */
+        private final Runnable reply = this::sendReply;
+
+        /**
+         * Executes the business logic and keeps the response bytes for the reply
+         */
+        @Override
+        public void run() {
+            // profiling
+            stats.setReqStartedExecution(System.nanoTime() + EvalServer.BENCHMARK_NANOTIME_OFFSET);
+            try {
+                result = evalServer.executeOrdered(request, msgCtx);
+            } catch(RuntimeException e) {
+                failed = true;
+                logger.severe(e.getMessage());
+                e.printStackTrace();
+            }
+        }
+
+        private void sendReply() {
+            // create the TOMMessage reply from the response bytes
+            if(!failed) {
+                message.reply = new TOMMessage(id, message.getSession(), message.getSequence(),
+                        message.getOperationId(), result, SVController.getCurrentViewId(),
+                        TOMMessageType.ORDERED_REQUEST);
+            }
+
+            // send out the reply
+            replier.manageReply(message, msgCtx);
+
+            // profiling
+            stats.setReqFullyCompletedAndSentBackReply(System.nanoTime() + EvalServer.BENCHMARK_NANOTIME_OFFSET);
+
+            // the completed request stats are logged to disk in the background
+            evalServer.recordEvalReqStats(stats);
+
+            release();
+        }
+
+        /**
+         * Drops the references to the request and returns the envelope to the pool
+         */
+        private void release() {
+            message = null;
+            msgCtx = null;
+            request = null;
+            result = null;
+            failed = false;
+            envelopePool.offer(this);
+        }
+    }
+
+    /**
+     * Determines the UDS partitions whose locks a request uses
+     *
+     * @param lockSet the locks used by the request, may be null
+     * @param sender  the client that sent the request, for spreading requests without locks over the partitions
+     * @return the distinct partitions in ascending order, at least one
+     */
+    private static int[] partitionsOf(int[] lockSet, int sender) {
+        if(lockSet == null || lockSet.length == 0) {
+            return new int[]{UDSPartitions.partitionOf(sender)};
+        }
+        boolean[] used = new boolean[UDSPartitions.count()];
+        int count = 0;
+        for(int lockID : lockSet) {
+            int partition = UDSPartitions.partitionOf(lockID);
+            if(!used[partition]) {
+                used[partition] = true;
+                count++;
+            }
+        }
+        int[] partitions = new int[count];
+        for(int partition = 0, i = 0; partition < used.length; partition++) {
+            if(used[partition]) {
+                partitions[i++] = partition;
+            }
+        }
+        return partitions;
+    }
+
+    /**
+     * Switches between UDS and sequential execution before the given request. All requests decided before it must
+     * have been given to the scheduler already.
+     */
+    private void setSequential(boolean sequential, MessageContext msgCtx) {
+        if(sequential) {
+            UDSPartitions.enterSequentialExecution();
+        } else {
+            UDSPartitions.leaveSequentialExecution();
+        }
+        this.sequential = sequential;
+        logger.info("Switched to " + (sequential ? "sequential" : "UDS") + " execution before request " +
+                msgCtx.getGlobalReqSequence());
+    }
+
+    /**
+     * Applies the switch between UDS and sequential execution requested by a completed ByTI decision, if any (see
+     * {@link UDScheduler#takeRequestedSequentialExecution()})
+     */
+    private void switchToRequestedExecution(MessageContext msgCtx) {
+        if(!UDSOptions.CLASSIC_SCHEDULER) {
+            return;
+        }
+        Boolean requested = UDScheduler.takeRequestedSequentialExecution();
+        if(requested != null && requested != sequential) {
+            setSequential(requested, msgCtx);
+        }
+    }
+
+    /**
+     * Waits until the last ByTI decision given to UDS has been executed. Its round has been filled when it was added,
+     * so it does not depend on requests delivered later.
+     */
+    private void awaitPendingDecision() {
+        if(pendingDecision == null) {
+            return;
+        }
+        boolean interrupted = false;
+        while(true) {
+            try {
+                pendingDecision.get();
+                break;
+            } catch(InterruptedException e) {
+                interrupted = true;
+            } catch(ExecutionException e) {
+                // the decision itself logs its failures, there is nothing to switch to
+                break;
+            }
+        }
+        pendingDecision = null;
+        if(interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Admits a batch of collected requests to UDS in one call and clears the given lists afterwards. Blocks until
+     * the scheduler accepts the batch.
+     *
+     * @param udsRequests the requests to execute, in decided order
+     * @param udsReplies  the reply Runnables of the requests
+     * @param udsReqStats the profiling stats of the requests
+     * @param udsLockSets the locks declared by the requests, null if conflict-aware primary selection is disabled
+     * @param udsPartitions the UDS partition of every request, null if there is only one partition
+     */
+    private void submitBatch(List<Runnable> udsRequests, List<Runnable> udsReplies,
+                             List<EvalReqStatsServer> udsReqStats, List<int[]> udsLockSets,
+                             List<Integer> udsPartitions) {
+        if(udsRequests.isEmpty()) {
+            return;
+        }
+
+        // profiling. Set before handing over the batch, since the envelopes of requests which already have been
+        // replied to are reused
+        long submitted = System.nanoTime() + EvalServer.BENCHMARK_NANOTIME_OFFSET;
+        for(EvalReqStatsServer reqStats : udsReqStats) {
+            reqStats.setReqSubmittedtoUDS(submitted);
+        }
+        if(!UDSOptions.CLASSIC_SCHEDULER) {
+            DeterministicSchedulers.getInstance().addRequests(udsRequests, udsReplies);
+        } else if(udsPartitions != null) {
+            // split the batch by partition, keeping the decided order within every partition
+            for(int partition = 0; partition < UDSPartitions.count(); partition++) {
+                List<Runnable> requests = new ArrayList<>();
+                List<Runnable> replies = new ArrayList<>();
+                List<int[]> lockSets = udsLockSets != null ? new ArrayList<>() : null;
+                for(int i = 0; i < udsRequests.size(); i++) {
+                    if(udsPartitions.get(i) == partition) {
+                        requests.add(udsRequests.get(i));
+                        replies.add(udsReplies.get(i));
+                        if(lockSets != null) {
+                            lockSets.add(udsLockSets.get(i));
+                        }
+                    }
+                }
+                UDSPartitions.get(partition).addRequests(requests, replies, lockSets);
+            }
+            udsPartitions.clear();
+        } else {
+            UDScheduler.getInstance().addRequests(udsRequests, udsReplies, udsLockSets);
+        }
+
+        udsRequests.clear();
+        udsReplies.clear();
+        udsReqStats.clear();
+        if(udsLockSets != null) {
+            udsLockSets.clear();
+        }
+    }
 }
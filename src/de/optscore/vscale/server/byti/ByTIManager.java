@@ -7,8 +7,7 @@ import de.optscore.vscale.server.AutoScaler;
 import de.optscore.vscale.server.BorderAutoScaler;
 import de.optscore.vscale.server.EvalServer;
 import de.optscore.vscale.util.BufferedStatsWriter;
-import de.uniulm.vs.art.uds.UDSLock;
-import de.uniulm.vs.art.uds.UDScheduler;
+import de.uniulm.vs.art.uds.DeterministicSchedulers;
 
 import java.util.List;
 import java.util.TreeMap;
@@ -88,7 +87,7 @@ public class ByTIManager {
 
         this.byTIStarted = new AtomicBoolean(false);
 
-        this.autoScaler = new BorderAutoScaler(7, new UDSLock(555));
+        this.autoScaler = new BorderAutoScaler(7, DeterministicSchedulers.getInstance().newLock(555));
     }
 
     /**
@@ -226,7 +225,7 @@ public class ByTIManager {
                 firstNo,
                 lastNo,
                 reqCounter,
-                UDScheduler.getInstance().getCurrentUDSConfigurationPrimaries(),
+                AutoScaler.currentPrimaries(),
                 imprecise,
                 byTICloseTimeNs);
 
@@ -250,7 +249,7 @@ public class ByTIManager {
      * @return Delay between two baseloadRequests in ms
      */
     public int calculateBClockIntervalMs() {
-        int udsPrims = UDScheduler.getInstance().getCurrentUDSConfigurationPrimaries();
+        int udsPrims = DeterministicSchedulers.getInstance().getCurrentUDSConfigurationPrimaries();
         // TODO check whether errors due to using integers in division are significant
         if(udsPrims == 1) {
             return maxRoundLatencyMs * byTIClient.getReplyQuorum();
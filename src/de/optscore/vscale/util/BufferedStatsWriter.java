@@ -1,17 +1,53 @@
 package de.optscore.vscale.util;
 
+import de.uniulm.vs.art.uds.UDSLockMetricsMXBean;
+import de.uniulm.vs.art.uds.UDSMetricsMXBean;
+
 import java.io.BufferedWriter;
 import java.io.IOException;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Paths;
+import java.util.Arrays;
 
+/**
+ * Writes stats records to a CSV file, or to a columnar binary file (see {@link ColumnarStatsWriter}) if the file name
+ * ends in {@link ColumnarStatsWriter#FILE_EXTENSION}.
+ */
 public class BufferedStatsWriter {
 
     private BufferedWriter writer;
     private static final String DEFAULT_SEPARATOR = ",";
 
+    /**
+     * Set instead of writer for columnar files. Rows are written while holding its monitor, so the values of
+     * concurrently written rows do not mix.
+     */
+    private ColumnarStatsWriter columnarWriter;
+
     public BufferedStatsWriter(String fileName, String[] headers) {
+        this(fileName, headers, null);
+    }
+
+    /**
+     * @param fileName    the file to write
+     * @param headers     the column names
+     * @param columnTypes how the columns are encoded if the file is columnar; null to encode all columns as
+     *                    {@link ColumnarStatsWriter.ColumnType#LONG}. Ignored for CSV files.
+     */
+    public BufferedStatsWriter(String fileName, String[] headers, ColumnarStatsWriter.ColumnType[] columnTypes) {
+        if(fileName.endsWith(ColumnarStatsWriter.FILE_EXTENSION)) {
+            if(columnTypes == null) {
+                columnTypes = new ColumnarStatsWriter.ColumnType[headers.length];
+                Arrays.fill(columnTypes, ColumnarStatsWriter.ColumnType.LONG);
+            }
+            try {
+                this.columnarWriter = new ColumnarStatsWriter(Paths.get(fileName), headers, columnTypes);
+            } catch(IOException e) {
+                e.printStackTrace();
+            }
+            return;
+        }
         // initialize the writer
         try {
             this.writer = Files.newBufferedWriter(Paths.get(fileName), StandardCharsets.UTF_8);
@@ -30,6 +66,16 @@ public class BufferedStatsWriter {
      * @param reqStatsClient The object containing all details about the request (clientPid, opId, times)
      */
     public void writeEvalReqStatsClient(EvalReqStatsClient reqStatsClient) {
+        if(columnarWriter != null) {
+            synchronized(columnarWriter) {
+                columnarWriter.put(reqStatsClient.getClientPid())
+                        .put(reqStatsClient.getOpId())
+                        .put(reqStatsClient.getSentTime())
+                        .put(reqStatsClient.getReceivedTime());
+                endRow();
+            }
+            return;
+        }
         String line = reqStatsClient.getClientPid() + DEFAULT_SEPARATOR
                 + reqStatsClient.getOpId() + DEFAULT_SEPARATOR
                 + reqStatsClient.getSentTime() + DEFAULT_SEPARATOR
@@ -48,6 +94,18 @@ public class BufferedStatsWriter {
      * @param reqStatsServer The object containing all details about the request
      */
     public void writeEvalReqStatsServer(long currentTimeNs, EvalReqStatsServer reqStatsServer) {
+        if(columnarWriter != null) {
+            synchronized(columnarWriter) {
+                columnarWriter.put(currentTimeNs)
+                        .put(reqStatsServer.getReqReceivedInServiceReplica())
+                        .put(reqStatsServer.getReqSubmittedtoUDS())
+                        .put(reqStatsServer.getReqStartedExecution())
+                        .put(reqStatsServer.getReqEndedExecution())
+                        .put(reqStatsServer.getReqFullyCompletedAndSentBackReply());
+                endRow();
+            }
+            return;
+        }
         String line = currentTimeNs + DEFAULT_SEPARATOR
                 + reqStatsServer.getReqReceivedInServiceReplica() + DEFAULT_SEPARATOR
                 + reqStatsServer.getReqSubmittedtoUDS() + DEFAULT_SEPARATOR
@@ -63,6 +121,14 @@ public class BufferedStatsWriter {
     }
 
     public void writeCPUReconfigured(long currentTimeNs, int currentCoreCount) {
+        if(columnarWriter != null) {
+            synchronized(columnarWriter) {
+                columnarWriter.put(currentTimeNs)
+                        .put(currentCoreCount);
+                endRow();
+            }
+            return;
+        }
         String line = currentTimeNs + DEFAULT_SEPARATOR
                 + currentCoreCount;
         try {
@@ -79,6 +145,20 @@ public class BufferedStatsWriter {
                                 int firstNo, int lastNo, int reqCounter, int currentPrimaries,
                                 boolean imprecise,
                                 long byTICloseTime) {
+        if(columnarWriter != null) {
+            synchronized(columnarWriter) {
+                columnarWriter.put(currentTimeNs)
+                        .put(byTIId)
+                        .put(firstNo)
+                        .put(lastNo)
+                        .put(reqCounter)
+                        .put(currentPrimaries)
+                        .put(imprecise ? 1 : 0)
+                        .put(byTICloseTime);
+                endRow();
+            }
+            return;
+        }
         String line = currentTimeNs + DEFAULT_SEPARATOR
                 + byTIId + DEFAULT_SEPARATOR
                 + firstNo + DEFAULT_SEPARATOR
@@ -97,6 +177,17 @@ public class BufferedStatsWriter {
 
     public void writeByTITick(long currentTimeNs, int senderId, int globalReqSequence,
                               int tickReqCounter, int consensusId) {
+        if(columnarWriter != null) {
+            synchronized(columnarWriter) {
+                columnarWriter.put(currentTimeNs)
+                        .put(senderId)
+                        .put(globalReqSequence)
+                        .put(tickReqCounter)
+                        .put(consensusId);
+                endRow();
+            }
+            return;
+        }
         String line = currentTimeNs + DEFAULT_SEPARATOR
                 + senderId + DEFAULT_SEPARATOR
                 + globalReqSequence + DEFAULT_SEPARATOR
@@ -110,8 +201,105 @@ public class BufferedStatsWriter {
         }
     }
 
+    /**
+     * Writes a snapshot of the runtime metrics of a UDS partition
+     */
+    public void writeUDSMetrics(long currentTimeNs, UDSMetricsMXBean metrics) {
+        if(columnarWriter != null) {
+            synchronized(columnarWriter) {
+                columnarWriter.put(currentTimeNs)
+                        .put(metrics.getPartition())
+                        .put(metrics.getCurrentRound())
+                        .put(metrics.getThreadsTerminated())
+                        .put((long) metrics.getRoundDurationMean())
+                        .put(metrics.getRoundDurationP50())
+                        .put(metrics.getRoundDurationP99())
+                        .put(metrics.getRoundDurationMax())
+                        .put(metrics.getIdlePrimaries())
+                        .put(metrics.getIdlePrimaryTime())
+                        .put(metrics.getWastedSteps())
+                        .put(metrics.getAdmissionWaits())
+                        .put(metrics.getAdmissionWaitTime());
+                endRow();
+            }
+            return;
+        }
+        String line = currentTimeNs + DEFAULT_SEPARATOR
+                + metrics.getPartition() + DEFAULT_SEPARATOR
+                + metrics.getCurrentRound() + DEFAULT_SEPARATOR
+                + metrics.getThreadsTerminated() + DEFAULT_SEPARATOR
+                + (long) metrics.getRoundDurationMean() + DEFAULT_SEPARATOR
+                + metrics.getRoundDurationP50() + DEFAULT_SEPARATOR
+                + metrics.getRoundDurationP99() + DEFAULT_SEPARATOR
+                + metrics.getRoundDurationMax() + DEFAULT_SEPARATOR
+                + metrics.getIdlePrimaries() + DEFAULT_SEPARATOR
+                + metrics.getIdlePrimaryTime() + DEFAULT_SEPARATOR
+                + metrics.getWastedSteps() + DEFAULT_SEPARATOR
+                + metrics.getAdmissionWaits() + DEFAULT_SEPARATOR
+                + metrics.getAdmissionWaitTime();
+        try {
+            writer.write(line);
+            writer.newLine();
+        } catch(IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Writes a snapshot of the wait and hold times of a UDSLock
+     */
+    public void writeUDSLockMetrics(long currentTimeNs, UDSLockMetricsMXBean metrics) {
+        if(columnarWriter != null) {
+            synchronized(columnarWriter) {
+                columnarWriter.put(currentTimeNs)
+                        .put(metrics.getLockID())
+                        .put(metrics.getAcquisitions())
+                        .put((long) metrics.getWaitTimeMean())
+                        .put(metrics.getWaitTimeP99())
+                        .put(metrics.getWaitTimeMax())
+                        .put((long) metrics.getHoldTimeMean())
+                        .put(metrics.getHoldTimeP99())
+                        .put(metrics.getHoldTimeMax());
+                endRow();
+            }
+            return;
+        }
+        String line = currentTimeNs + DEFAULT_SEPARATOR
+                + metrics.getLockID() + DEFAULT_SEPARATOR
+                + metrics.getAcquisitions() + DEFAULT_SEPARATOR
+                + (long) metrics.getWaitTimeMean() + DEFAULT_SEPARATOR
+                + metrics.getWaitTimeP99() + DEFAULT_SEPARATOR
+                + metrics.getWaitTimeMax() + DEFAULT_SEPARATOR
+                + (long) metrics.getHoldTimeMean() + DEFAULT_SEPARATOR
+                + metrics.getHoldTimeP99() + DEFAULT_SEPARATOR
+                + metrics.getHoldTimeMax();
+        try {
+            writer.write(line);
+            writer.newLine();
+        } catch(IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Completes a row of the columnar writer. Called while holding its monitor.
+     */
+    private void endRow() {
+        try {
+            columnarWriter.endRow();
+        } catch(IOException e) {
+            e.printStackTrace();
+        }
+    }
+
     public void flush() {
         try {
+            if(columnarWriter != null) {
+                synchronized(columnarWriter) {
+                    columnarWriter.flush();
+                }
+                return;
+            }
             this.writer.flush();
         } catch(IOException e) {
             e.printStackTrace();
@@ -120,6 +308,12 @@ public class BufferedStatsWriter {
 
     public void close() {
         try {
+            if(columnarWriter != null) {
+                synchronized(columnarWriter) {
+                    columnarWriter.close();
+                }
+                return;
+            }
             this.writer.close();
         } catch(IOException e) {
             e.printStackTrace();
@@ -0,0 +1,178 @@
+package de.optscore.vscale.util;
+
+import de.optscore.vscale.util.ColumnarStatsWriter.ColumnType;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Streaming reader of files written by {@link ColumnarStatsWriter}. The file is read one chunk at a time, and only
+ * the columns asked for with {@link #getColumn(int)} are decoded, so files of any size can be processed with the
+ * memory of a single chunk. A chunk cut off at the end of the file (e.g. because the process writing it has been
+ * killed) ends the file.
+ *
+ * Usage:
+ * <pre>
+ * try(ColumnarStatsReader reader = new ColumnarStatsReader(file)) {
+ *     int received = reader.columnIndex("receivedTimeNs");
+ *     while(reader.nextChunk()) {
+ *         long[] values = reader.getColumn(received);
+ *         for(int row = 0; row &lt; reader.getRows(); row++) { ... }
+ *     }
+ * }
+ * </pre>
+ *
+ * Not thread-safe.
+ */
+public final class ColumnarStatsReader implements AutoCloseable {
+
+    private final DataInputStream in;
+    private final String[] names;
+    private final ColumnType[] types;
+
+    /**
+     * Encoded values of the current chunk, by column
+     */
+    private final byte[][] encoded;
+    private final int[] encodedLengths;
+
+    /**
+     * Decoded values of the current chunk, by column, valid if decoded[column] is set
+     */
+    private final long[][] values;
+    private final boolean[] decoded;
+    private int rows;
+
+    /**
+     * Opens a file and reads its header
+     *
+     * @throws IOException if the file cannot be read or has not been written by a ColumnarStatsWriter
+     */
+    public ColumnarStatsReader(Path file) throws IOException {
+        this.in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file), 1 << 16));
+        try {
+            if(in.readInt() != ColumnarStatsWriter.MAGIC) {
+                throw new IOException(file + " is not a columnar stats file");
+            }
+            int version = in.readInt();
+            if(version != ColumnarStatsWriter.VERSION) {
+                throw new IOException(file + " has unsupported version " + version);
+            }
+            int columns = in.readInt();
+            this.names = new String[columns];
+            this.types = new ColumnType[columns];
+            for(int i = 0; i < columns; i++) {
+                names[i] = in.readUTF();
+                types[i] = ColumnType.values()[in.readByte()];
+            }
+        } catch(IOException | RuntimeException e) {
+            in.close();
+            throw e;
+        }
+        this.encoded = new byte[names.length][0];
+        this.encodedLengths = new int[names.length];
+        this.values = new long[names.length][0];
+        this.decoded = new boolean[names.length];
+    }
+
+    public int getColumnCount() {
+        return names.length;
+    }
+
+    public String getColumnName(int column) {
+        return names[column];
+    }
+
+    public ColumnType getColumnType(int column) {
+        return types[column];
+    }
+
+    /**
+     * @return the index of the column with the given name, -1 if there is none
+     */
+    public int columnIndex(String name) {
+        for(int i = 0; i < names.length; i++) {
+            if(names[i].equals(name)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Reads the next chunk
+     *
+     * @return false if there are no more (complete) chunks
+     */
+    public boolean nextChunk() throws IOException {
+        try {
+            rows = in.readInt();
+            for(int c = 0; c < names.length; c++) {
+                int length = in.readInt();
+                if(encoded[c].length < length) {
+                    encoded[c] = new byte[length];
+                }
+                in.readFully(encoded[c], 0, length);
+                encodedLengths[c] = length;
+                decoded[c] = false;
+            }
+            return true;
+        } catch(EOFException e) {
+            rows = 0;
+            return false;
+        }
+    }
+
+    /**
+     * @return the number of rows in the current chunk
+     */
+    public int getRows() {
+        return rows;
+    }
+
+    /**
+     * Decodes a column of the current chunk
+     *
+     * @return the values of the column, valid in [0, getRows()); overwritten by the next chunk
+     */
+    public long[] getColumn(int column) {
+        if(!decoded[column]) {
+            if(values[column].length < rows) {
+                values[column] = new long[rows];
+            }
+            decode(encoded[column], encodedLengths[column], types[column] == ColumnType.LONG, values[column]);
+            decoded[column] = true;
+        }
+        return values[column];
+    }
+
+    private void decode(byte[] bytes, int length, boolean delta, long[] out) {
+        int position = 0;
+        long previous = 0;
+        for(int row = 0; row < rows && position < length; row++) {
+            long zigzag = 0;
+            int shift = 0;
+            byte b;
+            do {
+                b = bytes[position++];
+                zigzag |= (long) (b & 0x7F) << shift;
+                shift += 7;
+            } while(b < 0);
+            long value = (zigzag >>> 1) ^ -(zigzag & 1);
+            if(delta) {
+                value += previous;
+                previous = value;
+            }
+            out[row] = value;
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+}
@@ -0,0 +1,165 @@
+package de.optscore.vscale.util;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Streaming writer of the columnar stats format, used by {@link BufferedStatsWriter} for files ending in
+ * {@link #FILE_EXTENSION}. Rows are buffered as primitives and written in chunks, column by column, so the values of
+ * a column are stored next to each other and compress well.
+ *
+ * File layout (big-endian, see {@link DataOutputStream}):
+ * <pre>
+ * header: int MAGIC, int VERSION, int columnCount, columnCount x (UTF name, byte type)
+ * chunk:  int rows, columnCount x (int byteCount, byteCount bytes of encoded values)
+ * </pre>
+ * followed by any number of chunks until the end of the file. Every value is written as a zigzag-encoded varint:
+ * {@link ColumnType#INT} columns (ids, counters) as is, {@link ColumnType#LONG} columns (timestamps) as the
+ * difference to the value of the row before in the same chunk, so every chunk can be decoded on its own. Read with
+ * {@link ColumnarStatsReader}.
+ *
+ * Not thread-safe.
+ */
+public final class ColumnarStatsWriter implements AutoCloseable {
+
+    public static final String FILE_EXTENSION = ".cstats";
+
+    static final int MAGIC = 0x43535441;
+    static final int VERSION = 1;
+
+    private static final int CHUNK_ROWS = 8192;
+
+    /**
+     * Maximum length of a varint-encoded long
+     */
+    static final int MAX_VARINT_BYTES = 10;
+
+    public enum ColumnType {
+        /**
+         * Ids and counters, written as is
+         */
+        INT,
+        /**
+         * Timestamps and other increasing values, written as differences between consecutive rows
+         */
+        LONG
+    }
+
+    private final DataOutputStream out;
+    private final ColumnType[] types;
+
+    /**
+     * Values of the buffered rows, by column
+     */
+    private final long[][] values;
+    private final byte[] encoded = new byte[CHUNK_ROWS * MAX_VARINT_BYTES];
+    private int rows;
+    private int column;
+
+    /**
+     * Creates the file, overwriting an existing one, and writes the header
+     *
+     * @param file  the file to write
+     * @param names names of the columns
+     * @param types types of the columns, in the same order
+     * @throws IOException if the file cannot be written
+     */
+    public ColumnarStatsWriter(Path file, String[] names, ColumnType[] types) throws IOException {
+        if(names.length != types.length) {
+            throw new IllegalArgumentException("Got " + names.length + " column names but " + types.length +
+                    " column types");
+        }
+        this.types = types.clone();
+        this.values = new long[types.length][CHUNK_ROWS];
+        this.out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file), 1 << 16));
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeInt(types.length);
+        for(int i = 0; i < types.length; i++) {
+            out.writeUTF(names[i]);
+            out.writeByte(types[i].ordinal());
+        }
+    }
+
+    /**
+     * Sets the value of the next column of the current row
+     *
+     * @return this writer, for setting the next column
+     */
+    public ColumnarStatsWriter put(long value) {
+        values[column++][rows] = value;
+        return this;
+    }
+
+    /**
+     * Completes the current row, writing a chunk if enough rows are buffered
+     *
+     * @throws IllegalStateException if not all columns of the row have been set
+     */
+    public void endRow() throws IOException {
+        if(column != types.length) {
+            throw new IllegalStateException("Row has " + column + " values but there are " + types.length +
+                    " columns");
+        }
+        column = 0;
+        if(++rows == CHUNK_ROWS) {
+            writeChunk();
+        }
+    }
+
+    private void writeChunk() throws IOException {
+        if(rows == 0) {
+            return;
+        }
+        out.writeInt(rows);
+        for(int c = 0; c < types.length; c++) {
+            long[] columnValues = values[c];
+            boolean delta = types[c] == ColumnType.LONG;
+            long previous = 0;
+            int length = 0;
+            for(int row = 0; row < rows; row++) {
+                long value = columnValues[row];
+                length = writeVarint(delta ? value - previous : value, length);
+                previous = value;
+            }
+            out.writeInt(length);
+            out.write(encoded, 0, length);
+        }
+        rows = 0;
+    }
+
+    /**
+     * Zigzag-encodes a value into {@link #encoded}, so small negative values take few bytes as well
+     *
+     * @return the position after the encoded value
+     */
+    private int writeVarint(long value, int position) {
+        long zigzag = (value << 1) ^ (value >> 63);
+        while((zigzag & ~0x7FL) != 0) {
+            encoded[position++] = (byte) ((zigzag & 0x7F) | 0x80);
+            zigzag >>>= 7;
+        }
+        encoded[position++] = (byte) zigzag;
+        return position;
+    }
+
+    /**
+     * Flushes the chunks written so far to the file. Rows of the chunk being buffered stay in memory, so periodic
+     * flushes do not cut the file into small chunks; they are written when the chunk is full or on {@link #close()}.
+     */
+    public void flush() throws IOException {
+        out.flush();
+    }
+
+    /**
+     * Writes the buffered rows as a (possibly smaller) last chunk and closes the file
+     */
+    @Override
+    public void close() throws IOException {
+        writeChunk();
+        out.close();
+    }
+}
@@ -0,0 +1,77 @@
+package de.optscore.vscale.util;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/**
+ * Converts the binary request stats files written by {@link EvalReqStatsRecorder} into CSV files with the columns of
+ * {@link EvalReqStatsRecorder#COLUMN_NAMES}.
+ *
+ * Usage: EvalReqStatsConverter file.bin... (every file.bin is converted to file.csv next to it)
+ */
+public class EvalReqStatsConverter {
+
+    /**
+     * Converts a binary request stats file
+     *
+     * @param binaryFile the file written by an EvalReqStatsRecorder
+     * @param csvFile    the CSV file to write, overwritten if it exists
+     * @return the number of records converted
+     * @throws IOException if the binary file cannot be read or is not a request stats file
+     */
+    public static long convert(Path binaryFile, Path csvFile) throws IOException {
+        BufferedStatsWriter csvWriter = new BufferedStatsWriter(csvFile.toString(),
+                EvalReqStatsRecorder.COLUMN_NAMES);
+        EvalReqStatsServer stats = new EvalReqStatsServer();
+        long converted = 0;
+        try(DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(binaryFile),
+                1 << 16))) {
+            if(in.readLong() != EvalReqStatsRecorder.MAGIC || in.readInt() != EvalReqStatsRecorder.COLUMNS) {
+                throw new IOException(binaryFile + " is not a request stats file");
+            }
+            in.readInt();
+            // the count in the header is up to date even if the server has not been shut down cleanly, while the
+            // file may have been extended beyond the last record
+            long count = in.readLong();
+            in.skipBytes(EvalReqStatsRecorder.HEADER_BYTES - EvalReqStatsRecorder.COUNT_OFFSET - Long.BYTES);
+            for(; converted < count; converted++) {
+                long currentTimeNs = in.readLong();
+                stats.setReqReceivedInServiceReplica(in.readLong());
+                stats.setReqSubmittedtoUDS(in.readLong());
+                stats.setReqStartedExecution(in.readLong());
+                stats.setReqEndedExecution(in.readLong());
+                stats.setReqFullyCompletedAndSentBackReply(in.readLong());
+                csvWriter.writeEvalReqStatsServer(currentTimeNs, stats);
+            }
+        } catch(EOFException e) {
+            System.err.println(binaryFile + " ends after " + converted + " records");
+        } finally {
+            csvWriter.close();
+        }
+        return converted;
+    }
+
+    public static void main(String[] args) {
+        if(args.length == 0) {
+            System.out.println("Usage: EvalReqStatsConverter file.bin...");
+            System.exit(1);
+        }
+        for(String arg : args) {
+            Path binaryFile = Paths.get(arg);
+            String name = binaryFile.getFileName().toString();
+            Path csvFile = binaryFile.resolveSibling((name.endsWith(".bin") ?
+                    name.substring(0, name.length() - 4) : name) + ".csv");
+            try {
+                long records = convert(binaryFile, csvFile);
+                System.out.println("Converted " + records + " records from " + binaryFile + " to " + csvFile);
+            } catch(IOException e) {
+                System.err.println("Could not convert " + binaryFile + ": " + e.getMessage());
+            }
+        }
+    }
+}
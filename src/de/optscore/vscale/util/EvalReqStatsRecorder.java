@@ -0,0 +1,265 @@
+package de.optscore.vscale.util;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.logging.Logger;
+
+/**
+ * Records the profiling stats of EvalRequests on the server without costing the requests execution time. The
+ * threads sending replies copy the timestamps of a request into a preallocated ring buffer of primitive slots; a
+ * single background thread drains the ring into a memory-mapped binary file of fixed-width records.
+ *
+ * File layout (big-endian): a header of {@link #HEADER_BYTES} bytes holding the magic number, the number of columns
+ * per record and the number of records written so far, followed by the records. Every record consists of
+ * {@link #COLUMNS} longs, in the order of {@link #COLUMN_NAMES}. {@link EvalReqStatsConverter} turns such a file
+ * into the CSV the server used to write directly.
+ *
+ * If the ring is full because the writer cannot keep up, records are dropped instead of stalling the requests; the
+ * number of dropped records is logged on {@link #close()}.
+ */
+public final class EvalReqStatsRecorder implements AutoCloseable {
+
+    /**
+     * Columns of a record. The first one is the time the record has been written to the file.
+     */
+    public static final String[] COLUMN_NAMES = {"currentTimeNs", "reqReceivedInServiceReplica", "reqSubmittedtoUDS",
+            "reqStartedExecution", "reqEndedExecution", "reqFullyCompletedAndSentBackReply"};
+
+    static final int COLUMNS = COLUMN_NAMES.length;
+
+    static final long MAGIC = 0x4556524551535453L;
+
+    static final int HEADER_BYTES = 32;
+
+    static final int RECORD_BYTES = COLUMNS * Long.BYTES;
+
+    /**
+     * Offset of the record count in the header
+     */
+    static final int COUNT_OFFSET = 16;
+
+    /**
+     * Records per mapped region of the file
+     */
+    private static final int RECORDS_PER_REGION = 1 << 20;
+
+    /**
+     * Timestamps per slot of the ring, i.e. all columns except the write time
+     */
+    private static final int SLOT_LONGS = COLUMNS - 1;
+
+    private static final long DRAIN_INTERVAL_NS = 1000000L;
+
+    private static final Logger logger = Logger.getLogger(EvalReqStatsRecorder.class.getName());
+
+    /**
+     * The ring: slot i holds its timestamps at [i * SLOT_LONGS, (i + 1) * SLOT_LONGS)
+     */
+    private final long[] slots;
+
+    /**
+     * Sequence number of the record held by every slot, published after its timestamps have been written
+     */
+    private final AtomicLongArray published;
+
+    private final int mask;
+
+    /**
+     * Sequence number of the next record claimed by a producer
+     */
+    private final AtomicLong head = new AtomicLong(0);
+
+    /**
+     * Sequence number of the next record drained by the writer. Only written by the writer thread.
+     */
+    private final AtomicLong tail = new AtomicLong(0);
+
+    private final LongAdder dropped = new LongAdder();
+
+    private final FileChannel channel;
+    private final MappedByteBuffer header;
+    private MappedByteBuffer region;
+    private long written;
+
+    /**
+     * Added to System.nanoTime() for the write time of a record
+     */
+    private final long nanoTimeOffset;
+
+    private final Thread writer;
+    private volatile boolean closed;
+
+    /**
+     * Creates the file, truncating an existing one, and starts the background writer
+     *
+     * @param file           the binary file to write
+     * @param capacity       number of records the ring holds, rounded up to a power of two
+     * @param nanoTimeOffset added to System.nanoTime() for the write time of a record, so it matches the timestamps
+     *                       of the requests
+     * @throws IOException if the file cannot be created
+     */
+    public EvalReqStatsRecorder(Path file, int capacity, long nanoTimeOffset) throws IOException {
+        this.nanoTimeOffset = nanoTimeOffset;
+        int slotCount = Integer.highestOneBit(Math.max(2, capacity) * 2 - 1);
+        this.slots = new long[slotCount * SLOT_LONGS];
+        this.published = new AtomicLongArray(slotCount);
+        for(int i = 0; i < slotCount; i++) {
+            published.set(i, -1);
+        }
+        this.mask = slotCount - 1;
+
+        this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        this.header = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_BYTES);
+        header.putLong(0, MAGIC);
+        header.putInt(8, COLUMNS);
+        header.putLong(COUNT_OFFSET, 0);
+
+        this.writer = new Thread(this::drainLoop, "evalReqStats-writer");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /**
+     * Copies the timestamps of a completed request into the ring. Never blocks.
+     *
+     * @param stats the stats of the request, may be reused as soon as this returns
+     * @return false if the record has been dropped because the ring is full or the recorder is closed
+     */
+    public boolean record(EvalReqStatsServer stats) {
+        long sequence;
+        do {
+            sequence = head.get();
+            if(closed || sequence - tail.get() > mask) {
+                dropped.increment();
+                return false;
+            }
+        } while(!head.compareAndSet(sequence, sequence + 1));
+
+        int slot = (int) sequence & mask;
+        int base = slot * SLOT_LONGS;
+        slots[base] = stats.getReqReceivedInServiceReplica();
+        slots[base + 1] = stats.getReqSubmittedtoUDS();
+        slots[base + 2] = stats.getReqStartedExecution();
+        slots[base + 3] = stats.getReqEndedExecution();
+        slots[base + 4] = stats.getReqFullyCompletedAndSentBackReply();
+        published.lazySet(slot, sequence);
+        return true;
+    }
+
+    private void drainLoop() {
+        while(!closed) {
+            if(drain() == 0) {
+                LockSupport.parkNanos(DRAIN_INTERVAL_NS);
+            }
+        }
+    }
+
+    /**
+     * Writes all published records to the file. Only called by the writer thread, or after it has stopped.
+     *
+     * @return the number of records written
+     */
+    private int drain() {
+        long sequence = tail.get();
+        int count = 0;
+        long currentTimeNs = 0;
+        while(true) {
+            int slot = (int) sequence & mask;
+            if(published.get(slot) != sequence) {
+                break;
+            }
+            if(count == 0) {
+                currentTimeNs = System.nanoTime() + nanoTimeOffset;
+            }
+            MappedByteBuffer out = region();
+            if(out == null) {
+                break;
+            }
+            int base = slot * SLOT_LONGS;
+            out.putLong(currentTimeNs);
+            for(int i = 0; i < SLOT_LONGS; i++) {
+                out.putLong(slots[base + i]);
+            }
+            written++;
+            count++;
+            sequence++;
+            // frees the slot for the producers
+            tail.lazySet(sequence);
+        }
+        if(count > 0) {
+            header.putLong(COUNT_OFFSET, written);
+        }
+        return count;
+    }
+
+    /**
+     * @return the mapped region the next record goes to, mapping the next one if the current one is full; null if
+     * the file cannot be extended
+     */
+    private MappedByteBuffer region() {
+        if(region == null || !region.hasRemaining()) {
+            try {
+                region = channel.map(FileChannel.MapMode.READ_WRITE, HEADER_BYTES + written * RECORD_BYTES,
+                        (long) RECORDS_PER_REGION * RECORD_BYTES);
+            } catch(IOException e) {
+                if(!closed) {
+                    e.printStackTrace();
+                }
+                closed = true;
+                return null;
+            }
+        }
+        return region;
+    }
+
+    /**
+     * @return the number of records dropped so far because the ring was full
+     */
+    public long getDropped() {
+        return dropped.sum();
+    }
+
+    /**
+     * Stops the writer, writes the remaining records and cuts the file down to the records written
+     */
+    @Override
+    public void close() {
+        if(closed) {
+            return;
+        }
+        closed = true;
+        try {
+            writer.join();
+        } catch(InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        drain();
+        header.force();
+        if(region != null) {
+            region.force();
+        }
+        try {
+            // may fail while regions are still mapped on some platforms; readers rely on the count in the header
+            channel.truncate(HEADER_BYTES + written * RECORD_BYTES);
+        } catch(IOException e) {
+            logger.fine("Could not truncate the request stats file: " + e.getMessage());
+        }
+        try {
+            channel.close();
+        } catch(IOException e) {
+            e.printStackTrace();
+        }
+        if(dropped.sum() > 0) {
+            logger.warning("Dropped " + dropped.sum() + " request stats records because the writer could not " +
+                    "keep up");
+        }
+    }
+}
@@ -53,6 +53,17 @@ public class EvalReqStatsServer {
         this.reqFullyCompletedAndSentBackReply = reqFullyCompletedAndSentBackReply;
     }
 
+    /**
+     * Clears all timestamps, so the object can be reused for another request
+     */
+    public void reset() {
+        reqReceivedInServiceReplica = 0;
+        reqSubmittedtoUDS = 0;
+        reqStartedExecution = 0;
+        reqEndedExecution = 0;
+        reqFullyCompletedAndSentBackReply = 0;
+    }
+
     public long[] getStatsAsArray() {
         return new long[]{ reqReceivedInServiceReplica, reqSubmittedtoUDS, reqStartedExecution, reqEndedExecution,
                 reqFullyCompletedAndSentBackReply };
@@ -0,0 +1,293 @@
+package de.optscore.vscale.util;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Analyzes columnar stats files (see {@link ColumnarStatsWriter}) one chunk at a time, so runs of any length are
+ * processed in constant memory.
+ *
+ * Usage:
+ * <pre>
+ * StatsAnalyzer latency startColumn endColumn file...
+ *     Throughput per second (by endColumn) and percentiles of endColumn - startColumn, e.g.
+ *     "latency sentTimeNs receivedTimeNs eval-output-clients/testcase/run{1,2,3}/clientstats-*.cstats".
+ *     Files in the same directory belong to the same run (e.g. the files of all client machines).
+ * StatsAnalyzer csv file...
+ *     Converts every file.cstats to file.csv next to it
+ * </pre>
+ */
+public class StatsAnalyzer {
+
+    private static final long NANOS_PER_SECOND = 1000000000L;
+
+    private static final double[] PERCENTILES = {50, 90, 99, 99.9};
+
+    /**
+     * Requests completed per second of a run, and the latencies of its requests
+     */
+    private static final class Run {
+        private final String name;
+        private final LatencyHistogram latencies = new LatencyHistogram();
+        private long[] perSecond = new long[64];
+        private long firstSecond = Long.MIN_VALUE;
+        private int seconds;
+
+        private Run(String name) {
+            this.name = name;
+        }
+
+        private void add(long startNs, long endNs) {
+            latencies.record(endNs - startNs);
+            long second = Math.floorDiv(endNs, NANOS_PER_SECOND);
+            if(firstSecond == Long.MIN_VALUE) {
+                firstSecond = second;
+            } else if(second < firstSecond) {
+                // files of a run are not read in time order, so earlier seconds can still show up
+                int shift = (int) (firstSecond - second);
+                long[] shifted = new long[Math.max(perSecond.length, seconds + shift)];
+                System.arraycopy(perSecond, 0, shifted, shift, seconds);
+                perSecond = shifted;
+                seconds += shift;
+                firstSecond = second;
+            }
+            int index = (int) (second - firstSecond);
+            if(index >= perSecond.length) {
+                perSecond = Arrays.copyOf(perSecond, Math.max(index + 1, perSecond.length * 2));
+            }
+            perSecond[index]++;
+            seconds = Math.max(seconds, index + 1);
+        }
+    }
+
+    /**
+     * Histogram of non-negative values with log-linear buckets: values below 128 are counted exactly, larger ones in
+     * 64 buckets per power of two, so percentiles are accurate to within about 1.6%
+     */
+    static final class LatencyHistogram {
+
+        private static final int SUB_BUCKET_BITS = 6;
+        private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+        private static final int EXACT = SUB_BUCKETS * 2;
+
+        private final long[] buckets = new long[EXACT + (63 - SUB_BUCKET_BITS - 1) * SUB_BUCKETS];
+        private long count;
+        private long sum;
+        private long max;
+
+        void record(long value) {
+            if(value < 0) {
+                value = 0;
+            }
+            buckets[indexOf(value)]++;
+            count++;
+            sum += value;
+            max = Math.max(max, value);
+        }
+
+        void add(LatencyHistogram other) {
+            for(int i = 0; i < buckets.length; i++) {
+                buckets[i] += other.buckets[i];
+            }
+            count += other.count;
+            sum += other.sum;
+            max = Math.max(max, other.max);
+        }
+
+        private static int indexOf(long value) {
+            if(value < EXACT) {
+                return (int) value;
+            }
+            int exponent = 63 - Long.numberOfLeadingZeros(value);
+            int subBucket = (int) (value >>> (exponent - SUB_BUCKET_BITS)) - SUB_BUCKETS;
+            return EXACT + (exponent - SUB_BUCKET_BITS - 1) * SUB_BUCKETS + subBucket;
+        }
+
+        private static long upperBoundOf(int index) {
+            if(index < EXACT) {
+                return index;
+            }
+            int exponent = (index - EXACT) / SUB_BUCKETS + SUB_BUCKET_BITS + 1;
+            long top = SUB_BUCKETS + (index - EXACT) % SUB_BUCKETS;
+            return ((top + 1) << (exponent - SUB_BUCKET_BITS)) - 1;
+        }
+
+        long getCount() {
+            return count;
+        }
+
+        double getMean() {
+            return count == 0 ? 0d : (double) sum / count;
+        }
+
+        long getMax() {
+            return max;
+        }
+
+        /**
+         * @param percentile between 0 and 100
+         * @return the upper bound of the bucket containing the percentile, 0 if nothing was recorded
+         */
+        long getPercentile(double percentile) {
+            if(count == 0) {
+                return 0;
+            }
+            long rank = Math.max(1, (long) Math.ceil(count * percentile / 100d));
+            long seen = 0;
+            for(int i = 0; i < buckets.length; i++) {
+                seen += buckets[i];
+                if(seen >= rank) {
+                    return Math.min(max, upperBoundOf(i));
+                }
+            }
+            return max;
+        }
+    }
+
+    /**
+     * Reads the files of all runs and prints throughput and latency statistics
+     */
+    static void analyzeLatency(String startColumn, String endColumn, List<Path> files) throws IOException {
+        Map<Path, Run> runs = new LinkedHashMap<>();
+        for(Path file : files) {
+            Path directory = file.toAbsolutePath().getParent();
+            Run run = runs.computeIfAbsent(directory, d -> new Run(String.valueOf(file.getParent())));
+            try(ColumnarStatsReader reader = new ColumnarStatsReader(file)) {
+                int start = reader.columnIndex(startColumn);
+                int end = reader.columnIndex(endColumn);
+                if(start < 0 || end < 0) {
+                    throw new IOException(file + " has no column " + (start < 0 ? startColumn : endColumn));
+                }
+                while(reader.nextChunk()) {
+                    long[] startValues = reader.getColumn(start);
+                    long[] endValues = reader.getColumn(end);
+                    for(int row = 0; row < reader.getRows(); row++) {
+                        run.add(startValues[row], endValues[row]);
+                    }
+                }
+            }
+        }
+
+        // throughput, by second since the first completed request of every run
+        int maxSeconds = 0;
+        for(Run run : runs.values()) {
+            maxSeconds = Math.max(maxSeconds, run.seconds);
+        }
+        StringBuilder line = new StringBuilder("second");
+        for(Run run : runs.values()) {
+            line.append(',').append(run.name);
+        }
+        System.out.println(line.append(",mean"));
+        for(int second = 0; second < maxSeconds; second++) {
+            line.setLength(0);
+            line.append(second);
+            long sum = 0;
+            for(Run run : runs.values()) {
+                long completed = second < run.seconds ? run.perSecond[second] : 0;
+                sum += completed;
+                line.append(',').append(completed);
+            }
+            System.out.println(line.append(',').append(sum / runs.size()));
+        }
+        System.out.println();
+
+        // latency percentiles, per run and over all runs
+        line.setLength(0);
+        line.append("run,requests,mean");
+        for(double percentile : PERCENTILES) {
+            line.append(",p").append(percentile);
+        }
+        System.out.println(line.append(",max"));
+        LatencyHistogram all = new LatencyHistogram();
+        for(Run run : runs.values()) {
+            printLatencies(run.name, run.latencies);
+            all.add(run.latencies);
+        }
+        printLatencies("all", all);
+    }
+
+    private static void printLatencies(String name, LatencyHistogram latencies) {
+        StringBuilder line = new StringBuilder(name);
+        line.append(',').append(latencies.getCount()).append(',').append((long) latencies.getMean());
+        for(double percentile : PERCENTILES) {
+            line.append(',').append(latencies.getPercentile(percentile));
+        }
+        System.out.println(line.append(',').append(latencies.getMax()));
+    }
+
+    /**
+     * Converts a columnar stats file to CSV
+     *
+     * @return the number of rows converted
+     */
+    static long toCsv(Path file, Path csvFile) throws IOException {
+        long converted = 0;
+        try(ColumnarStatsReader reader = new ColumnarStatsReader(file);
+            BufferedWriter writer = Files.newBufferedWriter(csvFile, StandardCharsets.UTF_8)) {
+            int columns = reader.getColumnCount();
+            for(int c = 0; c < columns; c++) {
+                writer.write(c == 0 ? reader.getColumnName(c) : "," + reader.getColumnName(c));
+            }
+            writer.newLine();
+            long[][] values = new long[columns][];
+            StringBuilder line = new StringBuilder();
+            while(reader.nextChunk()) {
+                for(int c = 0; c < columns; c++) {
+                    values[c] = reader.getColumn(c);
+                }
+                for(int row = 0; row < reader.getRows(); row++) {
+                    line.setLength(0);
+                    for(int c = 0; c < columns; c++) {
+                        if(c > 0) {
+                            line.append(',');
+                        }
+                        line.append(values[c][row]);
+                    }
+                    writer.append(line);
+                    writer.newLine();
+                }
+                converted += reader.getRows();
+            }
+        }
+        return converted;
+    }
+
+    public static void main(String[] args) {
+        try {
+            if(args.length >= 4 && args[0].equals("latency")) {
+                List<Path> files = new ArrayList<>();
+                for(int i = 3; i < args.length; i++) {
+                    files.add(Paths.get(args[i]));
+                }
+                analyzeLatency(args[1], args[2], files);
+                return;
+            }
+            if(args.length >= 2 && args[0].equals("csv")) {
+                for(int i = 1; i < args.length; i++) {
+                    Path file = Paths.get(args[i]);
+                    String name = file.getFileName().toString();
+                    Path csvFile = file.resolveSibling((name.endsWith(ColumnarStatsWriter.FILE_EXTENSION) ?
+                            name.substring(0, name.length() - ColumnarStatsWriter.FILE_EXTENSION.length()) : name)
+                            + ".csv");
+                    System.out.println("Converted " + toCsv(file, csvFile) + " rows from " + file + " to " + csvFile);
+                }
+                return;
+            }
+        } catch(IOException e) {
+            System.err.println(e.getMessage());
+            System.exit(2);
+        }
+        System.out.println("Usage: StatsAnalyzer latency startColumn endColumn file...");
+        System.out.println("       StatsAnalyzer csv file...");
+        System.exit(1);
+    }
+}
@@ -0,0 +1,101 @@
+package de.uniulm.vs.art.uds;
+
+import java.util.List;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+
+/**
+ * A scheduler for deterministic multithreading: requests added in the same order are executed such that their locks
+ * are granted in the same order on every replica, no matter how the threads are timed.
+ *
+ * Implementations are {@link UDScheduler} (classic UDS), {@link LockFreeUDScheduler} (UDS without a global scheduler
+ * lock) and {@link MATScheduler} (one active thread at a time). The implementation used by a replica is selected with
+ * {@link UDSOptions#SCHEDULER}, see {@link DeterministicSchedulers#getInstance()}. Requests must only use locks
+ * created by the scheduler they were added to.
+ */
+public interface DeterministicScheduler {
+
+    /**
+     * Adds a request. Blocks(!) if too many requests are pending. Must be called by the single thread delivering
+     * requests.
+     *
+     * @param r             Runnable responsible for fulfilling the client request
+     * @param replyRunnable Runnable sending the reply, executed after r has finished
+     */
+    void addRequest(Runnable r, Runnable replyRunnable);
+
+    /**
+     * Adds a whole batch of requests (e.g. all requests of one consensus decision) in the given order, like
+     * {@link #addRequest(Runnable, Runnable)}.
+     *
+     * @param requests       Runnables responsible for fulfilling client requests, in the order they were decided
+     * @param replyRunnables Runnables sending the replies, one for every request
+     */
+    void addRequests(List<Runnable> requests, List<Runnable> replyRunnables);
+
+    /**
+     * Adds a request that should be executed soon even if no further requests arrive, e.g. a reconfiguration
+     * decision. Schedulers that need several threads to make progress add empty requests as well.
+     */
+    void addRequestAndFillRound(Runnable r, Runnable replyRunnable);
+
+    /**
+     * Creates a deterministic lock for the requests of this scheduler
+     *
+     * @param id identifier of the lock, used in logs and metrics
+     */
+    Lock newLock(int id);
+
+    /**
+     * Creates a deterministic ReadWriteLock for the requests of this scheduler. Schedulers without a shared read side
+     * serialise readers like writers.
+     *
+     * @param id identifier of the lock, used in logs and metrics
+     */
+    ReadWriteLock newReadWriteLock(int id);
+
+    /**
+     * Requests a new degree of concurrency: the number of primaries for UDS, or the number of threads that may run in
+     * parallel for other schedulers. Has to be called from within a request of this scheduler, so it takes effect at
+     * the same point on every replica.
+     *
+     * @param primaries       the new number of primaries
+     * @param stepsPerPrimary the new number of steps per primary and round, ignored by schedulers without rounds
+     * @return the new number of primaries
+     */
+    int requestReconfiguration(int primaries, int stepsPerPrimary);
+
+    /**
+     * Like {@link #requestReconfiguration(int, int)}, keeping the current number of steps
+     */
+    int requestReconfigurationPrimaries(int primaries);
+
+    /**
+     * Changes the number of primaries by the given number, keeping the current number of steps. The change is based
+     * on the configuration requested before, read at the turn of the caller, so it has the same result on every
+     * replica even while other reconfigurations are pending. The result is at least 1 primary.
+     *
+     * @param delta number of primaries to add (positive) or remove (negative)
+     * @return the new number of primaries
+     */
+    int requestReconfigurationPrimariesBy(int delta);
+
+    /**
+     * Like {@link #requestReconfiguration(int, int)}, keeping the current number of primaries
+     */
+    void requestReconfigurationSteps(int steps);
+
+    /**
+     * @return the current number of primaries (degree of concurrency)
+     */
+    int getCurrentUDSConfigurationPrimaries();
+
+    /**
+     * @return the number of the current round, or of the scheduler's equivalent unit of progress
+     */
+    int getCurrentRoundNumber();
+
+    long getNumberOfThreadsScheduled();
+
+    long getNumberOfThreadsTerminated();
+}
@@ -0,0 +1,51 @@
+package de.uniulm.vs.art.uds;
+
+/**
+ * Access to the {@link DeterministicScheduler} selected with {@link UDSOptions#SCHEDULER}
+ */
+public final class DeterministicSchedulers {
+
+    /**
+     * Not instantiable.
+     */
+    private DeterministicSchedulers() {
+    }
+
+    /**
+     * Singleton pattern. Only the selected scheduler is instantiated.
+     */
+    private static class LazySingletonHolder {
+        static final DeterministicScheduler instance = UDSOptions.LOCK_FREE_SCHEDULER ?
+                LockFreeUDScheduler.getInstance() : UDSOptions.MAT_SCHEDULER ?
+                MATScheduler.getInstance() : UDScheduler.getInstance();
+    }
+
+    /**
+     * Get the selected scheduler. For classic UDS with several partitions (see {@link UDSPartitions}), this is the
+     * scheduler of partition 0.
+     *
+     * @return Singleton instance of the selected scheduler
+     */
+    public static DeterministicScheduler getInstance() {
+        return LazySingletonHolder.instance;
+    }
+
+    /**
+     * Requests a new number of primaries from the selected scheduler, i.e. from all partitions with classic UDS (see
+     * {@link UDSPartitions#reconfigure(java.util.function.Consumer)}). A switch to sequential execution (0 primaries)
+     * is only requested from the partition of the calling thread, since it applies to all partitions at once. Has to
+     * be called from within a request.
+     *
+     * @param primaries the new number of primaries
+     */
+    public static void requestReconfigurationPrimaries(int primaries) {
+        if(!UDSOptions.CLASSIC_SCHEDULER) {
+            getInstance().requestReconfigurationPrimaries(primaries);
+        } else if(primaries == 0) {
+            UDScheduler.UDSThread current = UDScheduler.getCurrentUDSThread();
+            (current != null ? current.getScheduler() : UDScheduler.getInstance()).requestReconfigurationPrimaries(0);
+        } else {
+            UDSPartitions.reconfigure(uds -> uds.requestReconfigurationPrimaries(primaries));
+        }
+    }
+}
@@ -21,7 +21,7 @@ public class DummySharedState {
         this.sharedState = new ArrayList<>(1000);
 
         if(withUDS) {
-            this.stateLock = new UDSLock();
+            this.stateLock = DeterministicSchedulers.getInstance().newLock(0);
         } else {
             this.stateLock = new ReentrantLock();
         }
@@ -0,0 +1,27 @@
+package de.uniulm.vs.art.uds;
+
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+
+/**
+ * ReadWriteLock whose read and write side are the same exclusive lock, for deterministic schedulers without a shared
+ * read side. Readers are serialised like writers.
+ */
+final class ExclusiveReadWriteLock implements ReadWriteLock {
+
+    private final Lock lock;
+
+    ExclusiveReadWriteLock(Lock lock) {
+        this.lock = lock;
+    }
+
+    @Override
+    public Lock readLock() {
+        return lock;
+    }
+
+    @Override
+    public Lock writeLock() {
+        return lock;
+    }
+}
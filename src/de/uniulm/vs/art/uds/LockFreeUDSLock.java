@@ -0,0 +1,231 @@
+package de.uniulm.vs.art.uds;
+
+import de.optscore.vscale.client.ClientWorker;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.Lock;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Represents a UDS-aware Lock for the {@link LockFreeUDScheduler}. If a thread requests/takes this lock,
+ * a UDS-imposed total order will be obeyed.
+ *
+ * Ownership is a CAS-managed reference, the wait queue is guarded by this lock's own monitor. Since only the thread
+ * at the head of the total order can try to acquire any UDSLock, the monitor is only ever contended between that
+ * thread and the current owner releasing the lock, and not taken at all if nobody is enqueued.
+ */
+public class LockFreeUDSLock implements Lock {
+
+    /**
+     * Reference to the UDS Scheduler instance of this JVM
+     */
+    private final LockFreeUDScheduler uds = LockFreeUDScheduler.getInstance();
+
+    /**
+     * Identifier of this Lock
+     */
+    private final int lockID;
+
+    /**
+     * The thread currently holding this UDSLock, null if the lock is currently free.
+     * Invariant (while holding the monitor): if owner is null, enqueuedThreads is empty.
+     */
+    private final AtomicReference<LockFreeUDScheduler.UDSThread> owner = new AtomicReference<>();
+
+    /**
+     * The per-mutex wait queue for threads which requested this Lock but have not yet acquired it.
+     * Guarded by this lock's monitor.
+     */
+    private final ArrayDeque<LockFreeUDScheduler.UDSThread> enqueuedThreads = new ArrayDeque<>();
+
+    /**
+     * Size of enqueuedThreads, readable without taking the monitor
+     */
+    private volatile int waiting = 0;
+
+    /**
+     * Logging
+     */
+    private static final Logger logger = Logger.getLogger(LockFreeUDSLock.class.getName());
+
+    /**
+     * Creates a basic UDSLock
+     */
+    public LockFreeUDSLock() {
+        this(0);
+    }
+
+    public LockFreeUDSLock(int id) {
+        logger.setLevel(ClientWorker.GLOBAL_LOGGING_LEVEL);
+        this.lockID = id;
+    }
+
+    /**
+     * Obeys total order before granting a thread the lock
+     */
+    @Override
+    public void lock() {
+        LockFreeUDScheduler.UDSThread t = LockFreeUDScheduler.getCurrentUDSThread();
+
+        while(true) {
+            // obey total order. Thread might get parked by the scheduler, but will eventually continue here
+            LockFreeUDScheduler.Round round = uds.waitForTurn(t);
+
+            // fast path: nobody enqueued and lock is free
+            if(waiting == 0 && owner.compareAndSet(null, t)) {
+                uds.consumeStep(t, round);
+                uds.setProgress(true);
+                return;
+            }
+
+            boolean acquired;
+            synchronized(this) {
+                if(enqueuedThreads.isEmpty() && owner.compareAndSet(null, t)) {
+                    acquired = true;
+                } else {
+                    if(logger.isLoggable(Level.FINE)) {
+                        logger.fine(t.getIdString() + " LockFreeUDSLock.lock(): enqueues itself at lock L" + lockID);
+                    }
+                    t.enqueuedRound = round;
+                    t.enqueued = this;
+                    enqueuedThreads.addLast(t);
+                    waiting = enqueuedThreads.size();
+
+                    // the owner might have released the lock on its fast path without seeing us enqueued
+                    acquired = owner.get() == null && grantToHead(t);
+                }
+            }
+            uds.consumeStep(t, round);
+            uds.setProgress(true);
+            if(acquired) {
+                return;
+            }
+
+            // wait until the lock is handed over to us or the round ends
+            uds.markIdle(round);
+            t.awaitDequeueing(this);
+            if(owner.get() == t) {
+                return;
+            }
+
+            // dequeued at the end of the round without getting the lock: repeat (see UDS v1.2.1 spec line 28)
+            if(logger.isLoggable(Level.FINER)) {
+                logger.finer(t.getIdString() + " LockFreeUDSLock.lock(): was dequeued from L" + lockID +
+                        " at the end of a round. Trying again");
+            }
+        }
+    }
+
+    /**
+     * Unlocks this UDSLock and hands it over to the first enqueued thread if applicable.
+     */
+    @Override
+    public void unlock() {
+        LockFreeUDScheduler.UDSThread t = LockFreeUDScheduler.getCurrentUDSThread();
+        if(owner.get() != t) {
+            // a thread not currently owning the mutex tried to unlock it
+            throw new IllegalMonitorStateException(t.getIdString() + " LockFreeUDSLock.unlock(): tried to " +
+                    "release " + this.lockID + " even though it wasn't the owner");
+        }
+
+        if(waiting == 0) {
+            owner.set(null);
+            if(waiting == 0) {
+                return;
+            }
+            // a thread enqueued itself concurrently
+            synchronized(this) {
+                if(owner.get() == null) {
+                    grantToHead(null);
+                }
+            }
+            return;
+        }
+
+        synchronized(this) {
+            owner.set(null);
+            grantToHead(null);
+        }
+    }
+
+    /**
+     * Grants this free lock to the first enqueued thread. Has to be called while holding this lock's monitor.
+     *
+     * @param self the calling UDS thread if it is enqueued itself, null otherwise
+     * @return true if the lock was granted to self
+     */
+    private boolean grantToHead(LockFreeUDScheduler.UDSThread self) {
+        LockFreeUDScheduler.UDSThread next = enqueuedThreads.pollFirst();
+        if(next == null) {
+            return false;
+        }
+        waiting = enqueuedThreads.size();
+        owner.set(next);
+        next.enqueued = null;
+        if(next == self) {
+            return true;
+        }
+
+        // next is now running again in the round it enqueued itself in
+        if(logger.isLoggable(Level.FINE)) {
+            logger.fine(next.getIdString() + " was granted lock L" + lockID);
+        }
+        uds.markRunning(next.enqueuedRound);
+        next.unpark();
+        return false;
+    }
+
+    /**
+     * Remove a thread from the queue of this lock at the end of a round. Does nothing if the lock has already been
+     * granted to the thread.
+     *
+     * @param t The thread to be removed
+     */
+    void removeFromQueue(LockFreeUDScheduler.UDSThread t) {
+        synchronized(this) {
+            if(enqueuedThreads.remove(t)) {
+                waiting = enqueuedThreads.size();
+                t.enqueued = null;
+            }
+        }
+    }
+
+    /**
+     * Not implemented for UDSLock. Do not use.
+     * Use lock() instead.
+     */
+    @Override
+    public void lockInterruptibly() throws InterruptedException {
+        throw new NoSuchMethodError();
+    }
+
+    /**
+     * Not implemented for UDSLock. Do not use.
+     * Use lock() instead.
+     */
+    @Override
+    public boolean tryLock() {
+        throw new NoSuchMethodError();
+    }
+
+    /**
+     * Not implemented for UDSLock. Do not use.
+     * Use lock() instead.
+     */
+    @Override
+    public boolean tryLock(long time, TimeUnit unit) throws InterruptedException {
+        throw new NoSuchMethodError();
+    }
+
+    /**
+     * Not implemented for UDSLock. Do not use.
+     */
+    @Override
+    public Condition newCondition() {
+        throw new NoSuchMethodError();
+    }
+}
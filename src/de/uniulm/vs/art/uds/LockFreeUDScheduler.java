@@ -0,0 +1,782 @@
+package de.uniulm.vs.art.uds;
+
+import de.optscore.vscale.client.ClientWorker;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * UDS Scheduler implementation as a Singleton which does not serialise on a global scheduler lock.
+ *
+ * Semantically equivalent to {@link UDScheduler}, but all round state is managed with CAS operations:
+ * <ul>
+ *     <li>each round is an immutable set of primaries plus an atomic step cursor over the total order,</li>
+ *     <li>the end of a round is detected by an atomic counter of primaries that are still running,</li>
+ *     <li>mutex wait queues are kept per {@link LockFreeUDSLock},</li>
+ *     <li>threads wait by parking instead of awaiting Conditions of a shared lock.</li>
+ * </ul>
+ * A primary at the head of the total order which locks an uncontended LockFreeUDSLock therefore only performs a
+ * few volatile reads and two CAS operations. Use {@code -Duds.scheduler=lockfree} to select this implementation.
+ */
+public class LockFreeUDScheduler implements DeterministicScheduler {
+
+    /**
+     * Threads that were added by addRequest() but not yet seen by a round start. Filled by the delivery thread(s),
+     * drained by whoever starts the next round.
+     */
+    private final ConcurrentLinkedQueue<UDSThread> incomingThreads = new ConcurrentLinkedQueue<>();
+
+    /**
+     * Ordered list of all threads that were or are to be scheduled by UDS. Only ever accessed by the thread that
+     * starts a new round; round starts are strictly sequential.
+     */
+    private final List<UDSThread> threads = new ArrayList<>(256);
+
+    /**
+     * Number of threads in incomingThreads and threads, used for back-pressure in addRequest()
+     */
+    private final AtomicInteger threadCount = new AtomicInteger(0);
+
+    /**
+     * The current round. Round 0 is a sentinel without primaries until the first critical operation happens.
+     */
+    private volatile Round currentRound = new Round(0, new UDSThread[0], new int[0]);
+
+    /**
+     * True once the first round has been started
+     */
+    private final AtomicBoolean bootstrapped = new AtomicBoolean(false);
+
+    /**
+     * The configuration that will be used for the next round; replaced as a whole by requestReconfiguration()
+     */
+    private volatile UDSConfiguration requestedUDSConfiguration = new UDSConfiguration(1, new int[]{0});
+
+    /**
+     * The thread starting a new round while waiting for new threads to be added, null otherwise
+     */
+    private volatile Thread roundStarter;
+
+    /**
+     * The single delivery thread that waits for admission, null otherwise
+     */
+    private volatile Thread admissionThread;
+
+    /**
+     * The next UDS thread ID
+     */
+    private final AtomicInteger threadID = new AtomicInteger(0);
+
+    /**
+     * Indicator whether any progress was made in the current round
+     */
+    private volatile boolean progress = false;
+
+    private final AtomicLong numberOfThreadsScheduled = new AtomicLong(0);
+    private final AtomicLong numberOfThreadsTerminated = new AtomicLong(0);
+
+    /**
+     * Thread-local variable referring to current UDS thread
+     */
+    private static final ThreadLocal<UDSThread> currentUDSThread = new ThreadLocal<>();
+
+    /**
+     * Thread pool for request scheduling. UDS threads of this scheduler only park, so they can also run on virtual
+     * threads (see {@link UDSOptions#EXECUTION_MODE}).
+     */
+    private final ExecutorService udsThreadPool = UDSOptions.VIRTUAL_EXECUTION ?
+            VirtualThreads.newVirtualThreadPerTaskExecutor() : Executors.newCachedThreadPool();
+
+    /**
+     * Logging
+     */
+    private static final Logger logger = Logger.getLogger(LockFreeUDScheduler.class.getName());
+
+    /**
+     * Singleton. Not instantiable.
+     */
+    private LockFreeUDScheduler() {
+        logger.setLevel(ClientWorker.GLOBAL_LOGGING_LEVEL);
+    }
+
+    /**
+     * Singleton pattern
+     */
+    private static class LazySingletonHolder {
+        static final LockFreeUDScheduler instance = new LockFreeUDScheduler();
+    }
+
+    /**
+     * Get the Singleton instance of this UDS Scheduler
+     *
+     * @return Singleton UDS Scheduler instance
+     */
+    public static LockFreeUDScheduler getInstance() {
+        return LazySingletonHolder.instance;
+    }
+
+    /**
+     * Get current UDS Thread
+     */
+    public static UDSThread getCurrentUDSThread() {
+        return currentUDSThread.get();
+    }
+
+    /**
+     * Adds a request (= Runnable) to the UDS scheduling queue. Blocks(!) until the internal UDS thread list is
+     * empty enough so the new thread can be added and started.
+     *
+     * @param r Runnable responsible for fulfilling a client request, added to UDS for scheduling purposes.
+     * @param replyRunnable Runnable sending the reply, executed asynchronously after r has finished
+     */
+    public void addRequest(Runnable r, Runnable replyRunnable) {
+        UDSThread thread = new UDSThread();
+        thread.initTask(r, replyRunnable);
+
+        // Implementation of back-pressure if there are too many pending threads in the system
+        if(threadCount.get() > admissionLimit()) {
+            if(logger.isLoggable(Level.FINEST)) {
+                logger.finest("{" + Thread.currentThread().getName() + "} addRequest: blocking due to too many " +
+                        "threads");
+            }
+            admissionThread = Thread.currentThread();
+            while(threadCount.get() > admissionLimit()) {
+                LockSupport.park(this);
+            }
+            admissionThread = null;
+        }
+
+        threadCount.incrementAndGet();
+        numberOfThreadsScheduled.incrementAndGet();
+
+        // start the thread before publishing it, so round starts never have to wait for it being started
+        thread.start();
+        incomingThreads.offer(thread);
+
+        // wake a round starter waiting for new threads
+        Thread starter = roundStarter;
+        if(starter != null) {
+            LockSupport.unpark(starter);
+        }
+    }
+
+    /**
+     * Adds a whole batch of requests (e.g. all requests of one consensus decision) to the UDS scheduling queue in
+     * the given order. Back-pressure is applied once for the whole batch, and a waiting round starter is only woken
+     * once. The number of pending threads may therefore exceed the admission limit by up to the size of one batch.
+     *
+     * @param requests       Runnables responsible for fulfilling client requests, in the order they were decided
+     * @param replyRunnables Runnables sending the replies, one for every request
+     */
+    public void addRequests(List<Runnable> requests, List<Runnable> replyRunnables) {
+        if(requests.size() != replyRunnables.size()) {
+            throw new IllegalArgumentException("Every request needs exactly one reply Runnable (" + requests.size() +
+                    " requests, " + replyRunnables.size() + " reply Runnables)");
+        }
+        if(requests.isEmpty()) {
+            return;
+        }
+
+        // Implementation of back-pressure at batch granularity
+        if(threadCount.get() > admissionLimit()) {
+            if(logger.isLoggable(Level.FINEST)) {
+                logger.finest("{" + Thread.currentThread().getName() + "} addRequests: blocking batch of " +
+                        requests.size() + " requests due to too many threads");
+            }
+            admissionThread = Thread.currentThread();
+            while(threadCount.get() > admissionLimit()) {
+                LockSupport.park(this);
+            }
+            admissionThread = null;
+        }
+
+        threadCount.addAndGet(requests.size());
+        numberOfThreadsScheduled.addAndGet(requests.size());
+
+        for(int i = 0; i < requests.size(); i++) {
+            UDSThread thread = new UDSThread();
+            thread.initTask(requests.get(i), replyRunnables.get(i));
+            thread.start();
+            incomingThreads.offer(thread);
+        }
+
+        // wake a round starter waiting for new threads
+        Thread starter = roundStarter;
+        if(starter != null) {
+            LockSupport.unpark(starter);
+        }
+    }
+
+    /**
+     * Method for adding a request and immediately filling the current round, so that it can end and start the
+     * next one. Useful for e.g. reconfiguration decisions for autoscaling, etc.
+     */
+    public void addRequestAndFillRound(Runnable r, Runnable replyRunnable) {
+        addRequest(r, replyRunnable);
+
+        int mt = currentRound.primaries.length - threadCount.get();
+        for(int i = 0; i < mt; i++) {
+            addRequest(() -> {}, () -> {});
+        }
+    }
+
+    private int admissionLimit() {
+        return (requestedUDSConfiguration.n * 2) + UDSOptions.ADMISSION_SLACK;
+    }
+
+    /******************************************************
+     ***************** Scheduling Methods *****************
+     ******************************************************/
+
+    /**
+     * Starts the very first round when the first thread reaches a critical operation
+     */
+    private void bootstrap() {
+        if(!bootstrapped.get() && bootstrapped.compareAndSet(false, true)) {
+            setProgress(true);
+            startRound(1);
+        }
+    }
+
+    /**
+     * Start a new scheduling round. Only called by the single thread that ended the previous round (or
+     * bootstrapped UDS), so round starts never overlap.
+     *
+     * @param number the number of the new round
+     */
+    private void startRound(int number) {
+        // reconfigure UDS by taking a snapshot of the requested configuration
+        UDSConfiguration conf = requestedUDSConfiguration;
+        UDSThread[] primaries = new UDSThread[conf.n];
+
+        // prune thread list by removing all terminated threads; primaries only ever terminate while being primary,
+        // so this is deterministic at round boundaries
+        int removedThreads = 0;
+        for(Iterator<UDSThread> it = threads.iterator(); it.hasNext(); ) {
+            if(it.next().terminated) {
+                it.remove();
+                removedThreads++;
+            }
+        }
+        if(removedThreads > 0) {
+            threadCount.addAndGet(-removedThreads);
+            Thread admission = admissionThread;
+            if(admission != null) {
+                LockSupport.unpark(admission);
+            }
+        }
+
+        // fill with threads, waiting for new ones if there are not enough
+        int n = 0;
+        int i = 0;
+        while(n < primaries.length) {
+            if(i >= threads.size() && !drainIncomingThreads()) {
+                awaitIncomingThreads();
+                continue;
+            }
+            UDSThread t = threads.get(i++);
+            if(!t.terminated) {
+                t.slot = n;
+                primaries[n++] = t;
+            }
+        }
+
+        Round round = new Round(number, primaries, conf.totalOrder);
+        for(UDSThread t : primaries) {
+            t.round = round;
+        }
+        if(logger.isLoggable(Level.FINE)) {
+            logger.fine("startRound(): starting round " + number + " with " + primaries.length + " primaries");
+        }
+
+        // publish the round and wake its primaries
+        currentRound = round;
+        for(UDSThread t : primaries) {
+            t.unpark();
+        }
+    }
+
+    /**
+     * Moves all threads from incomingThreads to threads.
+     *
+     * @return true if at least one thread was moved
+     */
+    private boolean drainIncomingThreads() {
+        boolean drained = false;
+        UDSThread t;
+        while((t = incomingThreads.poll()) != null) {
+            threads.add(t);
+            drained = true;
+        }
+        return drained;
+    }
+
+    /**
+     * Park the round starter until addRequest() provides a new thread
+     */
+    private void awaitIncomingThreads() {
+        roundStarter = Thread.currentThread();
+        try {
+            while(incomingThreads.isEmpty()) {
+                if(logger.isLoggable(Level.FINER)) {
+                    logger.finer("startRound(): waiting for new threads");
+                }
+                LockSupport.park(this);
+            }
+        } finally {
+            roundStarter = null;
+        }
+    }
+
+    /**
+     * Ends the given round. Only called by the single thread which observed the last running primary of the round
+     * becoming idle.
+     */
+    private void endRound(Round round) {
+        if(logger.isLoggable(Level.FINE)) {
+            logger.fine("endRound(): end of round " + round.number + " detected");
+        }
+        for(UDSThread t : round.primaries) {
+            t.waitingForTurn.set(false);
+            LockFreeUDSLock l = t.enqueued;
+            if(l != null) {
+                l.removeFromQueue(t);
+            }
+        }
+
+        startRound(round.number + 1);
+
+        // wake all former primaries so they re-check their changed conditions
+        for(UDSThread t : round.primaries) {
+            t.unpark();
+        }
+    }
+
+    /**
+     * Called by a primary of the given round whenever it stops running in that round (it finished its steps,
+     * waits for its turn, is enqueued at a lock or terminated). Ends the round if it was the last running primary.
+     */
+    void markIdle(Round round) {
+        if(round.running.decrementAndGet() == 0 && round.ended.compareAndSet(false, true)) {
+            endRound(round);
+        }
+    }
+
+    /**
+     * Called whenever a thread whose round is known to be still running is woken up
+     */
+    void markRunning(Round round) {
+        round.running.incrementAndGet();
+    }
+
+    /**
+     * Called whenever total order needs to be obeyed by a UDSThread. Returns once the current thread is at the head
+     * of the total order. The step is not consumed yet, so the caller can perform its critical operation and must
+     * then call consumeStep().
+     *
+     * @return the round in which the current thread holds the head of the total order
+     */
+    Round waitForTurn(UDSThread t) {
+        bootstrap();
+
+        while(true) {
+            Round round = t.waitForPrimary();
+            int slot = t.slot;
+            int c = round.cursor.get();
+
+            if(round.lastStep[slot] < c) {
+                // no steps left in the total order, wait for the next round and try again
+                t.finished = true;
+                markIdle(round);
+                t.awaitNextRound(round);
+                t.finished = false;
+            } else if(round.totalOrder[c] == slot) {
+                // current thread is first in total order
+                return round;
+            } else {
+                // wait for step / first in total order
+                t.waitingForTurn.set(true);
+                if(round.isHead(slot) && t.waitingForTurn.compareAndSet(true, false)) {
+                    // became head in the meantime
+                    continue;
+                }
+                markIdle(round);
+                t.awaitTurn();
+            }
+        }
+    }
+
+    /**
+     * Convenience method for critical operations that do not need to do anything at the head of the total order
+     */
+    public void waitForTurn() {
+        UDSThread t = getCurrentUDSThread();
+        consumeStep(t, waitForTurn(t));
+    }
+
+    /**
+     * Removes the step at the head of the total order, which has to belong to t, and wakes the next thread in the
+     * total order.
+     */
+    void consumeStep(UDSThread t, Round round) {
+        int c = round.cursor.get();
+        round.cursor.compareAndSet(c, c + 1);
+        skipRetiredSteps(round);
+    }
+
+    /**
+     * Advances the cursor of the given round past all steps of terminated primaries and wakes the thread owning the
+     * step at the head of the total order if it waits for its turn.
+     */
+    private void skipRetiredSteps(Round round) {
+        int c;
+        while((c = round.cursor.get()) < round.totalOrder.length && round.retired.get(round.totalOrder[c]) == 1) {
+            round.cursor.compareAndSet(c, c + 1);
+        }
+        if(c < round.totalOrder.length) {
+            UDSThread next = round.primaries[round.totalOrder[c]];
+            if(next.waitingForTurn.compareAndSet(true, false)) {
+                markRunning(round);
+                next.unpark();
+            }
+        }
+    }
+
+    /**
+     * Called by UDSThreads when they've finished their Runnable task and want to terminate.
+     */
+    void terminateThread(UDSThread t) {
+        bootstrap();
+        setProgress(true);
+
+        Round round = t.waitForPrimary();
+        if(logger.isLoggable(Level.FINE)) {
+            logger.fine(t.getIdString() + " terminateThread()");
+        }
+
+        // Thread can be marked as terminated and retire itself, removing all of its steps in the total order
+        t.terminated = true;
+        round.retired.set(t.slot, 1);
+        skipRetiredSteps(round);
+        numberOfThreadsTerminated.incrementAndGet();
+        markIdle(round);
+    }
+
+    public void setProgress(boolean progress) {
+        this.progress = progress;
+    }
+
+    /**
+     * Tell UDS to reconfigure itself to use the specified number of primaries, each getting stepsPerPrimary steps in
+     * new rounds, with a "round robin" total order. Has to be called from within a UDS thread.
+     *
+     * @param primaries       The number of primaries that should be used in all following rounds that are started
+     * @param stepsPerPrimary The number of steps each primary receives in all following rounds
+     */
+    public int requestReconfiguration(int primaries, int stepsPerPrimary) {
+        UDSThread t = getCurrentUDSThread();
+        // wait for turn so we stay deterministic when reconfiguring UDS
+        Round round = waitForTurn(t);
+        return reconfigure(t, round, primaries, stepsPerPrimary);
+    }
+
+    /**
+     * Sets the requested configuration and consumes the step of the turn the calling thread waited for
+     */
+    private int reconfigure(UDSThread t, Round round, int primaries, int stepsPerPrimary) {
+        if(logger.isLoggable(Level.WARNING)) {
+            logger.warning("{" + Thread.currentThread().getName() + "} requestConfiguration: " +
+                    "new UDS configuration requested (" + primaries + " " +
+                    "prims, " + stepsPerPrimary + " steps per prim)");
+        }
+        int[] newTotalOrder = new int[primaries * stepsPerPrimary];
+        for(int i = 0; i < stepsPerPrimary; i++) {
+            for(int j = 0; j < primaries; j++) {
+                newTotalOrder[i * primaries + j] = j;
+            }
+        }
+        this.requestedUDSConfiguration = new UDSConfiguration(primaries, newTotalOrder);
+
+        consumeStep(t, round);
+        return primaries;
+    }
+
+    /**
+     * Reconfigure only the primaries, while keeping the steps from the previous configuration.
+     */
+    public int requestReconfigurationPrimaries(int primaries) {
+        UDSThread t = getCurrentUDSThread();
+        Round round = waitForTurn(t);
+        UDSConfiguration conf = requestedUDSConfiguration;
+        return reconfigure(t, round, primaries, conf.totalOrder.length / conf.n);
+    }
+
+    public int requestReconfigurationPrimariesBy(int delta) {
+        UDSThread t = getCurrentUDSThread();
+        Round round = waitForTurn(t);
+        UDSConfiguration conf = requestedUDSConfiguration;
+        return reconfigure(t, round, Math.max(1, conf.n + delta), conf.totalOrder.length / conf.n);
+    }
+
+    public void requestReconfigurationSteps(int steps) {
+        UDSThread t = getCurrentUDSThread();
+        Round round = waitForTurn(t);
+        reconfigure(t, round, requestedUDSConfiguration.n, steps);
+    }
+
+    public int getCurrentRoundNumber() {
+        return currentRound.number;
+    }
+
+    public int getCurrentUDSConfigurationPrimaries() {
+        Round round = currentRound;
+        return round.number == 0 ? requestedUDSConfiguration.n : round.primaries.length;
+    }
+
+    public long getNumberOfThreadsScheduled() {
+        return numberOfThreadsScheduled.get();
+    }
+
+    public long getNumberOfThreadsTerminated() {
+        return numberOfThreadsTerminated.get();
+    }
+
+    @Override
+    public Lock newLock(int id) {
+        return new LockFreeUDSLock(id);
+    }
+
+    /**
+     * The lock-free scheduler has no shared read side, reads are serialised like writes
+     */
+    @Override
+    public ReadWriteLock newReadWriteLock(int id) {
+        return new ExclusiveReadWriteLock(new LockFreeUDSLock(id));
+    }
+
+    /**
+     * Immutable UDS configuration; a new instance is created for every reconfiguration.
+     */
+    private static final class UDSConfiguration {
+
+        /**
+         * Number of primaries
+         */
+        private final int n;
+
+        /**
+         * The total order, as primary slot indices
+         */
+        private final int[] totalOrder;
+
+        private UDSConfiguration(int n, int[] totalOrder) {
+            this.n = n;
+            this.totalOrder = totalOrder;
+        }
+    }
+
+    /**
+     * The state of a single scheduling round. Primaries and total order are fixed when the round is started, all
+     * mutable state is atomic.
+     */
+    static final class Round {
+
+        final int number;
+
+        final UDSThread[] primaries;
+
+        /**
+         * The total order of this round (primary slot indices); shared with the configuration, never modified
+         */
+        final int[] totalOrder;
+
+        /**
+         * Highest index in the total order per primary slot, -1 if the slot has no steps
+         */
+        final int[] lastStep;
+
+        /**
+         * Index of the next step in totalOrder
+         */
+        final AtomicInteger cursor = new AtomicInteger(0);
+
+        /**
+         * 1 for every primary slot whose thread terminated and whose steps are skipped
+         */
+        final AtomicIntegerArray retired;
+
+        /**
+         * Number of primaries that are neither terminated, finished, enqueued nor waiting for their turn
+         */
+        final AtomicInteger running;
+
+        final AtomicBoolean ended = new AtomicBoolean(false);
+
+        Round(int number, UDSThread[] primaries, int[] totalOrder) {
+            this.number = number;
+            this.primaries = primaries;
+            this.totalOrder = totalOrder;
+            this.lastStep = new int[primaries.length];
+            this.retired = new AtomicIntegerArray(primaries.length);
+            this.running = new AtomicInteger(primaries.length);
+
+            for(int i = 0; i < lastStep.length; i++) {
+                lastStep[i] = -1;
+            }
+            for(int i = 0; i < totalOrder.length; i++) {
+                if(totalOrder[i] < lastStep.length) {
+                    lastStep[totalOrder[i]] = i;
+                }
+            }
+        }
+
+        boolean isHead(int slot) {
+            int c = cursor.get();
+            return c < totalOrder.length && totalOrder[c] == slot;
+        }
+    }
+
+    /**
+     * UDS's own thread class to manage UDS threads of the lock-free scheduler. All state is either volatile or
+     * atomic, waiting is done by parking the executing (carrier) thread.
+     */
+    protected class UDSThread {
+
+        private final int id;
+
+        private final String idString;
+
+        private Runnable task;
+
+        /**
+         * The pool thread executing this UDS thread, set before the task is run
+         */
+        private volatile Thread carrier;
+
+        /**
+         * The round this thread is primary in. Only valid if that round is the current one.
+         */
+        volatile Round round;
+
+        /**
+         * Index of this thread in the primaries of its round
+         */
+        volatile int slot;
+
+        volatile boolean terminated;
+
+        volatile boolean finished;
+
+        /**
+         * True if thread waits for its turn in the total UDS order
+         */
+        final AtomicBoolean waitingForTurn = new AtomicBoolean(false);
+
+        /**
+         * The lock the thread is currently enqueued for waiting for lock acquisition
+         */
+        volatile LockFreeUDSLock enqueued;
+
+        /**
+         * The round in which the thread enqueued itself at a lock
+         */
+        Round enqueuedRound;
+
+        UDSThread() {
+            this.id = threadID.getAndIncrement();
+            this.idString = "(T" + id + ")";
+        }
+
+        public String getIdString() {
+            return idString;
+        }
+
+        void unpark() {
+            Thread c = carrier;
+            if(c != null) {
+                LockSupport.unpark(c);
+            }
+        }
+
+        /**
+         * Wait to become a primary thread of the current round. Has to be called on the currently running
+         * UDSThread.
+         *
+         * @return the round this thread is primary in
+         */
+        Round waitForPrimary() {
+            while(true) {
+                Round r = currentRound;
+                if(round == r && !r.ended.get()) {
+                    return r;
+                }
+                LockSupport.park(this);
+            }
+        }
+
+        /**
+         * Wait until the given round has been replaced by a new one
+         */
+        void awaitNextRound(Round r) {
+            while(currentRound == r) {
+                LockSupport.park(this);
+            }
+        }
+
+        void awaitTurn() {
+            while(waitingForTurn.get()) {
+                LockSupport.park(this);
+            }
+        }
+
+        /**
+         * Wait for being dequeued at the given lock, either because the lock was granted or because the round
+         * ended
+         */
+        void awaitDequeueing(LockFreeUDSLock l) {
+            while(enqueued == l) {
+                LockSupport.park(this);
+            }
+        }
+
+        @Override
+        public String toString() {
+            return "Thread " + getIdString() + ": " +
+                    (terminated ? "terminated " : (
+                            (finished ? "finished round" : "") +
+                            (enqueued != null ? "is enqueued" : "") +
+                            (waitingForTurn.get() ? "waits for turn" : "running")));
+        }
+
+        void initTask(Runnable r, Runnable replyRunnable) {
+            task = () -> {
+                try {
+                    currentUDSThread.set(this);
+                    carrier = Thread.currentThread();
+                    r.run();
+                    udsThreadPool.submit(replyRunnable);
+                } finally {
+                    terminateThread(this);
+                    carrier = null;
+                }
+            };
+        }
+
+        public void start() {
+            udsThreadPool.submit(task);
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package de.uniulm.vs.art.uds;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.Lock;
+
+/**
+ * Deterministic mutex of the {@link MATScheduler}. Locking and unlocking are lock points, which a thread can only
+ * pass while it holds the active role. Not reentrant. Create with {@link MATScheduler#newLock(int)}.
+ */
+public class MATLock implements Lock {
+
+    private final MATScheduler scheduler;
+
+    private final int lockID;
+
+    /**
+     * The thread holding this lock, or null. Guarded by the scheduler lock.
+     */
+    MATScheduler.MATThread owner;
+
+    /**
+     * Threads blocked on this lock, in the order they requested it. Guarded by the scheduler lock.
+     */
+    final ArrayDeque<MATScheduler.MATThread> waiting = new ArrayDeque<>();
+
+    MATLock(MATScheduler scheduler, int id) {
+        this.scheduler = scheduler;
+        this.lockID = id;
+    }
+
+    public int getLockID() {
+        return lockID;
+    }
+
+    @Override
+    public void lock() {
+        scheduler.lock(this);
+    }
+
+    @Override
+    public void lockInterruptibly() throws InterruptedException {
+        throw new NoSuchMethodError("MATLocks can't be locked interruptibly");
+    }
+
+    /**
+     * Acquires the lock only if it is free when the current thread gets the active role
+     */
+    @Override
+    public boolean tryLock() {
+        return scheduler.tryLock(this);
+    }
+
+    @Override
+    public boolean tryLock(long time, TimeUnit unit) throws InterruptedException {
+        throw new NoSuchMethodError("MATLocks have no deterministic notion of time, use tryLock()");
+    }
+
+    @Override
+    public void unlock() {
+        scheduler.unlock(this);
+    }
+
+    @Override
+    public Condition newCondition() {
+        throw new NoSuchMethodError("MATLocks don't support Conditions (yet)");
+    }
+
+    @Override
+    public String toString() {
+        return "MATLock" + lockID;
+    }
+}
@@ -0,0 +1,482 @@
+package de.uniulm.vs.art.uds;
+
+import de.optscore.vscale.client.ClientWorker;
+
+import java.util.ArrayDeque;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Deterministic scheduler in the style of MAT (multithreaded active replication), as an alternative to UDS. Use
+ * {@code -Duds.scheduler=mat} to select this implementation.
+ *
+ * Only one thread is active at a time, and only the active thread may pass a lock point, i.e. lock or unlock a
+ * {@link MATLock}. A thread becomes active when it reaches its first lock point and the active role is passed to it,
+ * and stays active until it blocks on a lock that is taken or terminates. Then the active role is handed over to the
+ * first thread in the ready queue, which holds the threads that were granted a lock while they were blocked. Only if
+ * the ready queue is empty, the next request in delivery order is admitted and its thread becomes active. Since the
+ * ready queue only changes at lock points of the active thread, the order of lock grants only depends on the order of
+ * the delivered requests.
+ *
+ * Everything a thread does before it becomes active (its lock-free prefix) runs in parallel with the other threads.
+ * Requests without any lock run entirely in parallel. The number of threads that are started in advance is the degree
+ * of concurrency, configured with {@link #requestReconfigurationPrimaries(int)}. If the thread that is supposed to
+ * become active next is still running its prefix, the active role waits until it reaches its first lock point or
+ * terminates.
+ *
+ * There are no rounds and no steps. The round number reported by this scheduler is the number of hand-overs.
+ */
+public class MATScheduler implements DeterministicScheduler {
+
+    /**
+     * Guards all scheduling state, including the state of all MATLocks
+     */
+    private final ReentrantLock schedulerLock = new ReentrantLock();
+
+    /**
+     * Signalled when a thread has left the scheduler, for back-pressure in addRequest()
+     */
+    private final Condition admission = schedulerLock.newCondition();
+
+    /**
+     * Threads of delivered requests that have not been admitted yet, in delivery order
+     */
+    private final ArrayDeque<MATThread> pending = new ArrayDeque<>();
+
+    /**
+     * Pending threads that have not been started because the degree of concurrency was reached, in delivery order
+     */
+    private final ArrayDeque<MATThread> notStarted = new ArrayDeque<>();
+
+    /**
+     * Threads that have been granted a lock they were blocked on and wait for the active role
+     */
+    private final ArrayDeque<MATThread> ready = new ArrayDeque<>();
+
+    /**
+     * The thread holding the active role, or null if no thread could take it at the last hand-over
+     */
+    private MATThread active;
+
+    /**
+     * Number of threads that may be started in advance
+     */
+    private volatile int concurrency = 1;
+
+    /**
+     * Number of started threads which have not terminated yet
+     */
+    private int running;
+
+    private volatile long numberOfThreadsScheduled;
+
+    private volatile long numberOfThreadsTerminated;
+
+    /**
+     * Number of threads that have been admitted and have terminated, i.e. which the scheduler is done with
+     */
+    private long numberOfThreadsRetired;
+
+    private volatile int numberOfHandOvers;
+
+    private final ExecutorService threadPool = Executors.newCachedThreadPool();
+
+    private final ExecutorService replyThreadPool = Executors.newCachedThreadPool();
+
+    /**
+     * The MAT thread executing in the current Java thread
+     */
+    private static final ThreadLocal<MATThread> currentMATThread = new ThreadLocal<>();
+
+    /**
+     * Logging
+     */
+    private static final Logger logger = Logger.getLogger(MATScheduler.class.getName());
+
+    private MATScheduler() {
+        logger.setLevel(ClientWorker.GLOBAL_LOGGING_LEVEL);
+    }
+
+    /**
+     * Singleton pattern
+     */
+    private static class LazySingletonHolder {
+        static final MATScheduler instance = new MATScheduler();
+    }
+
+    /**
+     * Get the Singleton instance of this scheduler
+     *
+     * @return Singleton MAT Scheduler instance
+     */
+    public static MATScheduler getInstance() {
+        return LazySingletonHolder.instance;
+    }
+
+    /**
+     * Get the MAT thread of the current thread
+     *
+     * @throws IllegalStateException if the current thread was not started by a MATScheduler
+     */
+    static MATThread getCurrentMATThread() {
+        MATThread t = currentMATThread.get();
+        if(t == null) {
+            throw new IllegalStateException("MATLocks can only be used by requests of the MATScheduler, not by " +
+                    Thread.currentThread().getName());
+        }
+        return t;
+    }
+
+    @Override
+    public void addRequest(Runnable r, Runnable replyRunnable) {
+        schedulerLock.lock();
+        try {
+            enqueue(r, replyRunnable);
+        } finally {
+            schedulerLock.unlock();
+        }
+    }
+
+    @Override
+    public void addRequests(List<Runnable> requests, List<Runnable> replyRunnables) {
+        if(requests.size() != replyRunnables.size()) {
+            throw new IllegalArgumentException("Got " + requests.size() + " requests but " + replyRunnables.size() +
+                    " reply runnables");
+        }
+        schedulerLock.lock();
+        try {
+            for(int i = 0; i < requests.size(); i++) {
+                enqueue(requests.get(i), replyRunnables.get(i));
+            }
+        } finally {
+            schedulerLock.unlock();
+        }
+    }
+
+    /**
+     * Same as {@link #addRequest(Runnable, Runnable)}: there are no rounds that would have to be filled
+     */
+    @Override
+    public void addRequestAndFillRound(Runnable r, Runnable replyRunnable) {
+        addRequest(r, replyRunnable);
+    }
+
+    /**
+     * Creates a thread for a delivered request, starts it if the degree of concurrency allows it and passes it the
+     * active role if no thread holds it. Blocks(!) if too many threads are pending. Can only be called when holding
+     * the scheduler lock.
+     */
+    private void enqueue(Runnable r, Runnable replyRunnable) {
+        while(numberOfThreadsScheduled - numberOfThreadsRetired >= admissionLimit()) {
+            admission.awaitUninterruptibly();
+        }
+        MATThread t = new MATThread(numberOfThreadsScheduled, r, replyRunnable);
+        numberOfThreadsScheduled++;
+        pending.addLast(t);
+        if(running < concurrency) {
+            start(t);
+        } else {
+            notStarted.addLast(t);
+        }
+        if(active == null) {
+            handOver();
+        }
+    }
+
+    /**
+     * Number of threads in the scheduler above which addRequest() blocks (back-pressure)
+     */
+    private int admissionLimit() {
+        return (concurrency * 2) + UDSOptions.ADMISSION_SLACK;
+    }
+
+    /**
+     * Can only be called when holding the scheduler lock
+     */
+    private void start(MATThread t) {
+        t.started = true;
+        running++;
+        threadPool.execute(t::execute);
+    }
+
+    /**
+     * Passes the active role to the first ready thread or, if there is none, to the next pending thread. Threads that
+     * terminated before they became active are skipped. Can only be called when holding the scheduler lock.
+     */
+    private void handOver() {
+        numberOfHandOvers++;
+        active = null;
+        MATThread next;
+        while((next = ready.pollFirst()) != null || (next = admitNext()) != null) {
+            if(next.terminated) {
+                retire();
+                continue;
+            }
+            if(logger.isLoggable(Level.FINEST)) {
+                logger.finest("Hand-over " + numberOfHandOvers + " to " + next);
+            }
+            active = next;
+            next.activated.signal();
+            return;
+        }
+    }
+
+    /**
+     * Admits the next pending thread and starts it if it was not started yet, so that it can take the active role.
+     * Can only be called when holding the scheduler lock.
+     *
+     * @return the admitted thread, or null if no request is pending
+     */
+    private MATThread admitNext() {
+        MATThread next = pending.pollFirst();
+        if(next != null) {
+            next.admitted = true;
+            if(!next.started) {
+                notStarted.remove(next);
+                start(next);
+            }
+        }
+        return next;
+    }
+
+    /**
+     * Can only be called when holding the scheduler lock
+     */
+    private void retire() {
+        numberOfThreadsRetired++;
+        admission.signal();
+    }
+
+    /**
+     * Waits until the current thread holds the active role. Can only be called when holding the scheduler lock.
+     */
+    private void awaitActive(MATThread t) {
+        while(active != t) {
+            t.activated.awaitUninterruptibly();
+        }
+    }
+
+    /**
+     * Called at the end of a MAT thread's execution
+     */
+    private void terminate(MATThread t) {
+        schedulerLock.lock();
+        try {
+            t.terminated = true;
+            running--;
+            numberOfThreadsTerminated++;
+            if(t.admitted) {
+                retire();
+            }
+            while(running < concurrency && !notStarted.isEmpty()) {
+                start(notStarted.pollFirst());
+            }
+            if(active == t) {
+                handOver();
+            }
+        } finally {
+            schedulerLock.unlock();
+        }
+    }
+
+    /**
+     * Lock point: acquires a MATLock, blocks and hands over the active role if it is taken
+     */
+    void lock(MATLock lock) {
+        MATThread t = getCurrentMATThread();
+        schedulerLock.lock();
+        try {
+            awaitActive(t);
+            if(lock.owner == null) {
+                lock.owner = t;
+                return;
+            }
+            if(logger.isLoggable(Level.FINER)) {
+                logger.finer(t + " blocks on MATLock" + lock.getLockID() + ", held by " + lock.owner);
+            }
+            lock.waiting.addLast(t);
+            handOver();
+            // unlock() has granted us the lock before it put us in the ready queue
+            awaitActive(t);
+        } finally {
+            schedulerLock.unlock();
+        }
+    }
+
+    /**
+     * Lock point: acquires a MATLock if it is free, without handing over the active role
+     */
+    boolean tryLock(MATLock lock) {
+        MATThread t = getCurrentMATThread();
+        schedulerLock.lock();
+        try {
+            awaitActive(t);
+            if(lock.owner == null) {
+                lock.owner = t;
+                return true;
+            }
+            return false;
+        } finally {
+            schedulerLock.unlock();
+        }
+    }
+
+    /**
+     * Lock point: releases a MATLock and grants it to the first thread blocked on it, which becomes ready
+     */
+    void unlock(MATLock lock) {
+        MATThread t = getCurrentMATThread();
+        schedulerLock.lock();
+        try {
+            if(lock.owner != t) {
+                throw new IllegalMonitorStateException(t + " tried to release MATLock" + lock.getLockID() +
+                        " even though it wasn't holding it");
+            }
+            // the owner of a lock is always active, it cannot block without handing over and unlock while blocked
+            MATThread next = lock.waiting.pollFirst();
+            lock.owner = next;
+            if(next != null) {
+                ready.addLast(next);
+            }
+        } finally {
+            schedulerLock.unlock();
+        }
+    }
+
+    @Override
+    public Lock newLock(int id) {
+        return new MATLock(this, id);
+    }
+
+    /**
+     * MAT has no shared read side, reads are serialised like writes
+     */
+    @Override
+    public ReadWriteLock newReadWriteLock(int id) {
+        return new ExclusiveReadWriteLock(new MATLock(this, id));
+    }
+
+    /**
+     * Sets the number of threads that may be started in advance. The order of lock grants does not depend on it, so
+     * it takes effect immediately. Steps do not exist in MAT and are ignored.
+     */
+    @Override
+    public int requestReconfiguration(int primaries, int stepsPerPrimary) {
+        if(primaries < 1) {
+            throw new IllegalArgumentException("The MATScheduler needs a concurrency of at least 1, got " + primaries);
+        }
+        if(logger.isLoggable(Level.WARNING)) {
+            logger.warning("{" + Thread.currentThread().getName() + "} requestConfiguration: new MAT concurrency " +
+                    "requested (" + primaries + " threads, ignoring " + stepsPerPrimary + " steps per prim)");
+        }
+        schedulerLock.lock();
+        try {
+            concurrency = primaries;
+            while(running < concurrency && !notStarted.isEmpty()) {
+                start(notStarted.pollFirst());
+            }
+            // more threads may be pending now
+            admission.signalAll();
+        } finally {
+            schedulerLock.unlock();
+        }
+        return primaries;
+    }
+
+    @Override
+    public int requestReconfigurationPrimaries(int primaries) {
+        return requestReconfiguration(primaries, 1);
+    }
+
+    @Override
+    public int requestReconfigurationPrimariesBy(int delta) {
+        schedulerLock.lock();
+        try {
+            return requestReconfiguration(Math.max(1, concurrency + delta), 1);
+        } finally {
+            schedulerLock.unlock();
+        }
+    }
+
+    @Override
+    public void requestReconfigurationSteps(int steps) {
+        if(logger.isLoggable(Level.INFO)) {
+            logger.info("The MATScheduler has no steps, ignoring reconfiguration to " + steps + " steps");
+        }
+    }
+
+    @Override
+    public int getCurrentUDSConfigurationPrimaries() {
+        return concurrency;
+    }
+
+    /**
+     * @return the number of hand-overs of the active role
+     */
+    @Override
+    public int getCurrentRoundNumber() {
+        return numberOfHandOvers;
+    }
+
+    @Override
+    public long getNumberOfThreadsScheduled() {
+        return numberOfThreadsScheduled;
+    }
+
+    @Override
+    public long getNumberOfThreadsTerminated() {
+        return numberOfThreadsTerminated;
+    }
+
+    /**
+     * Thread executing one request. All fields except the Condition are guarded by the scheduler lock.
+     */
+    final class MATThread {
+
+        private final long id;
+
+        private final Runnable request;
+
+        private final Runnable replyRunnable;
+
+        /**
+         * Signalled when this thread gets the active role
+         */
+        private final Condition activated = schedulerLock.newCondition();
+
+        private boolean started;
+
+        private boolean admitted;
+
+        private boolean terminated;
+
+        private MATThread(long id, Runnable request, Runnable replyRunnable) {
+            this.id = id;
+            this.request = request;
+            this.replyRunnable = replyRunnable;
+        }
+
+        private void execute() {
+            try {
+                currentMATThread.set(this);
+                request.run();
+                replyThreadPool.execute(replyRunnable);
+            } finally {
+                currentMATThread.remove();
+                terminate(this);
+            }
+        }
+
+        @Override
+        public String toString() {
+            return "MATThread" + id;
+        }
+    }
+}
@@ -0,0 +1,133 @@
+package de.uniulm.vs.art.uds;
+
+import de.optscore.vscale.client.ClientWorker;
+
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Built-in policy of {@link UDScheduler} for adapting the number of primaries between rounds, for replicas without a
+ * ByTI-based autoscaler.
+ *
+ * The policy only looks at the state of the previous rounds at their end: whether any progress was made and how many
+ * primaries were still blocked on a lock or condition. Both follow from the total order, so every replica adapts the
+ * same way in the same round. Whether a primary had to wait for a lock during the round is not used, since that
+ * depends on how fast the current owner released it.
+ *
+ * Rounds are evaluated in windows of a fixed number of rounds. If the primaries of a window were mostly blocked, the
+ * number of primaries is decreased; if they were hardly ever blocked, it is increased. A change is only made
+ * after the same decision has been reached for several windows in a row (hysteresis), except for rounds without any
+ * progress, which immediately add a primary.
+ */
+final class UDSAdaptationPolicy {
+
+    /**
+     * Share of blocked primaries at the end of a round above which the number of primaries is decreased
+     */
+    private static final double SHRINK_BLOCKED_RATIO = 0.5d;
+
+    /**
+     * Share of blocked primaries at the end of a round below which the number of primaries is increased
+     */
+    private static final double GROW_BLOCKED_RATIO = 0.1d;
+
+    private final int minPrimaries;
+    private final int maxPrimaries;
+
+    /**
+     * Number of rounds that are evaluated together
+     */
+    private final int window;
+
+    /**
+     * Number of consecutive windows that have to agree before the number of primaries is changed
+     */
+    private final int hysteresis;
+
+    private int rounds;
+    private int primarySlots;
+    private int blockedPrimaries;
+
+    /**
+     * The last decision (-1 shrink, 0 keep, 1 grow) and how many windows in a row reached it
+     */
+    private int lastDecision;
+    private int decisionStreak;
+
+    /**
+     * Logging
+     */
+    private static final Logger logger = Logger.getLogger(UDSAdaptationPolicy.class.getName());
+
+    UDSAdaptationPolicy(int minPrimaries, int maxPrimaries, int window, int hysteresis) {
+        logger.setLevel(ClientWorker.GLOBAL_LOGGING_LEVEL);
+        if(minPrimaries < 1 || maxPrimaries < minPrimaries || window < 1 || hysteresis < 1) {
+            throw new IllegalArgumentException("Invalid UDS adaptation bounds: " + minPrimaries + "-" +
+                    maxPrimaries + " primaries, window " + window + ", hysteresis " + hysteresis);
+        }
+        this.minPrimaries = minPrimaries;
+        this.maxPrimaries = maxPrimaries;
+        this.window = window;
+        this.hysteresis = hysteresis;
+    }
+
+    /**
+     * Records a finished round and decides on the number of primaries for the next round.
+     * Can only be called when holding the scheduler lock, in between rounds.
+     *
+     * @param n                the number of primaries of the finished round
+     * @param progress         whether any progress was made in the finished round
+     * @param blockedPrimaries the number of primaries enqueued at a lock or waiting on a condition at its end
+     * @return the number of primaries for the next round
+     */
+    int nextPrimaries(int n, boolean progress, int blockedPrimaries) {
+        this.rounds++;
+        this.primarySlots += n;
+        this.blockedPrimaries += blockedPrimaries;
+
+        if(!progress) {
+            // none of the primaries could do anything, so let more threads try in the next round
+            resetWindow();
+            decisionStreak = 0;
+            return adapt(n, 1, "no progress");
+        }
+        if(rounds < window) {
+            return n;
+        }
+
+        double blockedRatio = (double) this.blockedPrimaries / primarySlots;
+        int decision = 0;
+        if(blockedRatio >= SHRINK_BLOCKED_RATIO) {
+            decision = -1;
+        } else if(blockedRatio <= GROW_BLOCKED_RATIO) {
+            decision = 1;
+        }
+        if(logger.isLoggable(Level.FINER)) {
+            logger.finer("UDSAdaptationPolicy: window of " + rounds + " rounds with " + n + " primaries, blocked " +
+                    "ratio " + blockedRatio + ", decision " + decision);
+        }
+        resetWindow();
+
+        decisionStreak = decision == lastDecision ? decisionStreak + 1 : 1;
+        lastDecision = decision;
+        if(decision == 0 || decisionStreak < hysteresis) {
+            return n;
+        }
+        decisionStreak = 0;
+        return adapt(n, decision, decision > 0 ? "low contention" : "high contention");
+    }
+
+    private int adapt(int n, int delta, String reason) {
+        int newN = Math.max(minPrimaries, Math.min(maxPrimaries, n + delta));
+        if(newN != n && logger.isLoggable(Level.FINE)) {
+            logger.fine("UDSAdaptationPolicy: " + reason + ", changing primaries from " + n + " to " + newN);
+        }
+        return newN;
+    }
+
+    private void resetWindow() {
+        rounds = 0;
+        primarySlots = 0;
+        blockedPrimaries = 0;
+    }
+}
@@ -0,0 +1,129 @@
+package de.uniulm.vs.art.uds;
+
+import de.optscore.reconfiguration.cpu.LinuxThreadAffinity;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Pins the workers executing UDS threads to the online CPU cores (enabled with {@link UDSOptions#AFFINITY}), so that
+ * primaries do not migrate between cores during hand-offs and the shared state they touch stays in the caches of
+ * their cores. Every worker is bound to a single core, round robin over the online cores in the order the workers
+ * start. When cores are brought online or offline, {@link #coresChanged()} spreads the workers over the new set of
+ * cores.
+ *
+ * Pinning uses {@link LinuxThreadAffinity} and is a no-op where that is not supported. The carrier threads of virtual
+ * threads are not pinned.
+ */
+public final class UDSAffinity {
+
+    /**
+     * Kernel thread ids of the live workers, in the order they started. Guarded by the class monitor.
+     */
+    private static final Map<Thread, Integer> workers = new LinkedHashMap<>();
+
+    /**
+     * The cores workers are pinned to. Guarded by the class monitor.
+     */
+    private static int[] cores = readCores();
+
+    /**
+     * Number of workers pinned to the current cores so far, for the round robin assignment. Guarded by the class
+     * monitor.
+     */
+    private static int assigned;
+
+    /**
+     * Runs taskset, so that a starting worker does not wait for it
+     */
+    private static final ExecutorService pinner = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "uds-affinity");
+        t.setDaemon(true);
+        return t;
+    });
+
+    /**
+     * Logging
+     */
+    private static final Logger logger = Logger.getLogger(UDSAffinity.class.getName());
+
+    /**
+     * Not instantiable.
+     */
+    private UDSAffinity() {
+    }
+
+    /**
+     * Wraps the main loop of a worker thread, so that the worker is pinned to a core for as long as it runs
+     */
+    static Runnable pinned(Runnable worker) {
+        return () -> {
+            register();
+            try {
+                worker.run();
+            } finally {
+                deregister();
+            }
+        };
+    }
+
+    private static void register() {
+        int threadId = LinuxThreadAffinity.currentThreadId();
+        if(threadId < 0) {
+            return;
+        }
+        int cpu;
+        synchronized(UDSAffinity.class) {
+            workers.put(Thread.currentThread(), threadId);
+            cpu = cores[assigned++ % cores.length];
+        }
+        pin(threadId, cpu);
+    }
+
+    private static synchronized void deregister() {
+        workers.remove(Thread.currentThread());
+    }
+
+    /**
+     * Re-reads the online cores and spreads all live workers over them. Called after cores have been brought online
+     * or offline.
+     *
+     * @return the number of cores the workers are pinned to now
+     */
+    public static synchronized int coresChanged() {
+        cores = readCores();
+        assigned = 0;
+        for(int threadId : workers.values()) {
+            pin(threadId, cores[assigned++ % cores.length]);
+        }
+        if(logger.isLoggable(Level.INFO)) {
+            logger.info("Pinned " + workers.size() + " UDS workers to cores " + Arrays.toString(cores));
+        }
+        return cores.length;
+    }
+
+    /**
+     * @return the number of cores the workers are pinned to
+     */
+    public static synchronized int getPinnedCores() {
+        return cores.length;
+    }
+
+    private static int[] readCores() {
+        int[] online = LinuxThreadAffinity.onlineCpus();
+        return online.length > 0 ? online : new int[]{0};
+    }
+
+    private static void pin(int threadId, int cpu) {
+        pinner.execute(() -> {
+            if(!LinuxThreadAffinity.pin(threadId, cpu) && logger.isLoggable(Level.FINE)) {
+                logger.fine("Could not pin thread " + threadId + " to core " + cpu);
+            }
+        });
+    }
+}
@@ -0,0 +1,72 @@
+package de.uniulm.vs.art.uds;
+
+import de.optscore.vscale.client.ClientWorker;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.CountDownLatch;
+import java.util.logging.Logger;
+
+/**
+ * Checks that the UDS scheduling and locking hot path does not allocate in steady state: a single UDS thread
+ * repeatedly locks and unlocks a UDSLock, and the bytes allocated by that thread are measured with the HotSpot
+ * {@link com.sun.management.ThreadMXBean}. Ends with exit code 1 if any bytes were allocated per lock/unlock pair.
+ *
+ * Only the uncontended path (1 primary) is measured. Threads that have to wait still allocate the wait nodes of the
+ * JDK's Conditions they park on.
+ *
+ * Usage: UDSAllocationBenchmark [lock/unlock pairs] [steps per round]
+ */
+public class UDSAllocationBenchmark {
+
+    private static final Logger logger = Logger.getLogger(UDSAllocationBenchmark.class.getName());
+
+    public static void main(String[] args) throws InterruptedException {
+        logger.setLevel(ClientWorker.GLOBAL_LOGGING_LEVEL);
+        int pairs = args.length > 0 ? Integer.parseInt(args[0]) : 1000000;
+        int steps = args.length > 1 ? Integer.parseInt(args[1]) : 1000;
+
+        com.sun.management.ThreadMXBean threadBean =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        if(!threadBean.isThreadAllocatedMemorySupported()) {
+            logger.severe("Measuring allocated bytes per thread is not supported by this JVM");
+            System.exit(2);
+        }
+        threadBean.setThreadAllocatedMemoryEnabled(true);
+
+        UDScheduler uds = UDScheduler.getInstance();
+        UDSLock lock = new UDSLock(1);
+        long[] allocatedBytes = new long[1];
+        CountDownLatch done = new CountDownLatch(1);
+
+        uds.addRequest(() -> uds.requestReconfiguration(1, steps), () -> {});
+        uds.addRequest(() -> {
+            long threadId = Thread.currentThread().getId();
+
+            // warm up, so that classes are loaded, the code is compiled and all buffers have their final size
+            for(int i = 0; i < pairs; i++) {
+                lock.lock();
+                lock.unlock();
+            }
+
+            // measure the measurement itself, so it can be subtracted
+            long calibrationStart = threadBean.getThreadAllocatedBytes(threadId);
+            long calibrationEnd = threadBean.getThreadAllocatedBytes(threadId);
+            long measurementOverhead = calibrationEnd - calibrationStart;
+
+            long start = threadBean.getThreadAllocatedBytes(threadId);
+            for(int i = 0; i < pairs; i++) {
+                lock.lock();
+                lock.unlock();
+            }
+            long end = threadBean.getThreadAllocatedBytes(threadId);
+            allocatedBytes[0] = end - start - measurementOverhead;
+            done.countDown();
+        }, () -> {});
+
+        done.await();
+        double bytesPerPair = (double) allocatedBytes[0] / pairs;
+        System.out.println("Allocated " + allocatedBytes[0] + " bytes for " + pairs + " lock/unlock pairs (" +
+                bytesPerPair + " bytes per pair, " + steps + " steps per round)");
+        System.exit(allocatedBytes[0] > 0 ? 1 : 0);
+    }
+}
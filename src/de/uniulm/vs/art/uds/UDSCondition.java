@@ -0,0 +1,201 @@
+package de.uniulm.vs.art.uds;
+
+import de.optscore.vscale.client.ClientWorker;
+
+import java.util.ArrayDeque;
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Deterministic condition variable of a {@link UDSLock}.
+ *
+ * Waiting threads are queued in the order in which they called await(). Since await() and signal() can only be
+ * called while holding the UDSLock, this order follows the UDS total order and is the same on all replicas.
+ * signal() wakes the first waiting thread, which then re-acquires the UDSLock obeying the total order.
+ *
+ * A waiting thread is idle for UDS: it does not keep the current round from ending and is not chosen as primary
+ * again until it has been signalled, so waiting does not use up any rounds.
+ *
+ * Wall-clock timeouts would differ between replicas, so the timed await methods wait at most until the end of the
+ * round in which they were called instead.
+ *
+ * While UDS executes requests sequentially (see {@link UDSPartitions#enterSequentialExecution()}), nothing could ever
+ * signal a waiting request, so await() fails, and signal() has nobody to wake up.
+ */
+final class UDSCondition implements Condition {
+
+    /**
+     * The UDSLock this condition belongs to
+     */
+    private final UDSLock lock;
+
+    /**
+     * Threads waiting for a signal, in the order they started waiting
+     */
+    private final ArrayDeque<UDScheduler.UDSThread> waitingThreads = new ArrayDeque<>();
+
+    /**
+     * Logging
+     */
+    private static final Logger logger = Logger.getLogger(UDSCondition.class.getName());
+
+    UDSCondition(UDSLock lock) {
+        logger.setLevel(ClientWorker.GLOBAL_LOGGING_LEVEL);
+        this.lock = lock;
+    }
+
+    @Override
+    public void await() throws InterruptedException {
+        awaitSignal(false);
+    }
+
+    @Override
+    public void awaitUninterruptibly() {
+        awaitSignal(false);
+    }
+
+    /**
+     * Waits until signalled or until the end of the current round, see class comment. A timeout of 0 or less
+     * returns immediately without releasing the lock.
+     *
+     * @return a positive value if signalled, 0 or less if the round ended first
+     */
+    @Override
+    public long awaitNanos(long nanosTimeout) throws InterruptedException {
+        if(nanosTimeout <= 0) {
+            return nanosTimeout;
+        }
+        return awaitSignal(true) ? nanosTimeout : 0;
+    }
+
+    /**
+     * Waits until signalled or until the end of the current round, see class comment. A timeout of 0 or less
+     * returns immediately without releasing the lock.
+     *
+     * @return true if signalled, false if the round ended first
+     */
+    @Override
+    public boolean await(long time, TimeUnit unit) throws InterruptedException {
+        return time > 0 && awaitSignal(true);
+    }
+
+    /**
+     * Waits until signalled or until the end of the current round, see class comment.
+     *
+     * @return true if signalled, false if the round ended first
+     */
+    @Override
+    public boolean awaitUntil(Date deadline) throws InterruptedException {
+        return awaitSignal(true);
+    }
+
+    /**
+     * Releases the lock, waits for a signal and re-acquires the lock obeying total order.
+     *
+     * @param untilEndOfRound true if the thread should stop waiting at the end of the current round
+     * @return true if the thread was signalled
+     */
+    private boolean awaitSignal(boolean untilEndOfRound) {
+        UDScheduler.UDSThread t = UDScheduler.getCurrentUDSThread();
+        if(t == null) {
+            UDScheduler.checkSequentialExecution("UDSCondition.await()");
+            throw new IllegalStateException("{" + Thread.currentThread().getName() + "} UDSCondition.await(): " +
+                    "a sequentially executed request would wait forever on a condition of L" + lock.getLockID());
+        }
+        boolean signalled;
+        UDScheduler uds = t.getScheduler();
+        uds.getSchedulerLock().lock();
+        try {
+            if(!lock.isOwner(t)) {
+                throw new IllegalMonitorStateException(t.getIdString() + " UDSCondition.await(): tried to wait " +
+                        "on a condition of L" + lock.getLockID() + " without holding the lock");
+            }
+            if(logger.isLoggable(Level.FINE)) {
+                logger.fine(t.getIdString() + " UDSCondition.await(): waits on a condition of L" +
+                        lock.getLockID());
+            }
+
+            waitingThreads.add(t);
+            t.setAwaitedCondition(this, untilEndOfRound);
+            lock.unlock();
+            uds.setProgress(true);
+
+            // the thread is idle now, so the round might be over
+            uds.checkForEndOfRound();
+            signalled = t.awaitSignal();
+
+            if(logger.isLoggable(Level.FINER)) {
+                logger.finer(t.getIdString() + " UDSCondition.await(): " + (signalled ? "was signalled" :
+                        "stopped waiting at the end of the round") + ", re-acquiring L" + lock.getLockID());
+            }
+        } finally {
+            uds.getSchedulerLock().unlock();
+        }
+        lock.lock();
+        return signalled;
+    }
+
+    /**
+     * Wakes up the thread that has been waiting the longest
+     */
+    @Override
+    public void signal() {
+        signal(false);
+    }
+
+    /**
+     * Wakes up all waiting threads
+     */
+    @Override
+    public void signalAll() {
+        signal(true);
+    }
+
+    private void signal(boolean all) {
+        UDScheduler.UDSThread t = UDScheduler.getCurrentUDSThread();
+        if(t == null) {
+            UDScheduler.checkSequentialExecution("UDSCondition.signal()");
+            if(!lock.isHeldSequentially()) {
+                throw new IllegalMonitorStateException("{" + Thread.currentThread().getName() + "} " +
+                        "UDSCondition.signal(): tried to signal a condition of L" + lock.getLockID() +
+                        " without holding the lock");
+            }
+            return;
+        }
+        UDScheduler uds = t.getScheduler();
+        uds.getSchedulerLock().lock();
+        try {
+            if(!lock.isOwner(t)) {
+                throw new IllegalMonitorStateException(t.getIdString() + " UDSCondition.signal(): tried to signal " +
+                        "a condition of L" + lock.getLockID() + " without holding the lock");
+            }
+            while(!waitingThreads.isEmpty()) {
+                UDScheduler.UDSThread next = waitingThreads.pollFirst();
+                if(logger.isLoggable(Level.FINE)) {
+                    logger.fine(t.getIdString() + " UDSCondition.signal(): signals " + next.getIdString() +
+                            " waiting on a condition of L" + lock.getLockID());
+                }
+                next.signalAwaitedCondition(true);
+                if(!all) {
+                    break;
+                }
+            }
+            uds.setProgress(true);
+        } finally {
+            uds.getSchedulerLock().unlock();
+        }
+    }
+
+    /**
+     * Remove a thread from the waiting threads, e.g. because its timed wait ended with the round.
+     * Can only be called when holding the scheduler lock.
+     *
+     * @param t The thread to be removed
+     */
+    void removeWaitingThread(UDScheduler.UDSThread t) {
+        waitingThreads.removeFirstOccurrence(t);
+    }
+}
@@ -0,0 +1,152 @@
+package de.uniulm.vs.art.uds;
+
+import de.optscore.vscale.client.ClientWorker;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Executes requests that never take a UDS lock outside of UDS rounds, on a fixed pool of workers (see
+ * {@link UDSOptions#FAST_PATH}). Such requests cannot influence the order in which locks are granted, so they do not
+ * need a primary slot, steps in the total order or any round bookkeeping.
+ *
+ * Requests are executed in parallel, but their replies are sent in the order in which the requests were added: a
+ * reply is held back until the replies of all requests added before it have been sent.
+ *
+ * Requests added here must not use UDSLocks, UDSReadWriteLocks or UDSConditions, and must not touch any other state
+ * shared with UDS threads.
+ */
+public final class UDSFastPath {
+
+    /**
+     * Workers executing the requests
+     */
+    private final ExecutorService workers;
+
+    /**
+     * Guards the pending replies
+     */
+    private final ReentrantLock lock = new ReentrantLock();
+
+    /**
+     * Condition for back-pressure, like the admission of {@link UDScheduler#addRequest(Runnable, Runnable)}
+     */
+    private final Condition admission = lock.newCondition();
+
+    /**
+     * Added requests whose replies have not been sent yet, in the order they were added
+     */
+    private final ArrayDeque<PendingReply> pendingReplies = new ArrayDeque<>();
+
+    /**
+     * Number of requests that may be executing or waiting for their reply before addRequest() blocks
+     */
+    private final int admissionLimit;
+
+    /**
+     * Logging
+     */
+    private static final Logger logger = Logger.getLogger(UDSFastPath.class.getName());
+
+    /**
+     * Singleton. Not instantiable.
+     */
+    private UDSFastPath() {
+        logger.setLevel(ClientWorker.GLOBAL_LOGGING_LEVEL);
+        int poolSize = Math.max(1, UDSOptions.FAST_PATH_POOL_SIZE);
+        AtomicInteger workerNo = new AtomicInteger(0);
+        this.workers = new ThreadPoolExecutor(poolSize, poolSize, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<>(),
+                r -> new Thread(r, "uds-fastpath-" + workerNo.getAndIncrement()));
+        this.admissionLimit = poolSize + UDSOptions.ADMISSION_SLACK;
+    }
+
+    /**
+     * Singleton pattern
+     */
+    private static class LazySingletonHolder {
+        static final UDSFastPath instance = new UDSFastPath();
+    }
+
+    /**
+     * Get the Singleton instance of the UDS fast path
+     *
+     * @return Singleton UDS fast path instance
+     */
+    public static UDSFastPath getInstance() {
+        return LazySingletonHolder.instance;
+    }
+
+    /**
+     * Adds a request that does not take any UDS locks. Blocks(!) if too many requests are pending.
+     * Must be called by the single thread delivering requests, like {@link UDScheduler#addRequest(Runnable, Runnable)}.
+     *
+     * @param r             Runnable responsible for fulfilling the client request
+     * @param replyRunnable Runnable sending the reply, run after the replies of all requests added before
+     */
+    public void addRequest(Runnable r, Runnable replyRunnable) {
+        PendingReply pendingReply = new PendingReply(replyRunnable);
+        lock.lock();
+        try {
+            while(pendingReplies.size() >= admissionLimit) {
+                if(logger.isLoggable(Level.FINEST)) {
+                    logger.finest("{" + Thread.currentThread().getName() + "} UDSFastPath.addRequest: blocking " +
+                            "due to too many pending requests");
+                }
+                admission.awaitUninterruptibly();
+            }
+            pendingReplies.addLast(pendingReply);
+        } finally {
+            lock.unlock();
+        }
+
+        workers.execute(() -> {
+            try {
+                r.run();
+            } finally {
+                complete(pendingReply);
+            }
+        });
+    }
+
+    /**
+     * Marks a request as executed and sends all replies at the head of the pending replies that are ready
+     */
+    private void complete(PendingReply pendingReply) {
+        lock.lock();
+        try {
+            pendingReply.executed = true;
+            // replies are run while holding the lock, so they are sent in order even if several workers complete
+            // requests at the same time
+            boolean sent = false;
+            while(!pendingReplies.isEmpty() && pendingReplies.peekFirst().executed) {
+                pendingReplies.pollFirst().replyRunnable.run();
+                sent = true;
+            }
+            if(sent) {
+                admission.signalAll();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * The reply of an added request, and whether the request has been executed
+     */
+    private static final class PendingReply {
+        private final Runnable replyRunnable;
+        private boolean executed;
+
+        private PendingReply(Runnable replyRunnable) {
+            this.replyRunnable = replyRunnable;
+        }
+    }
+}
@@ -0,0 +1,67 @@
+package de.uniulm.vs.art.uds;
+
+import de.optscore.vscale.client.ClientWorker;
+
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.logging.Logger;
+
+/**
+ * Measures the latency of hand-offs between UDS primaries for different {@link UDSWaitStrategy wait strategies}.
+ * Two primaries with one step each alternately lock and unlock the same UDSLock, so every lock() has to wait for the
+ * other primary's turn in the total order and every unlock() hands the lock over to the other primary. The benchmark
+ * prints the average time per lock/unlock pair, i.e. per hand-off, for every strategy.
+ *
+ * Spinning only pays off if both primaries have a core of their own.
+ *
+ * Usage: UDSHandoffBenchmark [lock/unlock pairs per primary] [strategy...]  (default strategies: park spin)
+ */
+public class UDSHandoffBenchmark {
+
+    private static final Logger logger = Logger.getLogger(UDSHandoffBenchmark.class.getName());
+
+    private static final int PRIMARIES = 2;
+
+    public static void main(String[] args) throws InterruptedException {
+        logger.setLevel(ClientWorker.GLOBAL_LOGGING_LEVEL);
+        int pairs = args.length > 0 ? Integer.parseInt(args[0]) : 100000;
+        String[] strategies = args.length > 1 ? Arrays.copyOfRange(args, 1, args.length) :
+                new String[]{"park", "spin"};
+
+        UDScheduler uds = UDScheduler.getInstance();
+        UDSLock lock = new UDSLock(1);
+        uds.addRequest(() -> uds.requestReconfiguration(PRIMARIES, 1), () -> {});
+
+        // warm up with the default strategy, so that classes are loaded and the code is compiled
+        run(uds, lock, pairs);
+
+        for(String strategy : strategies) {
+            uds.setWaitStrategy(UDSWaitStrategy.parse(strategy));
+            long nanos = run(uds, lock, pairs);
+            long handoffs = (long) pairs * PRIMARIES;
+            System.out.println("Wait strategy " + uds.getWaitStrategy() + ": " + handoffs + " hand-offs in " +
+                    nanos / 1000000 + " ms (" + nanos / handoffs + " ns per hand-off)");
+        }
+        System.exit(0);
+    }
+
+    /**
+     * Lets the primaries hand the lock back and forth
+     *
+     * @return the elapsed time in ns
+     */
+    private static long run(UDScheduler uds, UDSLock lock, int pairs) throws InterruptedException {
+        CountDownLatch done = new CountDownLatch(PRIMARIES);
+        long start = System.nanoTime();
+        for(int p = 0; p < PRIMARIES; p++) {
+            uds.addRequest(() -> {
+                for(int i = 0; i < pairs; i++) {
+                    lock.lock();
+                    lock.unlock();
+                }
+            }, done::countDown);
+        }
+        done.await();
+        return System.nanoTime() - start;
+    }
+}
@@ -0,0 +1,81 @@
+package de.uniulm.vs.art.uds;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock-free histogram of non-negative long values (e.g. durations in ns) with power-of-two buckets. Recording never
+ * allocates or blocks, and the histogram can be read at any time by other threads (e.g. via JMX) without stopping
+ * the threads recording into it. Percentiles are approximated by the upper bound of the bucket they fall into.
+ */
+public final class UDSHistogram {
+
+    private static final int BUCKETS = 64;
+
+    /**
+     * Bucket i counts values v with 2^(i-1) <= v < 2^i, bucket 0 counts values of 0
+     */
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong sum = new AtomicLong();
+    private final AtomicLong max = new AtomicLong();
+
+    /**
+     * Records a value. Negative values are recorded as 0.
+     */
+    public void record(long value) {
+        if(value < 0) {
+            value = 0;
+        }
+        buckets.incrementAndGet(BUCKETS - Long.numberOfLeadingZeros(value));
+        count.incrementAndGet();
+        sum.addAndGet(value);
+        long currentMax;
+        while(value > (currentMax = max.get()) && !max.compareAndSet(currentMax, value)) {
+            // retry until this value is stored or a larger one was recorded concurrently
+        }
+    }
+
+    public long getCount() {
+        return count.get();
+    }
+
+    public long getSum() {
+        return sum.get();
+    }
+
+    public long getMax() {
+        return max.get();
+    }
+
+    public double getMean() {
+        long n = count.get();
+        return n == 0 ? 0d : (double) sum.get() / n;
+    }
+
+    /**
+     * @param percentile between 0 and 100
+     * @return the upper bound of the bucket containing the given percentile, 0 if nothing was recorded
+     */
+    public long getPercentile(double percentile) {
+        long n = count.get();
+        if(n == 0) {
+            return 0;
+        }
+        long rank = (long) Math.ceil(n * percentile / 100d);
+        long seen = 0;
+        for(int i = 0; i < BUCKETS; i++) {
+            seen += buckets.get(i);
+            if(seen >= rank) {
+                return Math.min(max.get(), (1L << i) - 1);
+            }
+        }
+        return max.get();
+    }
+
+    @Override
+    public String toString() {
+        return "count " + getCount() + ", mean " + (long) getMean() + ", p50 " + getPercentile(50) + ", p99 " +
+                getPercentile(99) + ", max " + getMax();
+    }
+}
@@ -2,8 +2,7 @@ package de.uniulm.vs.art.uds;
 
 import de.optscore.vscale.client.ClientWorker;
 
-import java.util.LinkedList;
-import java.util.List;
+import java.util.ArrayDeque;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.locks.Condition;
 import java.util.concurrent.locks.Lock;
@@ -13,13 +12,14 @@ import java.util.logging.Logger;
 /**
  * Represents a UDS-aware Lock. If a thread requests/takes this lock,
  * a UDS-imposed total order will be obeyed.
+ *
+ * The lock uses the scheduler of the calling UDS thread. With several UDS partitions (see {@link UDSPartitions}), a
+ * lock must only be used by the threads of one partition, except by cross-partition requests.
+ *
+ * While UDS executes requests sequentially (see {@link UDSPartitions#enterSequentialExecution()}), the lock can also
+ * be used by the delivery thread. It then only checks that it is not taken twice, since there is nothing to order.
  */
-public class UDSLock implements Lock {
-
-    /**
-     * Reference to the UDS Scheduler instance of this JVM, so we can wait on its Conditions, etc
-     */
-    private final UDScheduler uds = UDScheduler.getInstance();
+public class UDSLock implements Lock, UDSWaitQueue {
 
     /**
      * Identifier of this Lock
@@ -31,11 +31,23 @@ public class UDSLock implements Lock {
      */
     private UDScheduler.UDSThread owner = null;
 
+    /**
+     * True if the lock is held by a sequentially executed request
+     */
+    private boolean heldSequentially = false;
+
     /**
      * The per-mutex wait queue for threads which requested this Lock but have not yet acquired it.
      * May get cleared, e.g. at the end of a round.
      */
-    private List<UDScheduler.UDSThread> enqueuedThreads = new LinkedList<>();
+    private final ArrayDeque<UDScheduler.UDSThread> enqueuedThreads = new ArrayDeque<>();
+
+    /**
+     * Wait and hold times of this lock, null if metrics are disabled (see {@link UDSOptions#METRICS}), and when the
+     * current owner was granted the lock
+     */
+    private final UDSLockMetrics metrics;
+    private long ownedSince;
 
     /**
      * Logging
@@ -53,6 +65,14 @@ public class UDSLock implements Lock {
     public UDSLock(int id) {
         logger.setLevel(ClientWorker.GLOBAL_LOGGING_LEVEL);
         this.lockID = id;
+        this.metrics = UDSOptions.METRICS ? new UDSLockMetrics(id) : null;
+    }
+
+    /**
+     * @return the wait and hold times of this lock, null if metrics are disabled
+     */
+    public UDSLockMetrics getMetrics() {
+        return metrics;
     }
 
     /**
@@ -60,9 +80,32 @@ public class UDSLock implements Lock {
      */
     @Override
     public void lock() {
-        uds.getSchedulerLock().lock();
+        acquire(true);
+    }
+
+    /**
+     * Obeys total order before trying to take the lock. If the lock is occupied, the thread is enqueued and waits
+     * until it either gets the lock or is dequeued at the end of the round.
+     *
+     * @param retry true if the thread should try again after being dequeued at the end of a round, false if it
+     *              should give up
+     * @return true if the lock was acquired
+     */
+    private boolean acquire(boolean retry) {
         UDScheduler.UDSThread t = UDScheduler.getCurrentUDSThread();
-        String prefix = t.getIdString() + " UDSLock.lock(): ";
+        if(t == null) {
+            // a timed tryLock() gives up instead of waiting
+            return retry ? acquireSequentially() : tryLock();
+        }
+        UDScheduler uds = t.getScheduler();
+        uds.getSchedulerLock().lock();
+        // only build the log prefix if it is actually used, lock() is on the hot path
+        String prefix = "";
+        if(logger.isLoggable(Level.FINE)) {
+            prefix = t.getIdString() + " UDSLock.lock(): ";
+        }
+        boolean acquired = true;
+        long requestedAt = metrics != null ? System.nanoTime() : 0;
         try {
             if(logger.isLoggable(Level.FINE)) {
                 logger.fine(prefix + "locking L" + this.lockID);
@@ -82,6 +125,7 @@ public class UDSLock implements Lock {
                 }
                 this.enqueuedThreads.add(t);
                 t.setEnqueued(this);
+                uds.trace(UDSTraceRecorder.LOCK_ENQUEUE, t, this.lockID);
 
                 // check if round is over, else continue by waiting until thread is first in mutex wait queue
                 uds.checkForEndOfRound();
@@ -96,15 +140,23 @@ public class UDSLock implements Lock {
                                 " for lock L" + this.lockID);
                     }
                 }
-                if(this.owner != t) {
+                if(this.owner != t && retry) {
                     // repeat (see UDS v1.2.1 spec line 28)
                     // unlock first, then
                     if(logger.isLoggable(Level.WARNING)) {
-                        logger.warning(prefix + "tried locking L" + this.lockID +
+                        logger.warning(t.getIdString() + " UDSLock.lock(): tried locking L" + this.lockID +
                                 ", but wasn't right owner. Current owner is " + this.owner.getIdString() + ". Trying " +
                                 "again");
                     }
                     lock();
+                } else if(this.owner != t) {
+                    if(logger.isLoggable(Level.FINER)) {
+                        logger.finer(prefix + "gave up locking L" + this.lockID + " at the end of the round");
+                    }
+                    acquired = false;
+                } else if(metrics != null) {
+                    // granted by unlock(), which already set ownedSince
+                    metrics.getWaitTimes().record(ownedSince - requestedAt);
                 }
             } else {
                 // take this UDSLock
@@ -112,15 +164,21 @@ public class UDSLock implements Lock {
                     logger.finer(prefix + "took lock L" + this.lockID);
                 }
                 this.owner = t;
+                uds.trace(UDSTraceRecorder.LOCK_GRANT, t, this.lockID);
+                if(metrics != null) {
+                    ownedSince = System.nanoTime();
+                    metrics.getWaitTimes().record(ownedSince - requestedAt);
+                }
             }
             uds.setProgress(true);
         } catch(Throwable e) {
             e.printStackTrace();
-            logger.info(prefix + "has been interrupted while waiting on " +
+            logger.info(t.getIdString() + " UDSLock.lock(): has been interrupted while waiting on " +
                     "isEnqueuedOrLockOwnedByThread ...");
         } finally {
             uds.getSchedulerLock().unlock();
         }
+        return acquired;
     }
 
     /**
@@ -129,9 +187,14 @@ public class UDSLock implements Lock {
      */
     @Override
     public void unlock() {
+        UDScheduler.UDSThread t = UDScheduler.getCurrentUDSThread();
+        if(t == null) {
+            releaseSequentially();
+            return;
+        }
+        UDScheduler uds = t.getScheduler();
         uds.getSchedulerLock().lock();
         try {
-            UDScheduler.UDSThread t = UDScheduler.getCurrentUDSThread();
             if(logger.isLoggable(Level.FINE)) {
                 logger.fine(t.getIdString() + " UDSLock.unlock(): is going to release " + this.lockID);
             }
@@ -143,15 +206,22 @@ public class UDSLock implements Lock {
             }
 
             this.owner = null;
+            long now = 0;
+            if(metrics != null) {
+                now = System.nanoTime();
+                metrics.getHoldTimes().record(now - ownedSince);
+            }
 
             // see if  other threads are waiting for this UDSLock and grant it to the first thread in queue
-            if(enqueuedThreads.size() > 0) {
+            if(!enqueuedThreads.isEmpty()) {
                 if(logger.isLoggable(Level.FINEST)) {
                     logger.finest(t.getIdString() + " UDSLock.unlock(): checks enqueuedThreads" +
                             " for lock " + this.lockID + " and waking them up");
                 }
-                UDScheduler.UDSThread next = enqueuedThreads.get(0);
+                UDScheduler.UDSThread next = enqueuedThreads.peekFirst();
                 this.owner = next;
+                uds.trace(UDSTraceRecorder.LOCK_GRANT, next, this.lockID);
+                ownedSince = now;
 
                 // signal the one thread that next will run due to changed condition
                 if(logger.isLoggable(Level.FINE)) {
@@ -181,47 +251,140 @@ public class UDSLock implements Lock {
     }
 
     /**
-     * Not implemented for UDSLock. Do not use.
-     * Use lock() instead.
-     * @return
-     * @throws InterruptedException
+     * Obeys total order, then takes the lock only if it is free. Never waits for the lock, and since the attempt
+     * happens at the thread's turn in the total order, the outcome only depends on the scheduler state.
+     *
+     * @return true if the lock was acquired
      */
     @Override
     public boolean tryLock() {
-        throw new NoSuchMethodError();
+        UDScheduler.UDSThread t = UDScheduler.getCurrentUDSThread();
+        if(t == null) {
+            UDScheduler.checkSequentialExecution("UDSLock.tryLock()");
+            if(isHeld()) {
+                return false;
+            }
+            heldSequentially = true;
+            return true;
+        }
+        UDScheduler uds = t.getScheduler();
+        uds.getSchedulerLock().lock();
+        try {
+            long requestedAt = metrics != null ? System.nanoTime() : 0;
+
+            // obey total order
+            uds.waitForTurn();
+            uds.setProgress(true);
+
+            if(this.owner == null) {
+                if(logger.isLoggable(Level.FINER)) {
+                    logger.finer(t.getIdString() + " UDSLock.tryLock(): took lock L" + this.lockID);
+                }
+                this.owner = t;
+                uds.trace(UDSTraceRecorder.LOCK_GRANT, t, this.lockID);
+                if(metrics != null) {
+                    ownedSince = System.nanoTime();
+                    metrics.getWaitTimes().record(ownedSince - requestedAt);
+                }
+                return true;
+            }
+            if(logger.isLoggable(Level.FINER)) {
+                logger.finer(t.getIdString() + " UDSLock.tryLock(): found lock L" + this.lockID + " occupied by " +
+                        owner.getIdString());
+            }
+            return false;
+        } finally {
+            uds.getSchedulerLock().unlock();
+        }
     }
 
     /**
-     * Not implemented for UDSLock. Do not use.
-     * Use lock() instead.
-     * @param time
-     * @param unit
-     * @return
-     * @throws InterruptedException
+     * Deterministic variant of a timed tryLock: wall-clock timeouts would differ between replicas, so a positive
+     * timeout is replaced by the end of the current round. The thread obeys total order and, if the lock is
+     * occupied, waits in the lock's queue until it either gets the lock or the round ends. A timeout of 0 or less
+     * behaves like {@link #tryLock()}.
+     *
+     * @param time the timeout; only its sign is used
+     * @param unit unused
+     * @return true if the lock was acquired
      */
     @Override
     public boolean tryLock(long time, TimeUnit unit) throws InterruptedException {
-        throw new NoSuchMethodError();
+        if(time <= 0) {
+            return tryLock();
+        }
+        return acquire(false);
+    }
+
+    /**
+     * Takes the lock for a sequentially executed request. Only one request runs at a time, so an occupied lock could
+     * never become free again.
+     *
+     * @return true
+     */
+    private boolean acquireSequentially() {
+        UDScheduler.checkSequentialExecution("UDSLock.lock()");
+        if(isHeld()) {
+            throw new IllegalMonitorStateException("{" + Thread.currentThread().getName() + "} UDSLock.lock(): L" +
+                    this.lockID + " is already held by " + (owner != null ? owner.getIdString() :
+                    "the sequentially executed request") + " and could never be acquired");
+        }
+        heldSequentially = true;
+        return true;
+    }
+
+    /**
+     * Releases the lock held by a sequentially executed request
+     */
+    private void releaseSequentially() {
+        UDScheduler.checkSequentialExecution("UDSLock.unlock()");
+        if(!heldSequentially) {
+            throw new IllegalMonitorStateException("{" + Thread.currentThread().getName() + "} UDSLock.unlock(): " +
+                    "tried to release " + this.lockID + " even though it wasn't the owner");
+        }
+        heldSequentially = false;
     }
 
+    boolean isHeldSequentially() {
+        return heldSequentially;
+    }
 
     /**
-     * Not implemented for UDSLock. Do not use.
+     * @return true if the lock is held by a UDS thread or a sequentially executed request
+     */
+    boolean isHeld() {
+        return owner != null || heldSequentially;
+    }
+
+    /**
+     * Creates a deterministic condition variable bound to this UDSLock, see {@link UDSCondition}.
      */
     @Override
     public Condition newCondition() {
-        throw new NoSuchMethodError();
+        return new UDSCondition(this);
+    }
+
+    /**
+     * @return true if the given thread currently owns this lock
+     */
+    boolean isOwner(UDScheduler.UDSThread t) {
+        return this.owner == t;
+    }
+
+    int getLockID() {
+        return lockID;
     }
 
     /**
 	 * Remove a thread from the queue of this lock
 	 * @param t The thread to be removed
      */
+    @Override
     public void removeFromQueue(UDScheduler.UDSThread t) {
         if(logger.isLoggable(Level.FINE)) {
             logger.fine( UDScheduler.getCurrentUDSThread().getIdString() + " removeFromQueue(): is removing " +
                     t.getIdString() + " from queue of lock " + this.lockID );
         }
-        while(enqueuedThreads.remove(t)) { }
+        while(enqueuedThreads.removeFirstOccurrence(t)) { }
     }
 }
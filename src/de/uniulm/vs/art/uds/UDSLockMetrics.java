@@ -0,0 +1,66 @@
+package de.uniulm.vs.art.uds;
+
+/**
+ * Wait and hold times of one {@link UDSLock} (see {@link UDSOptions#METRICS}). The wait time of an acquisition runs
+ * from the call of lock() until the lock is granted, including waiting for the turn in the total order; the hold time
+ * runs from the grant until unlock(). Exported via JMX as de.uniulm.vs.art.uds:type=UDSLock,id=N.
+ */
+public final class UDSLockMetrics implements UDSLockMetricsMXBean {
+
+    private final int lockID;
+    private final UDSHistogram waitTimes = new UDSHistogram();
+    private final UDSHistogram holdTimes = new UDSHistogram();
+
+    UDSLockMetrics(int lockID) {
+        this.lockID = lockID;
+        UDSMetrics.register(this, "de.uniulm.vs.art.uds:type=UDSLock,id=" + lockID);
+    }
+
+    public UDSHistogram getWaitTimes() {
+        return waitTimes;
+    }
+
+    public UDSHistogram getHoldTimes() {
+        return holdTimes;
+    }
+
+    @Override
+    public int getLockID() {
+        return lockID;
+    }
+
+    @Override
+    public long getAcquisitions() {
+        return waitTimes.getCount();
+    }
+
+    @Override
+    public double getWaitTimeMean() {
+        return waitTimes.getMean();
+    }
+
+    @Override
+    public long getWaitTimeP99() {
+        return waitTimes.getPercentile(99);
+    }
+
+    @Override
+    public long getWaitTimeMax() {
+        return waitTimes.getMax();
+    }
+
+    @Override
+    public double getHoldTimeMean() {
+        return holdTimes.getMean();
+    }
+
+    @Override
+    public long getHoldTimeP99() {
+        return holdTimes.getPercentile(99);
+    }
+
+    @Override
+    public long getHoldTimeMax() {
+        return holdTimes.getMax();
+    }
+}
@@ -0,0 +1,23 @@
+package de.uniulm.vs.art.uds;
+
+/**
+ * JMX view of the wait and hold times of one {@link UDSLock}, see {@link UDSLockMetrics}. All durations are in ns.
+ */
+public interface UDSLockMetricsMXBean {
+
+    int getLockID();
+
+    long getAcquisitions();
+
+    double getWaitTimeMean();
+
+    long getWaitTimeP99();
+
+    long getWaitTimeMax();
+
+    double getHoldTimeMean();
+
+    long getHoldTimeP99();
+
+    long getHoldTimeMax();
+}
@@ -0,0 +1,140 @@
+package de.uniulm.vs.art.uds;
+
+import de.optscore.vscale.client.ClientWorker;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Logger;
+
+/**
+ * Runtime metrics of one {@link UDScheduler} partition (see {@link UDSOptions#METRICS}): round durations, primaries
+ * that finished early and sat idle, unused total-order steps and back-pressure in addRequest(). The metrics of the
+ * UDSLocks are kept by the locks themselves, see {@link UDSLockMetrics}.
+ *
+ * The scheduler updates the metrics while holding its lock; they can be read concurrently without locking, e.g. via
+ * JMX (de.uniulm.vs.art.uds:type=UDSMetrics,partition=N) or by EvalServer's stats writers.
+ */
+public final class UDSMetrics implements UDSMetricsMXBean {
+
+    private final UDScheduler uds;
+
+    private final UDSHistogram roundDurations = new UDSHistogram();
+    private final LongAdder idlePrimaries = new LongAdder();
+    private final LongAdder idlePrimaryTime = new LongAdder();
+    private final LongAdder wastedSteps = new LongAdder();
+    private final LongAdder admissionWaits = new LongAdder();
+    private final LongAdder admissionWaitTime = new LongAdder();
+
+    /**
+     * Logging
+     */
+    private static final Logger logger = Logger.getLogger(UDSMetrics.class.getName());
+
+    UDSMetrics(UDScheduler uds) {
+        logger.setLevel(ClientWorker.GLOBAL_LOGGING_LEVEL);
+        this.uds = uds;
+        register(this, "de.uniulm.vs.art.uds:type=UDSMetrics,partition=" + uds.getPartition());
+    }
+
+    /**
+     * Registers a metrics object with the platform MBean server. Failing to do so only disables the JMX view.
+     */
+    static void register(Object mbean, String name) {
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(mbean, new ObjectName(name));
+        } catch(JMException e) {
+            logger.fine("Could not register " + name + " with JMX: " + e.getMessage());
+        }
+    }
+
+    void roundEnded(long duration, int wasted) {
+        roundDurations.record(duration);
+        wastedSteps.add(wasted);
+    }
+
+    void primaryIdled(long idleTime) {
+        idlePrimaries.increment();
+        idlePrimaryTime.add(idleTime);
+    }
+
+    void admissionWaited(long waitTime) {
+        admissionWaits.increment();
+        admissionWaitTime.add(waitTime);
+    }
+
+    public UDSHistogram getRoundDurations() {
+        return roundDurations;
+    }
+
+    @Override
+    public int getPartition() {
+        return uds.getPartition();
+    }
+
+    @Override
+    public int getCurrentRound() {
+        return uds.getCurrentRoundNumber();
+    }
+
+    @Override
+    public long getThreadsScheduled() {
+        return uds.getNumberOfThreadsScheduled();
+    }
+
+    @Override
+    public long getThreadsTerminated() {
+        return uds.getNumberOfThreadsTerminated();
+    }
+
+    @Override
+    public long getRounds() {
+        return roundDurations.getCount();
+    }
+
+    @Override
+    public double getRoundDurationMean() {
+        return roundDurations.getMean();
+    }
+
+    @Override
+    public long getRoundDurationP50() {
+        return roundDurations.getPercentile(50);
+    }
+
+    @Override
+    public long getRoundDurationP99() {
+        return roundDurations.getPercentile(99);
+    }
+
+    @Override
+    public long getRoundDurationMax() {
+        return roundDurations.getMax();
+    }
+
+    @Override
+    public long getIdlePrimaries() {
+        return idlePrimaries.sum();
+    }
+
+    @Override
+    public long getIdlePrimaryTime() {
+        return idlePrimaryTime.sum();
+    }
+
+    @Override
+    public long getWastedSteps() {
+        return wastedSteps.sum();
+    }
+
+    @Override
+    public long getAdmissionWaits() {
+        return admissionWaits.sum();
+    }
+
+    @Override
+    public long getAdmissionWaitTime() {
+        return admissionWaitTime.sum();
+    }
+}
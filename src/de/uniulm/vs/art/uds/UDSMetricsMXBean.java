@@ -0,0 +1,48 @@
+package de.uniulm.vs.art.uds;
+
+/**
+ * JMX view of the runtime metrics of one {@link UDScheduler} partition, see {@link UDSMetrics}.
+ * All durations are in ns.
+ */
+public interface UDSMetricsMXBean {
+
+    int getPartition();
+
+    int getCurrentRound();
+
+    long getThreadsScheduled();
+
+    long getThreadsTerminated();
+
+    long getRounds();
+
+    double getRoundDurationMean();
+
+    long getRoundDurationP50();
+
+    long getRoundDurationP99();
+
+    long getRoundDurationMax();
+
+    /**
+     * @return number of primaries that terminated or used up their steps before the end of their round
+     */
+    long getIdlePrimaries();
+
+    /**
+     * @return total time these primaries sat idle until their round ended
+     */
+    long getIdlePrimaryTime();
+
+    /**
+     * @return number of steps of the total orders that were not consumed by any primary
+     */
+    long getWastedSteps();
+
+    /**
+     * @return number of times addRequest() had to wait for admission (back-pressure)
+     */
+    long getAdmissionWaits();
+
+    long getAdmissionWaitTime();
+}
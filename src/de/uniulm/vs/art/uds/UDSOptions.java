@@ -0,0 +1,169 @@
+package de.uniulm.vs.art.uds;
+
+/**
+ * Start-up options of UDS. They are read once from system properties, so that the same build of a replica can be
+ * started with different UDS variants for benchmarking, e.g. {@code java -Duds.scheduler=lockfree ... EvalServer}.
+ */
+public final class UDSOptions {
+
+    /**
+     * Which deterministic scheduler to use. "classic" selects {@link UDScheduler} (default), "lockfree" selects
+     * {@link LockFreeUDScheduler}, "mat" selects {@link MATScheduler}.
+     */
+    public static final String SCHEDULER = System.getProperty("uds.scheduler", "classic");
+
+    /**
+     * True if the CAS-based scheduler core should be used instead of the classic one
+     */
+    public static final boolean LOCK_FREE_SCHEDULER = "lockfree".equalsIgnoreCase(SCHEDULER);
+
+    /**
+     * True if the MAT-style scheduler (one active thread at a time) should be used instead of UDS
+     */
+    public static final boolean MAT_SCHEDULER = "mat".equalsIgnoreCase(SCHEDULER);
+
+    /**
+     * True if the classic UDS scheduler is used. Partitions, lock sets, sequential execution and the UDS metrics are
+     * only supported by the classic scheduler.
+     */
+    public static final boolean CLASSIC_SCHEDULER = !LOCK_FREE_SCHEDULER && !MAT_SCHEDULER;
+
+    /**
+     * How {@link UDScheduler} executes UDS threads. "cached" (default) runs every UDS thread as a new task on a
+     * cached thread pool, "pooled" runs them on a fixed set of pre-started worker threads and recycles UDSThread
+     * objects once they have been pruned from the thread list, "virtual" runs every UDS thread on its own JDK
+     * virtual thread (Java 21+, falls back to "cached" on older JVMs).
+     */
+    public static final String EXECUTION_MODE = System.getProperty("uds.executionMode", "cached");
+
+    /**
+     * True if UDS threads should be executed by pre-started, long-lived workers
+     */
+    public static final boolean POOLED_EXECUTION = "pooled".equalsIgnoreCase(EXECUTION_MODE);
+
+    /**
+     * Initial number of workers in pooled execution mode. The pool grows automatically if the admission window
+     * (which depends on the number of primaries) becomes larger than the pool.
+     */
+    public static final int POOL_SIZE = Integer.getInteger("uds.poolSize", 128);
+
+    /**
+     * True if the workers executing UDS threads should be pinned to the online CPU cores, see {@link UDSAffinity}.
+     * Only applies to the "cached" and "pooled" execution modes of {@link UDScheduler}.
+     */
+    public static final boolean AFFINITY = Boolean.getBoolean("uds.affinity");
+
+    /**
+     * True if UDS threads should be executed on virtual threads and the JVM supports them
+     */
+    public static final boolean VIRTUAL_EXECUTION = "virtual".equalsIgnoreCase(EXECUTION_MODE)
+            && VirtualThreads.isSupported();
+
+    /**
+     * Number of threads that may be pending in UDS in addition to twice the number of primaries before addRequest()
+     * blocks the delivery thread. Parked virtual threads are cheap, so the default window is a lot larger for them.
+     */
+    public static final int ADMISSION_SLACK = Integer.getInteger("uds.admissionSlack", VIRTUAL_EXECUTION ? 4096 : 50);
+
+    /**
+     * True if {@link UDScheduler} should adapt the number of primaries between rounds by itself, see
+     * {@link UDSAdaptationPolicy}. Meant for replicas without a ByTI-based autoscaler; explicitly requested
+     * reconfigurations are still applied and the policy continues from there.
+     */
+    public static final boolean ADAPTIVE_PRIMARIES = Boolean.getBoolean("uds.adaptive");
+
+    /**
+     * Lower and upper bound for the number of primaries chosen by the adaptation policy
+     */
+    public static final int ADAPTIVE_MIN_PRIMARIES = Integer.getInteger("uds.adaptiveMinPrimaries", 1);
+    public static final int ADAPTIVE_MAX_PRIMARIES = Integer.getInteger("uds.adaptiveMaxPrimaries", 16);
+
+    /**
+     * Number of rounds the adaptation policy evaluates together before deciding on a change
+     */
+    public static final int ADAPTIVE_WINDOW = Integer.getInteger("uds.adaptiveWindow", 16);
+
+    /**
+     * Number of consecutive windows that have to agree before the adaptation policy changes the number of primaries
+     */
+    public static final int ADAPTIVE_HYSTERESIS = Integer.getInteger("uds.adaptiveHysteresis", 2);
+
+    /**
+     * True if {@link UDScheduler} should prefer primaries whose declared lock sets do not overlap (see
+     * {@link UDScheduler#addRequest(Runnable, Runnable, int[])}). A thread that conflicts with the primaries chosen
+     * before it is passed over, at most for as many threads per round as there are primaries.
+     */
+    public static final boolean CONFLICT_AWARE_PRIMARIES = Boolean.getBoolean("uds.conflictAware");
+
+    /**
+     * Number of rounds in a row a thread may be passed over because of conflicting locks before it is chosen as
+     * primary regardless of conflicts
+     */
+    public static final int CONFLICT_STARVATION_BOUND = Integer.getInteger("uds.conflictStarvationBound", 2);
+
+    /**
+     * Number of independent UDS partitions, each with its own scheduler, rounds and total order, see
+     * {@link UDSPartitions}. Default is a single partition.
+     */
+    public static final int PARTITIONS = Integer.getInteger("uds.partitions", 1);
+
+    /**
+     * True if requests that declare that they never take a UDS lock should bypass UDS rounds and be executed by
+     * {@link UDSFastPath} instead
+     */
+    public static final boolean FAST_PATH = Boolean.getBoolean("uds.fastPath");
+
+    /**
+     * True if rounds of {@link UDScheduler} may overlap with the lock-free remainder of requests: EvalServer detaches
+     * a request's UDS thread from its round after the request's last lock action, see
+     * {@link UDScheduler#detachCurrentThread()}
+     */
+    public static final boolean PIPELINED_ROUNDS = Boolean.getBoolean("uds.pipelinedRounds");
+
+    /**
+     * Number of workers of {@link UDSFastPath}. Default is the number of available processors.
+     */
+    public static final int FAST_PATH_POOL_SIZE = Integer.getInteger("uds.fastPathPoolSize",
+            Runtime.getRuntime().availableProcessors());
+
+    /**
+     * File to record the schedule of UDScheduler to, see {@link UDSTraceRecorder}. Partitions other than 0 append
+     * their index to the file name. Tracing is disabled if not set.
+     */
+    public static final String TRACE = System.getProperty("uds.trace");
+
+    /**
+     * Number of trace records buffered in memory before they are written to the trace file
+     */
+    public static final int TRACE_BUFFER_RECORDS = Integer.getInteger("uds.traceBufferRecords", 65536);
+
+    /**
+     * True if UDScheduler and UDSLock should collect runtime metrics (see {@link UDSMetrics} and
+     * {@link UDSLockMetrics}), exported via JMX and periodically written by EvalServer
+     */
+    public static final boolean METRICS = Boolean.getBoolean("uds.metrics");
+
+    /**
+     * Interval in ms in which EvalServer writes the UDS metrics to its stats files
+     */
+    public static final int METRICS_INTERVAL = Integer.getInteger("uds.metricsInterval", 1000);
+
+    /**
+     * How UDS threads wait for hand-offs from other UDS threads, see {@link UDSWaitStrategy#parse(String)}: "park"
+     * (default), "spin" or "spin:&lt;spins&gt;:&lt;yields&gt;". Can be overridden for a single partition with
+     * uds.waitStrategy.&lt;partition&gt;.
+     */
+    public static final String WAIT_STRATEGY = System.getProperty("uds.waitStrategy", "park");
+
+    /**
+     * Busy-wait iterations and yields of the "spin" wait strategy before a waiting UDS thread parks
+     */
+    public static final int SPIN_COUNT = Integer.getInteger("uds.spinCount", 10000);
+    public static final int YIELD_COUNT = Integer.getInteger("uds.yieldCount", 10);
+
+    /**
+     * Not instantiable.
+     */
+    private UDSOptions() {
+    }
+}
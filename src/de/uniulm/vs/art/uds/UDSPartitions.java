@@ -0,0 +1,145 @@
+package de.uniulm.vs.art.uds;
+
+import java.util.function.Consumer;
+
+/**
+ * Access to the UDS partitions of this JVM. Every partition is an independent {@link UDScheduler} with its own
+ * rounds, primaries and total order, so requests working on disjoint state do not have to share one round structure.
+ * The number of partitions is set with {@link UDSOptions#PARTITIONS}; partition 0 is {@link UDScheduler#getInstance()}.
+ *
+ * Requests are routed to a partition by a deterministic key, e.g. the ID of the lock they use, so that every lock is
+ * only ever used by the threads of one partition. A request that has to use the locks of several partitions is added
+ * with {@link #addCrossPartitionRequest(int, int[], Runnable, Runnable)}: it runs alone in one of the partitions, while
+ * all other involved partitions are held at a barrier. The barriers are added in delivery order, so every replica holds
+ * the same threads back, and the request uses the locks of the held partitions without any other thread doing so.
+ */
+public final class UDSPartitions {
+
+    /**
+     * Not instantiable.
+     */
+    private UDSPartitions() {
+    }
+
+    /**
+     * @return the number of UDS partitions
+     */
+    public static int count() {
+        return UDScheduler.getPartitionCount();
+    }
+
+    /**
+     * @param partition index of the partition, between 0 and count() - 1
+     * @return the scheduler of the partition
+     */
+    public static UDScheduler get(int partition) {
+        return UDScheduler.getPartition(partition);
+    }
+
+    /**
+     * Maps a key deterministically to a partition
+     *
+     * @param key e.g. the ID of the lock a request uses; may be negative
+     * @return index of the partition
+     */
+    public static int partitionOf(int key) {
+        return Math.floorMod(key, count());
+    }
+
+    /**
+     * Reconfigures every partition in its own total order. The partition of the calling UDS thread is reconfigured
+     * right away, at the caller's turn; every other partition by a request of its own. During sequential execution,
+     * all partitions are reconfigured by the calling (delivery) thread. Has to be called from within a request.
+     *
+     * @param reconfiguration e.g. {@code uds -> uds.requestReconfigurationPrimaries(4)}
+     */
+    public static void reconfigure(Consumer<UDScheduler> reconfiguration) {
+        UDScheduler.UDSThread current = UDScheduler.getCurrentUDSThread();
+        for(int partition = 0; partition < count(); partition++) {
+            UDScheduler uds = get(partition);
+            if(UDScheduler.isSequentialExecution() || (current != null && current.getScheduler() == uds)) {
+                reconfiguration.accept(uds);
+            } else {
+                uds.addRequest(() -> reconfiguration.accept(uds), () -> {});
+            }
+        }
+    }
+
+    /**
+     * Switches from UDS multithreading to sequential execution: waits until all partitions have run the requests
+     * added so far and are idle at a round boundary (see {@link UDScheduler#drain()}). Afterwards, the delivery thread
+     * may execute requests itself, one after another. UDSLocks, UDSReadWriteLocks and UDSConditions can then be used
+     * by the delivery thread; they do not order anything, since only one request runs at a time. Since the switch
+     * happens at the same position of the delivered requests on every replica, all replicas stay consistent.
+     *
+     * The partitions are drained at the same time, since a cross-partition request may hold one partition at a
+     * barrier until another one has progressed. Must be called by the single thread delivering requests.
+     */
+    public static void enterSequentialExecution() {
+        if(count() == 1) {
+            get(0).drain();
+        } else {
+            Thread[] drains = new Thread[count()];
+            for(int partition = 0; partition < drains.length; partition++) {
+                UDScheduler uds = get(partition);
+                drains[partition] = new Thread(uds::drain, "uds-drain-" + partition);
+                drains[partition].start();
+            }
+            for(Thread drain : drains) {
+                boolean joined = false;
+                while(!joined) {
+                    try {
+                        drain.join();
+                        joined = true;
+                    } catch(InterruptedException e) {
+                        // keep waiting, requests must not be executed before all partitions are idle
+                    }
+                }
+            }
+        }
+        UDScheduler.setSequentialExecution(true);
+    }
+
+    /**
+     * Switches back from sequential execution to UDS multithreading. Requests added afterwards are scheduled by UDS
+     * again, starting with the round the partitions were drained at. Must be called by the single thread delivering
+     * requests, after the last sequentially executed request has completed.
+     */
+    public static void leaveSequentialExecution() {
+        UDScheduler.setSequentialExecution(false);
+    }
+
+    /**
+     * Adds a request that uses the locks of several partitions. The request is added to the host partition as an
+     * exclusive request, and a barrier is added to each of the other partitions. Once all threads added to the
+     * involved partitions before it have terminated, the request runs while these partitions are held, and finally
+     * releases them. Since it runs alone in the host partition, waiting for the barriers cannot keep a round of the
+     * host partition from ending. The request must not wait on a condition.
+     * Blocks(!) like {@link UDScheduler#addRequest(Runnable, Runnable)}.
+     *
+     * Must be called by the single thread delivering requests, like addRequest().
+     *
+     * @param host          index of the partition the request runs in
+     * @param others        indexes of the other partitions the request uses locks of
+     * @param r             Runnable responsible for fulfilling the client request
+     * @param replyRunnable Runnable sending the reply
+     */
+    public static void addCrossPartitionRequest(int host, int[] others, Runnable r, Runnable replyRunnable) {
+        UDScheduler.UDSThread[] barriers = new UDScheduler.UDSThread[others.length];
+        for(int i = 0; i < others.length; i++) {
+            barriers[i] = get(others[i]).addBarrier();
+        }
+        get(host).addExclusiveRequest(() -> {
+            for(int i = 0; i < barriers.length; i++) {
+                get(others[i]).awaitBarrier(barriers[i]);
+            }
+            try {
+                r.run();
+            } finally {
+                for(int i = 0; i < barriers.length; i++) {
+                    get(others[i]).releaseBarrier(barriers[i]);
+                }
+            }
+        }, replyRunnable);
+    }
+}
@@ -0,0 +1,366 @@
+package de.uniulm.vs.art.uds;
+
+import de.optscore.vscale.client.ClientWorker;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Represents a UDS-aware ReadWriteLock. Like {@link UDSLock}, taking either side of this lock obeys the UDS-imposed
+ * total order. Any number of threads may hold the read lock at the same time, so primaries which only read the
+ * guarded state can proceed in the same round.
+ *
+ * Threads which cannot acquire the lock are enqueued in a single FIFO wait queue, in the order in which they
+ * requested the lock (which is the total order). When the lock becomes available, it is granted to the head of the
+ * queue: either to the first writer, or to all readers at the head of the queue. A reader arriving while a writer
+ * waits is enqueued behind it, so writers do not starve and the grant order only depends on the total order.
+ *
+ * While UDS executes requests sequentially (see {@link UDSPartitions#enterSequentialExecution()}), the lock can also
+ * be used by the delivery thread. It then only checks that no side is taken that could never be granted.
+ */
+public class UDSReadWriteLock implements ReadWriteLock, UDSWaitQueue {
+
+    /**
+     * Identifier of this Lock
+     */
+    private final int lockID;
+
+    /**
+     * The thread currently holding the write lock, null if it is not held
+     */
+    private UDScheduler.UDSThread writer = null;
+
+    /**
+     * The threads currently holding the read lock
+     */
+    private final List<UDScheduler.UDSThread> readers = new ArrayList<>();
+
+    /**
+     * Whether a sequentially executed request holds the write lock, and how often it holds the read lock
+     */
+    private boolean sequentialWriter = false;
+    private int sequentialReaders = 0;
+
+    /**
+     * The wait queue for threads which requested either side of this lock but have not yet acquired it.
+     * May get cleared, e.g. at the end of a round.
+     */
+    private final List<UDScheduler.UDSThread> enqueuedThreads = new ArrayList<>();
+
+    /**
+     * For every thread in enqueuedThreads at the same index: true if it waits for the write lock, false if it waits
+     * for the read lock. Kept as a parallel list (of the cached Boolean instances), so enqueueing does not allocate.
+     */
+    private final List<Boolean> enqueuedForWrite = new ArrayList<>();
+
+    private final Lock readLock = new ReadLock();
+
+    private final Lock writeLock = new WriteLock();
+
+    /**
+     * Logging
+     */
+    private static final Logger logger = Logger.getLogger(UDSReadWriteLock.class.getName());
+
+    /**
+     * Creates a basic UDSReadWriteLock
+     */
+    public UDSReadWriteLock() {
+        this(0);
+    }
+
+    public UDSReadWriteLock(int id) {
+        logger.setLevel(ClientWorker.GLOBAL_LOGGING_LEVEL);
+        this.lockID = id;
+    }
+
+    @Override
+    public Lock readLock() {
+        return readLock;
+    }
+
+    @Override
+    public Lock writeLock() {
+        return writeLock;
+    }
+
+    /**
+     * Obeys total order before granting a thread either side of the lock.
+     * Can only be called when holding the scheduler lock.
+     *
+     * @param write true for the write lock, false for the read lock
+     */
+    private void acquire(boolean write) {
+        UDScheduler uds = UDScheduler.getCurrentScheduler();
+        UDScheduler.UDSThread t = UDScheduler.getCurrentUDSThread();
+        String prefix = "";
+        if(logger.isLoggable(Level.FINE)) {
+            prefix = t.getIdString() + " UDSReadWriteLock." + (write ? "writeLock" : "readLock") + "().lock(): ";
+        }
+        while(true) {
+            if(logger.isLoggable(Level.FINE)) {
+                logger.fine(prefix + "locking RWL" + this.lockID);
+            }
+
+            // obey total order. Thread might get parked in UDScheduler conditions, but will eventually continue here..
+            uds.waitForTurn();
+
+            if(enqueuedThreads.isEmpty() && isAvailable(write)) {
+                // take the lock
+                if(logger.isLoggable(Level.FINER)) {
+                    logger.finer(prefix + "took lock RWL" + this.lockID);
+                }
+                grant(t, write);
+                uds.setProgress(true);
+                return;
+            }
+
+            // If the lock is occupied or other threads wait for it, enqueue current thread and let it wait
+            if(logger.isLoggable(Level.FINE)) {
+                logger.fine(prefix + "enqueues itself at lock RWL" + this.lockID);
+            }
+            enqueuedThreads.add(t);
+            enqueuedForWrite.add(write);
+            t.setEnqueued(this);
+            uds.trace(UDSTraceRecorder.LOCK_ENQUEUE, t, this.lockID);
+            uds.setProgress(true);
+
+            // check if round is over, else continue by waiting until the lock is granted to the thread
+            uds.checkForEndOfRound();
+            while(!holds(t, write) && t.getEnqueued() != null) {
+                t.awaitDequeueing();
+            }
+            if(holds(t, write)) {
+                return;
+            }
+
+            // dequeued at the end of the round without getting the lock: repeat (see UDS v1.2.1 spec line 28)
+            if(logger.isLoggable(Level.FINER)) {
+                logger.finer(prefix + "was dequeued from RWL" + this.lockID + " at the end of a round. Trying again");
+            }
+        }
+    }
+
+    /**
+     * Releases either side of the lock and grants it to enqueued threads if possible.
+     * Can only be called when holding the scheduler lock.
+     *
+     * @param write true for the write lock, false for the read lock
+     */
+    private void release(boolean write) {
+        UDScheduler.UDSThread t = UDScheduler.getCurrentUDSThread();
+        if(logger.isLoggable(Level.FINE)) {
+            logger.fine(t.getIdString() + " UDSReadWriteLock.unlock(): is going to release " +
+                    (write ? "write" : "read") + " lock of RWL" + this.lockID);
+        }
+
+        if(write ? writer != t : !readers.remove(t)) {
+            // a thread not currently holding this side of the lock tried to unlock it
+            throw new IllegalMonitorStateException(t.getIdString() + " UDSReadWriteLock.unlock(): tried to " +
+                    "release RWL" + this.lockID + " even though it wasn't holding it");
+        }
+        if(write) {
+            writer = null;
+        }
+
+        grantToHead();
+    }
+
+    /**
+     * Takes either side of the lock for a sequentially executed request. Only one request runs at a time, so a side
+     * that is not available could never become available again.
+     *
+     * @param write true for the write lock, false for the read lock
+     */
+    private void acquireSequentially(boolean write) {
+        UDScheduler.checkSequentialExecution("UDSReadWriteLock.lock()");
+        if(writer != null || sequentialWriter || write && (!readers.isEmpty() || sequentialReaders > 0)) {
+            throw new IllegalMonitorStateException("{" + Thread.currentThread().getName() + "} " +
+                    "UDSReadWriteLock.lock(): the " + (write ? "write" : "read") + " lock of RWL" + this.lockID +
+                    " could never be acquired, since the lock is already held");
+        }
+        if(write) {
+            sequentialWriter = true;
+        } else {
+            sequentialReaders++;
+        }
+    }
+
+    /**
+     * Releases either side of the lock held by a sequentially executed request
+     *
+     * @param write true for the write lock, false for the read lock
+     */
+    private void releaseSequentially(boolean write) {
+        UDScheduler.checkSequentialExecution("UDSReadWriteLock.unlock()");
+        if(write ? !sequentialWriter : sequentialReaders == 0) {
+            throw new IllegalMonitorStateException("{" + Thread.currentThread().getName() + "} " +
+                    "UDSReadWriteLock.unlock(): tried to release RWL" + this.lockID + " even though it wasn't " +
+                    "holding it");
+        }
+        if(write) {
+            sequentialWriter = false;
+        } else {
+            sequentialReaders--;
+        }
+    }
+
+    /**
+     * Grants the lock to the first writer or the leading readers in the wait queue, as far as the current holders
+     * of the lock allow it.
+     */
+    private void grantToHead() {
+        while(!enqueuedThreads.isEmpty()) {
+            UDScheduler.UDSThread next = enqueuedThreads.get(0);
+            boolean write = enqueuedForWrite.get(0);
+            if(!isAvailable(write)) {
+                return;
+            }
+            if(logger.isLoggable(Level.FINE)) {
+                logger.fine(next.getIdString() + " was granted " + (write ? "write" : "read") +
+                        " lock of RWL" + this.lockID);
+            }
+            grant(next, write);
+
+            // signal the thread that it can run again; this also removes it from the wait queue
+            next.dequeueThread();
+            if(write) {
+                return;
+            }
+        }
+    }
+
+    private boolean isAvailable(boolean write) {
+        return writer == null && (!write || readers.isEmpty());
+    }
+
+    private void grant(UDScheduler.UDSThread t, boolean write) {
+        if(write) {
+            writer = t;
+        } else {
+            readers.add(t);
+        }
+        UDScheduler.getCurrentScheduler().trace(UDSTraceRecorder.LOCK_GRANT, t, this.lockID);
+    }
+
+    private boolean holds(UDScheduler.UDSThread t, boolean write) {
+        return write ? writer == t : readers.contains(t);
+    }
+
+    /**
+     * Remove a thread from the queue of this lock
+     * @param t The thread to be removed
+     */
+    @Override
+    public void removeFromQueue(UDScheduler.UDSThread t) {
+        for(int i = enqueuedThreads.size() - 1; i >= 0; i--) {
+            if(enqueuedThreads.get(i) == t) {
+                enqueuedThreads.remove(i);
+                enqueuedForWrite.remove(i);
+            }
+        }
+    }
+
+    /**
+     * One side of the UDSReadWriteLock
+     */
+    private abstract class SideLock implements Lock {
+
+        private final boolean write;
+
+        private SideLock(boolean write) {
+            this.write = write;
+        }
+
+        /**
+         * Obeys total order before granting a thread this side of the lock
+         */
+        @Override
+        public void lock() {
+            UDScheduler.UDSThread t = UDScheduler.getCurrentUDSThread();
+            if(t == null) {
+                acquireSequentially(write);
+                return;
+            }
+            UDScheduler uds = t.getScheduler();
+            uds.getSchedulerLock().lock();
+            try {
+                acquire(write);
+            } finally {
+                uds.getSchedulerLock().unlock();
+            }
+        }
+
+        /**
+         * Unlocks this side of the lock and wakes up enqueued threads if applicable
+         */
+        @Override
+        public void unlock() {
+            UDScheduler.UDSThread t = UDScheduler.getCurrentUDSThread();
+            if(t == null) {
+                releaseSequentially(write);
+                return;
+            }
+            UDScheduler uds = t.getScheduler();
+            uds.getSchedulerLock().lock();
+            try {
+                release(write);
+            } finally {
+                uds.getSchedulerLock().unlock();
+            }
+        }
+
+        /**
+         * Not implemented for UDSReadWriteLock. Do not use.
+         * Use lock() instead.
+         */
+        @Override
+        public void lockInterruptibly() throws InterruptedException {
+            throw new NoSuchMethodError();
+        }
+
+        /**
+         * Not implemented for UDSReadWriteLock. Do not use.
+         * Use lock() instead.
+         */
+        @Override
+        public boolean tryLock() {
+            throw new NoSuchMethodError();
+        }
+
+        /**
+         * Not implemented for UDSReadWriteLock. Do not use.
+         * Use lock() instead.
+         */
+        @Override
+        public boolean tryLock(long time, TimeUnit unit) throws InterruptedException {
+            throw new NoSuchMethodError();
+        }
+
+        /**
+         * Not implemented for UDSReadWriteLock. Do not use.
+         */
+        @Override
+        public Condition newCondition() {
+            throw new NoSuchMethodError();
+        }
+    }
+
+    private final class ReadLock extends SideLock {
+        private ReadLock() {
+            super(false);
+        }
+    }
+
+    private final class WriteLock extends SideLock {
+        private WriteLock() {
+            super(true);
+        }
+    }
+}
@@ -0,0 +1,91 @@
+package de.uniulm.vs.art.uds;
+
+import java.util.function.Supplier;
+
+/**
+ * A task forked by a UDS thread with {@link UDScheduler#fork(Supplier)}, executed by a child UDS thread in parallel to
+ * its parent. The parent collects the result with {@link #join()}.
+ *
+ * A child terminating in some round is only seen as done by its parent from the next round on, since the point in
+ * time at which it terminates within its round differs between replicas.
+ *
+ * @param <T> type of the result
+ */
+public final class UDSTask<T> {
+
+    /**
+     * The UDS thread that forked this task, null if the task has been executed right away by a thread which is not a
+     * UDS thread
+     */
+    private final UDScheduler.UDSThread parent;
+
+    private Supplier<T> supplier;
+
+    private T result;
+
+    private Throwable failure;
+
+    /**
+     * True once the child has terminated, and the round in which it did. Guarded by the scheduler lock.
+     */
+    private boolean done;
+    private int doneInRound;
+
+    UDSTask(UDScheduler.UDSThread parent, Supplier<T> supplier) {
+        this.parent = parent;
+        this.supplier = supplier;
+    }
+
+    UDScheduler.UDSThread getParent() {
+        return parent;
+    }
+
+    /**
+     * Executes the task, keeping the result or the failure for join()
+     */
+    void run() {
+        Supplier<T> s = supplier;
+        supplier = null;
+        try {
+            result = s.get();
+        } catch(RuntimeException | Error e) {
+            failure = e;
+        }
+    }
+
+    boolean isDone() {
+        return done;
+    }
+
+    int getDoneInRound() {
+        return doneInRound;
+    }
+
+    /**
+     * Marks the task as done. Can only be called when holding the scheduler lock.
+     */
+    void setDone(int round) {
+        this.done = true;
+        this.doneInRound = round;
+    }
+
+    /**
+     * Waits until the child executing this task has terminated, see {@link UDScheduler#fork(Supplier)}. Can only be
+     * called by the thread that forked the task.
+     *
+     * @return the result of the task
+     * @throws RuntimeException or Error thrown by the task
+     */
+    public T join() {
+        if(parent != null) {
+            parent.getScheduler().join(this);
+        }
+        if(failure instanceof RuntimeException) {
+            throw (RuntimeException) failure;
+        }
+        if(failure instanceof Error) {
+            throw (Error) failure;
+        }
+        return result;
+    }
+}
@@ -5,6 +5,7 @@ import de.optscore.vscale.client.ClientWorker;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.concurrent.*;
+import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -19,6 +20,11 @@ public class UDSTester {
     private final int udsSteps;
     private final boolean withUDS;
     private final int calculationTimeInNanoSeconds;
+    /**
+     * True for the LU_x_LU request profile (lock/unlock before and after the load), false for the pure calculation
+     * profile (Cx)
+     */
+    private final boolean withLocks;
 
     private final ExecutorService endTestCheckerPool = Executors.newFixedThreadPool(1);
 
@@ -26,6 +32,12 @@ public class UDSTester {
 
     public UDSTester(int numberOfThreadsToCreate, int calculationTimeInNanoSeconds, int udsPrimaries, int udsSteps,
                      boolean withUDS) {
+        this(numberOfThreadsToCreate, calculationTimeInNanoSeconds, udsPrimaries, udsSteps, withUDS, true);
+    }
+
+    public UDSTester(int numberOfThreadsToCreate, int calculationTimeInNanoSeconds, int udsPrimaries, int udsSteps,
+                     boolean withUDS, boolean withLocks) {
+        this.withLocks = withLocks;
         this.numberOfThreadsToCreate = numberOfThreadsToCreate;
         this.calculationTimeInNanoSeconds = calculationTimeInNanoSeconds;
         this.udsPrimaries = udsPrimaries;
@@ -39,8 +51,9 @@ public class UDSTester {
         Callable<Double> testDoneRunnable = () -> {
             long start = System.currentTimeMillis();
             if(withUDS) {
-                long numberOfThreadsSubmittedBeforeTest = UDScheduler.getInstance().getNumberOfThreadsScheduled();
-                while(UDScheduler.getInstance().getNumberOfThreadsTerminated() < numberOfThreadsSubmittedBeforeTest + numberOfThreadsToCreate - udsPrimaries) {
+                DeterministicScheduler uds = DeterministicSchedulers.getInstance();
+                long numberOfThreadsSubmittedBeforeTest = uds.getNumberOfThreadsScheduled();
+                while(uds.getNumberOfThreadsTerminated() < numberOfThreadsSubmittedBeforeTest + numberOfThreadsToCreate - udsPrimaries) {
                     try {
                         Thread.sleep(50);
                     } catch(InterruptedException e) {
@@ -75,34 +88,41 @@ public class UDSTester {
         }
 
         if(withUDS) {
-            UDSLock udsLock  = new UDSLock(1);
+            // the same request profile for every deterministic scheduler, so that they can be compared
+            DeterministicScheduler uds = DeterministicSchedulers.getInstance();
+            Lock udsLock = uds.newLock(1);
             Runnable lu250LURunnableUDS = () -> {
-                // lock and unlock the UDSLock
-                udsLock.lock();
-                udsLock.unlock();
+                if(withLocks) {
+                    // lock and unlock the deterministic lock
+                    udsLock.lock();
+                    udsLock.unlock();
+                }
                 // simulate load
                 simulateCPULoadNanos(calculationTimeInNanoSeconds);
-                // lock and unlock the UDSLock again
-                udsLock.lock();
-                udsLock.unlock();
+                if(withLocks) {
+                    // lock and unlock the deterministic lock again
+                    udsLock.lock();
+                    udsLock.unlock();
+                }
             };
 
-            // reconfigure UDS
-            UDScheduler.getInstance().addRequest(() -> UDScheduler.getInstance().requestReconfiguration(udsPrimaries,
-                    udsSteps), () -> {});
+            // reconfigure the scheduler
+            uds.addRequest(() -> uds.requestReconfiguration(udsPrimaries, udsSteps), () -> {});
 
-            // create and run threads with UDS
+            // create and run threads with the scheduler
             logger.warning("Tester {" + Thread.currentThread().getName() + "}: " +
-                    "Adding " + numberOfThreadsToCreate + " threads to UDS ...");
+                    "Adding " + numberOfThreadsToCreate + " threads to " + UDSOptions.SCHEDULER + " scheduler ...");
             for(int j = 0; j < numberOfThreadsToCreate; j++) {
-                UDScheduler.getInstance().addRequest(lu250LURunnableUDS, () -> {});
+                uds.addRequest(lu250LURunnableUDS, () -> {});
             }
         } else {
             ReentrantLock reentrantLock  = new ReentrantLock();
             Runnable lu250LURunnable = () -> {
-                // lock and unlock the UDSLock
-                reentrantLock.lock();
-                reentrantLock.unlock();
+                if(withLocks) {
+                    // lock and unlock the UDSLock
+                    reentrantLock.lock();
+                    reentrantLock.unlock();
+                }
                 // simulate load
                 simulateCPULoadNanos(calculationTimeInNanoSeconds);
                 // lock and unlock the UDSLock again
@@ -150,9 +170,12 @@ public class UDSTester {
 
     public static void main(String[] args) {
 
-        if(args.length < 3) {
-            System.out.println("Please supply numberOfThreadsToCreate, calculationTimeNs, Steps, and withUDS." +
-                    " Example usage: $ UDSTester 100000 250000 2 true");
+        if(args.length < 4) {
+            System.out.println("Please supply numberOfThreadsToCreate, calculationTimeNs, Steps, withUDS and " +
+                    "optionally the request profile (LU: lock/unlock around the load (default), C: load only)." +
+                    " Example usage: $ UDSTester 100000 250000 2 true C");
+            System.out.println("The UDS execution mode is selected via system properties, e.g. " +
+                    "-Duds.executionMode=virtual (see UDSOptions).");
             System.exit(1);
         }
 
@@ -160,13 +183,19 @@ public class UDSTester {
         int calculationTimeNs = Integer.parseInt(args[1]);
         int udsSteps = Integer.parseInt(args[2]);
         boolean withUDS = Boolean.parseBoolean(args[3]);
+        boolean withLocks = args.length < 5 || !"C".equalsIgnoreCase(args[4]);
+        logger.warning("Request profile: " + (withLocks ? "LU_" + calculationTimeNs + "_LU" : "C" + calculationTimeNs) +
+                ", scheduler: " + UDSOptions.SCHEDULER + ", execution mode: " + UDSOptions.EXECUTION_MODE +
+                (UDSOptions.VIRTUAL_EXECUTION ? " (virtual threads)" : "") + ", admission slack: " +
+                UDSOptions.ADMISSION_SLACK);
 
         Map<Integer, Double> results = new HashMap<>();
         if(withUDS) {
             // test for all of these UDS-primaries configurations
             int[] udsPrimaries = new int[]{1, 2, 3, 4, 5, 6, 7, 8, 10, 12, 14, 16, 20};
             for(int n : udsPrimaries) {
-                UDSTester tester = new UDSTester(numberOfThreadsToCreate, calculationTimeNs, n, udsSteps, true);
+                UDSTester tester = new UDSTester(numberOfThreadsToCreate, calculationTimeNs, n, udsSteps, true,
+                        withLocks);
                 results.put(n, tester.runTest());
 
                 try {
@@ -177,7 +206,8 @@ public class UDSTester {
             }
         } else {
             for(int i = 0; i < 3; i++) {
-                UDSTester tester = new UDSTester(numberOfThreadsToCreate, calculationTimeNs, 1, 1, false);
+                UDSTester tester = new UDSTester(numberOfThreadsToCreate, calculationTimeNs, 1, 1, false,
+                        withLocks);
                 results.put(i, tester.runTest());
             }
         }
@@ -0,0 +1,182 @@
+package de.uniulm.vs.art.uds;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Offline analysis of UDS traces written by {@link UDSTraceRecorder}. Replays the recorded events of every trace file
+ * to reconstruct the timeline of the rounds (start, duration, primaries, steps, lock grants and enqueues) and
+ * computes the idle-primary time: the time primaries spent blocked on a lock or already terminated while their round
+ * was still running.
+ *
+ * Usage: UDSTraceAnalyzer [-v] traceFile...  (-v prints one line per round)
+ */
+public class UDSTraceAnalyzer {
+
+    private final boolean verbose;
+
+    private long rounds;
+    private long primarySlots;
+    private long steps;
+    private long lockGrants;
+    private long lockEnqueues;
+    private long terminations;
+    private long blockedAtEnd;
+    private long roundTimeNanos;
+    private long primaryTimeNanos;
+    private long idlePrimaryNanos;
+
+    /**
+     * State of the round currently being replayed
+     */
+    private int round = -1;
+    private long roundStart;
+    private int roundPrimaries;
+    private long roundSteps;
+    private long roundGrants;
+    private long roundEnqueues;
+    private long roundIdleNanos;
+    private final StringBuilder roundPrimaryIds = new StringBuilder();
+
+    /**
+     * The primaries of the current round which are idle, and since when
+     */
+    private final Map<Integer, Long> idleSince = new HashMap<>();
+
+    public UDSTraceAnalyzer(boolean verbose) {
+        this.verbose = verbose;
+    }
+
+    public static void main(String[] args) throws IOException {
+        boolean verbose = args.length > 0 && "-v".equals(args[0]);
+        int first = verbose ? 1 : 0;
+        if(args.length <= first) {
+            System.err.println("Usage: UDSTraceAnalyzer [-v] traceFile...");
+            System.exit(2);
+        }
+        for(int i = first; i < args.length; i++) {
+            new UDSTraceAnalyzer(verbose).analyze(args[i]);
+        }
+    }
+
+    /**
+     * Replays the records of a trace file and prints the results
+     *
+     * @param file path of the trace file
+     */
+    public void analyze(String file) throws IOException {
+        try(FileChannel channel = FileChannel.open(Paths.get(file), StandardOpenOption.READ)) {
+            MappedByteBuffer trace = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if(trace.remaining() < UDSTraceRecorder.HEADER_SIZE || trace.getInt() != UDSTraceRecorder.MAGIC) {
+                throw new IOException(file + " is not a UDS trace");
+            }
+            int version = trace.getInt();
+            int recordSize = trace.getInt();
+            int partition = trace.getInt();
+            if(version != UDSTraceRecorder.VERSION || recordSize != UDSTraceRecorder.RECORD_SIZE) {
+                throw new IOException(file + " has unsupported trace version " + version + " (record size " +
+                        recordSize + ")");
+            }
+            System.out.println("UDS trace " + file + " (partition " + partition + ", " +
+                    trace.remaining() / recordSize + " records)");
+
+            while(trace.remaining() >= recordSize) {
+                long time = trace.getLong();
+                short type = trace.getShort();
+                trace.getShort();
+                int recordRound = trace.getInt();
+                int thread = trace.getInt();
+                int argument = trace.getInt();
+                replay(time, type, recordRound, thread, argument);
+            }
+        }
+        printSummary();
+    }
+
+    private void replay(long time, short type, int recordRound, int thread, int argument) {
+        switch(type) {
+            case UDSTraceRecorder.ROUND_START:
+                round = recordRound;
+                roundStart = time;
+                roundPrimaries = argument;
+                roundSteps = 0;
+                roundGrants = 0;
+                roundEnqueues = 0;
+                roundIdleNanos = 0;
+                roundPrimaryIds.setLength(0);
+                idleSince.clear();
+                break;
+            case UDSTraceRecorder.PRIMARY:
+                roundPrimaryIds.append(roundPrimaryIds.length() > 0 ? " " : "").append('T').append(thread);
+                break;
+            case UDSTraceRecorder.STEP:
+                roundSteps++;
+                break;
+            case UDSTraceRecorder.LOCK_GRANT:
+                roundGrants++;
+                Long blockedSince = idleSince.remove(thread);
+                if(blockedSince != null) {
+                    roundIdleNanos += time - blockedSince;
+                }
+                break;
+            case UDSTraceRecorder.LOCK_ENQUEUE:
+                roundEnqueues++;
+                idleSince.put(thread, time);
+                break;
+            case UDSTraceRecorder.TERMINATE:
+                terminations++;
+                if(recordRound == round) {
+                    idleSince.put(thread, time);
+                }
+                break;
+            case UDSTraceRecorder.ROUND_END:
+                if(recordRound != round) {
+                    // the start of this round was not recorded, e.g. the trace begins in the middle of it
+                    break;
+                }
+                for(long since : idleSince.values()) {
+                    roundIdleNanos += time - since;
+                }
+                idleSince.clear();
+                long duration = time - roundStart;
+                rounds++;
+                primarySlots += roundPrimaries;
+                steps += roundSteps;
+                lockGrants += roundGrants;
+                lockEnqueues += roundEnqueues;
+                blockedAtEnd += argument;
+                roundTimeNanos += duration;
+                primaryTimeNanos += duration * roundPrimaries;
+                idlePrimaryNanos += roundIdleNanos;
+                if(verbose) {
+                    System.out.println("round " + round + ": " + duration / 1000 + " us, primaries [" +
+                            roundPrimaryIds + "], " + roundSteps + " steps, " + roundGrants + " grants, " +
+                            roundEnqueues + " enqueues, " + argument + " blocked at end, idle " +
+                            roundIdleNanos / 1000 + " us");
+                }
+                break;
+            default:
+                throw new IllegalStateException("Unknown UDS trace event type " + type);
+        }
+    }
+
+    private void printSummary() {
+        if(rounds == 0) {
+            System.out.println("No complete rounds recorded");
+            return;
+        }
+        System.out.println("Rounds: " + rounds + ", avg duration " + roundTimeNanos / rounds / 1000 + " us, avg " +
+                String.format("%.2f", (double) primarySlots / rounds) + " primaries, " +
+                String.format("%.2f", (double) steps / rounds) + " steps per round");
+        System.out.println("Lock grants: " + lockGrants + ", enqueues: " + lockEnqueues + ", primaries blocked at " +
+                "end of round: " + blockedAtEnd + ", terminations: " + terminations);
+        System.out.println("Idle primary time: " + idlePrimaryNanos / 1000 + " us of " + primaryTimeNanos / 1000 +
+                " us primary time (" + String.format("%.1f", 100d * idlePrimaryNanos / Math.max(1, primaryTimeNanos))
+                + "%)");
+    }
+}
@@ -0,0 +1,220 @@
+package de.uniulm.vs.art.uds;
+
+import de.optscore.vscale.client.ClientWorker;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.logging.Logger;
+
+/**
+ * Records what a {@link UDScheduler} partition does into a compact binary trace file (see {@link UDSOptions#TRACE}):
+ * round starts and ends, the primaries of every round, consumed steps, lock grants and enqueues, and terminations.
+ * The trace can be analysed offline with {@link UDSTraceAnalyzer}.
+ *
+ * Records have a fixed size and are written into a preallocated direct buffer. When the buffer is full, it is handed
+ * to a background thread which appends it to the trace file, and recording continues in a second buffer. So
+ * recording itself neither allocates nor does any I/O; it only waits if the trace file cannot be written as fast as
+ * the buffers fill up. All record methods are called while holding the scheduler lock of the partition, so there is
+ * only one writer at a time.
+ *
+ * File layout (big-endian): a header of magic, version, record size and partition (4 ints), followed by records of
+ * time in ns (long), event type (short), unused (short), round (int), thread (int) and argument (int).
+ */
+final class UDSTraceRecorder {
+
+    static final int MAGIC = 0x55445354;
+    static final int VERSION = 1;
+    static final int HEADER_SIZE = 16;
+    static final int RECORD_SIZE = 24;
+
+    /**
+     * Event types. The argument of a record depends on its type.
+     */
+    static final short ROUND_START = 0;     // argument: number of primaries
+    static final short PRIMARY = 1;         // argument: primary slot
+    static final short STEP = 2;            // argument: primary slot
+    static final short LOCK_GRANT = 3;      // argument: lock ID
+    static final short LOCK_ENQUEUE = 4;    // argument: lock ID
+    static final short TERMINATE = 5;       // argument: unused
+    static final short ROUND_END = 6;       // argument: number of primaries still blocked on a lock or condition
+
+    /**
+     * Number of buffers: one being filled while the other one is written
+     */
+    private static final int BUFFERS = 2;
+
+    /**
+     * Handed to the writer to make it stop
+     */
+    private static final ByteBuffer END = ByteBuffer.allocate(0);
+
+    private final FileChannel channel;
+
+    /**
+     * The buffer records are added to
+     */
+    private ByteBuffer buffer;
+
+    /**
+     * Buffers that may be filled, and full buffers to be written by the writer, in order
+     */
+    private final BlockingQueue<ByteBuffer> freeBuffers = new ArrayBlockingQueue<>(BUFFERS);
+    private final BlockingQueue<ByteBuffer> fullBuffers = new ArrayBlockingQueue<>(BUFFERS + 1);
+
+    private final Thread writer;
+
+    /**
+     * Number of times recording had to wait for the writer
+     */
+    private long stalls;
+
+    /**
+     * Set after an I/O error, recording stops afterwards
+     */
+    private volatile boolean failed = false;
+
+    /**
+     * Logging
+     */
+    private static final Logger logger = Logger.getLogger(UDSTraceRecorder.class.getName());
+
+    private UDSTraceRecorder(FileChannel channel, int records, int partition) {
+        logger.setLevel(ClientWorker.GLOBAL_LOGGING_LEVEL);
+        this.channel = channel;
+        for(int i = 0; i < BUFFERS; i++) {
+            freeBuffers.add(ByteBuffer.allocateDirect(Math.max(1, records) * RECORD_SIZE));
+        }
+        this.buffer = freeBuffers.poll();
+        this.buffer.putInt(MAGIC).putInt(VERSION).putInt(RECORD_SIZE).putInt(partition);
+        this.writer = new Thread(this::writeBuffers, "uds-trace-writer-" + partition);
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /**
+     * Opens the trace file of a partition, if tracing is enabled
+     *
+     * @param partition index of the partition
+     * @return the recorder, or null if tracing is disabled or the trace file could not be opened
+     */
+    static UDSTraceRecorder open(int partition) {
+        if(UDSOptions.TRACE == null) {
+            return null;
+        }
+        String file = partition == 0 ? UDSOptions.TRACE : UDSOptions.TRACE + "." + partition;
+        try {
+            FileChannel channel = FileChannel.open(Paths.get(file), StandardOpenOption.CREATE,
+                    StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+            return new UDSTraceRecorder(channel, UDSOptions.TRACE_BUFFER_RECORDS, partition);
+        } catch(IOException e) {
+            logger.warning("Could not open UDS trace file " + file + ", tracing is disabled: " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Appends a record to the trace. Can only be called when holding the scheduler lock.
+     */
+    void record(short type, int round, int thread, int argument) {
+        if(failed) {
+            return;
+        }
+        if(buffer.remaining() < RECORD_SIZE) {
+            handOver();
+        }
+        buffer.putLong(System.nanoTime()).putShort(type).putShort((short) 0).putInt(round).putInt(thread)
+                .putInt(argument);
+    }
+
+    /**
+     * Hands the current buffer to the writer and continues with a free one, waiting for the writer if there is none.
+     * Can only be called when holding the scheduler lock.
+     */
+    private void handOver() {
+        fullBuffers.add(buffer);
+        ByteBuffer next = freeBuffers.poll();
+        if(next == null) {
+            stalls++;
+            boolean interrupted = false;
+            while(next == null) {
+                try {
+                    next = freeBuffers.take();
+                } catch(InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+            if(interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        buffer = next;
+    }
+
+    /**
+     * Run by the writer thread: appends the full buffers to the trace file in the order they have been handed over,
+     * and gives them back for recording
+     */
+    private void writeBuffers() {
+        long filePosition = 0;
+        while(true) {
+            ByteBuffer records;
+            try {
+                records = fullBuffers.take();
+            } catch(InterruptedException e) {
+                continue;
+            }
+            if(records == END) {
+                return;
+            }
+            records.flip();
+            try {
+                while(!failed && records.hasRemaining()) {
+                    filePosition += channel.write(records, filePosition);
+                }
+            } catch(IOException e) {
+                logger.warning("Could not write UDS trace, tracing is disabled: " + e.getMessage());
+                failed = true;
+            }
+            records.clear();
+            freeBuffers.add(records);
+        }
+    }
+
+    /**
+     * Writes all buffered records and closes the trace file. Can only be called when holding the scheduler lock.
+     */
+    void close() {
+        if(!writer.isAlive()) {
+            return;
+        }
+        fullBuffers.add(buffer);
+        fullBuffers.add(END);
+        boolean interrupted = false;
+        while(writer.isAlive()) {
+            try {
+                writer.join();
+            } catch(InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        failed = true;
+        if(stalls > 0) {
+            logger.warning("UDS trace recording waited " + stalls + " time(s) for the trace file to be written, " +
+                    "consider increasing uds.traceBufferRecords");
+        }
+        try {
+            channel.force(true);
+            channel.close();
+        } catch(IOException e) {
+            logger.warning("Could not close UDS trace file: " + e.getMessage());
+        }
+        if(interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,15 @@
+package de.uniulm.vs.art.uds;
+
+/**
+ * A UDS-aware lock with a wait queue in which UDSThreads can be enqueued while waiting for lock acquisition.
+ * UDScheduler removes enqueued threads from their queue at the end of a round.
+ */
+interface UDSWaitQueue {
+
+    /**
+     * Remove a thread from the wait queue. Can only be called when holding the scheduler lock.
+     *
+     * @param t The thread to be removed
+     */
+    void removeFromQueue(UDScheduler.UDSThread t);
+}
@@ -0,0 +1,164 @@
+package de.uniulm.vs.art.uds;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BooleanSupplier;
+
+/**
+ * How UDS threads wait for a hand-off from another UDS thread: becoming primary, their turn in the total order,
+ * being dequeued at a lock, a signal of a UDSCondition or the start of the next round.
+ *
+ * By default ({@link #PARK}), a waiting thread parks on a Condition of the scheduler lock right away, so every
+ * hand-off costs an unpark and a context switch. A spinning strategy first releases the scheduler lock and busy-waits
+ * for the hand-off with {@link Thread#onSpinWait()} for a bounded number of iterations, then yields the CPU for a
+ * bounded number of times, and only parks if the hand-off still has not happened. Spinning shortens hand-offs between
+ * primaries running on different cores, but burns CPU time that is lost to other threads if there are fewer cores
+ * than primaries.
+ *
+ * {@link Thread#onSpinWait()} is called via a method handle, so the code base can still be compiled for and run on
+ * Java 8, where busy-waiting simply runs without the spin-wait hint.
+ *
+ * Set per scheduler with {@link UDScheduler#setWaitStrategy(UDSWaitStrategy)}, or at start-up with
+ * {@link UDSOptions#WAIT_STRATEGY}.
+ */
+public final class UDSWaitStrategy {
+
+    /**
+     * Parks right away, the behaviour of UDS without a wait strategy
+     */
+    public static final UDSWaitStrategy PARK = new UDSWaitStrategy(0, 0);
+
+    /**
+     * Thread.onSpinWait() (Java 9+), or a no-op on older JVMs
+     */
+    private static final MethodHandle ON_SPIN_WAIT = spinWaitHint();
+
+    /**
+     * Number of busy-wait iterations before yielding
+     */
+    private final int spins;
+
+    /**
+     * Number of times to yield before parking
+     */
+    private final int yields;
+
+    /**
+     * @param spins  number of busy-wait iterations before yielding, 0 or more
+     * @param yields number of times to yield before parking, 0 or more
+     */
+    public UDSWaitStrategy(int spins, int yields) {
+        if(spins < 0 || yields < 0) {
+            throw new IllegalArgumentException("Spins and yields of a UDS wait strategy must not be negative, " +
+                    "got " + spins + " spins and " + yields + " yields");
+        }
+        this.spins = spins;
+        this.yields = yields;
+    }
+
+    /**
+     * Parses a wait strategy as given in {@link UDSOptions#WAIT_STRATEGY}: "park", "spin" (using
+     * {@link UDSOptions#SPIN_COUNT} and {@link UDSOptions#YIELD_COUNT}) or "spin:&lt;spins&gt;:&lt;yields&gt;".
+     */
+    public static UDSWaitStrategy parse(String strategy) {
+        if(strategy == null || "park".equalsIgnoreCase(strategy)) {
+            return PARK;
+        }
+        if("spin".equalsIgnoreCase(strategy)) {
+            return new UDSWaitStrategy(UDSOptions.SPIN_COUNT, UDSOptions.YIELD_COUNT);
+        }
+        String[] parts = strategy.split(":");
+        if(parts.length == 3 && "spin".equalsIgnoreCase(parts[0])) {
+            try {
+                return new UDSWaitStrategy(Integer.parseInt(parts[1]), Integer.parseInt(parts[2]));
+            } catch(NumberFormatException e) {
+                // fall through
+            }
+        }
+        throw new IllegalArgumentException("Unknown UDS wait strategy " + strategy + ", expected park, spin or " +
+                "spin:<spins>:<yields>");
+    }
+
+    public int getSpins() {
+        return spins;
+    }
+
+    public int getYields() {
+        return yields;
+    }
+
+    /**
+     * @return true if waiting threads park right away
+     */
+    public boolean isPark() {
+        return spins == 0 && yields == 0;
+    }
+
+    /**
+     * Spin and yield phase of a wait: releases the scheduler lock entirely (it might be held reentrantly), waits until
+     * the hand-off has happened or the spins and yields are used up, and re-acquires the scheduler lock. The caller
+     * still has to re-check its wait predicate and park on its Condition if the hand-off has not happened yet.
+     *
+     * @param schedulerLock the scheduler lock, held by the current thread
+     * @param handedOff     true once the hand-off has happened; read without the scheduler lock, so everything it
+     *                      reads must be volatile
+     */
+    void spin(ReentrantLock schedulerLock, BooleanSupplier handedOff) {
+        if(isPark() || handedOff.getAsBoolean()) {
+            return;
+        }
+        int holds = schedulerLock.getHoldCount();
+        for(int i = 0; i < holds; i++) {
+            schedulerLock.unlock();
+        }
+        try {
+            for(int i = 0; i < spins; i++) {
+                if(handedOff.getAsBoolean()) {
+                    return;
+                }
+                onSpinWait();
+            }
+            for(int i = 0; i < yields; i++) {
+                if(handedOff.getAsBoolean()) {
+                    return;
+                }
+                Thread.yield();
+            }
+        } finally {
+            for(int i = 0; i < holds; i++) {
+                schedulerLock.lock();
+            }
+        }
+    }
+
+    private static void onSpinWait() {
+        try {
+            ON_SPIN_WAIT.invokeExact();
+        } catch(Throwable e) {
+            throw new IllegalStateException("Thread.onSpinWait() failed", e);
+        }
+    }
+
+    private static MethodHandle spinWaitHint() {
+        MethodType voidType = MethodType.methodType(void.class);
+        try {
+            return MethodHandles.lookup().findStatic(Thread.class, "onSpinWait", voidType);
+        } catch(ReflectiveOperationException e) {
+            try {
+                return MethodHandles.lookup().findStatic(UDSWaitStrategy.class, "noSpinWaitHint", voidType);
+            } catch(ReflectiveOperationException impossible) {
+                throw new IllegalStateException(impossible);
+            }
+        }
+    }
+
+    private static void noSpinWaitHint() {
+    }
+
+    @Override
+    public String toString() {
+        return isPark() ? "park" : "spin:" + spins + ":" + yields;
+    }
+}
@@ -3,34 +3,58 @@ package de.uniulm.vs.art.uds;
 import de.optscore.vscale.client.ClientWorker;
 import de.optscore.vscale.util.EvalReqStatsServer;
 
-import java.util.ArrayList;
-import java.util.LinkedList;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.BitSet;
 import java.util.List;
 import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
 import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BooleanSupplier;
+import java.util.function.Supplier;
 import java.util.logging.Level;
 import java.util.logging.Logger;
-import java.util.stream.Collectors;
 
 /**
  * UDS Scheduler implementation as a Singleton.
  */
-public class UDScheduler {
+public class UDScheduler implements DeterministicScheduler {
 
     /**
      * Ordered list of all threads in the application that were or are to be scheduled by UDS
      */
-    private final List<UDSThread> threads;
+    private final ThreadRing threads;
 
     /**
-     * Primary threads in the current round
+     * Primary threads in the current round, indexed by their primary slot (see {@link UDSThread#getPrimarySlot()})
      */
-    private List<UDSThread> primaries;
+    private UDSThread[] primaries;
+
+    /**
+     * Number of primary threads in the current round
+     */
+    private int primaryCount;
+
+    /**
+     * Index of the next step in the total order of the current round
+     */
+    private int totalOrderHead;
+
+    /**
+     * Number of steps each primary slot has left in the total order of the current round. Steps of a slot without
+     * steps left are skipped when looking for the head of the total order.
+     */
+    private int[] stepsLeft;
 
     /**
      * The single devliery thread that waits for admission;
@@ -59,6 +83,21 @@ public class UDScheduler {
      */
     private boolean progress = false;
 
+    /**
+     * The number of primaries that were enqueued at a lock or waiting on a condition at the end of the last round
+     */
+    private int blockedPrimaries;
+
+    /**
+     * IDs of the locks declared by the primaries of the current round (conflict-aware primary selection only)
+     */
+    private final BitSet claimedLocks = new BitSet();
+
+    /**
+     * Policy for adapting the number of primaries between rounds, null if disabled
+     */
+    private final UDSAdaptationPolicy adaptationPolicy;
+
     /**
      * The total number of threads that have been added to UDS since it started scheduling
      */
@@ -69,6 +108,12 @@ public class UDScheduler {
      */
     private long numberOfThreadsTerminated;
 
+    /**
+     * Number of threads that have been detached from the schedule but have not terminated yet, see
+     * {@link #detachCurrentThread()}. They are no longer in the thread list, but still keep a worker busy.
+     */
+    private int detachedThreads;
+
     /**
      * Thread-local variable referring to current UDS thread
      */
@@ -87,9 +132,22 @@ public class UDScheduler {
     private final UDSConfiguration requestedUDSConfiguration = new UDSConfiguration();
 
     /**
-     * Thread pool for request scheduling
+     * Thread pool for request scheduling. Either a cached thread pool or, in pooled execution mode, a fixed pool of
+     * pre-started workers which take UDS threads in the order they were added.
+     */
+    private final ExecutorService udsThreadPool;
+
+    /**
+     * Thread pool for sending replies. Same as udsThreadPool unless in pooled execution mode, where replies must not
+     * queue up behind UDS threads waiting for a worker.
      */
-    private final ExecutorService udsThreadPool = Executors.newCachedThreadPool();
+    private final ExecutorService replyThreadPool;
+
+    /**
+     * UDSThreads which have been pruned from the thread list and can be reused for new requests (pooled execution
+     * mode only). Guarded by schedulerLock.
+     */
+    private final ArrayDeque<UDSThread> recycledThreads = new ArrayDeque<>();
 
     /**
      * Use ReentrantLock so we have access
@@ -103,6 +161,55 @@ public class UDScheduler {
      */
     private final Condition isFinished = schedulerLock.newCondition();
     private final Condition threadExists = schedulerLock.newCondition();
+    private final Condition barrierChanged = schedulerLock.newCondition();
+    private final Condition drainProgress = schedulerLock.newCondition();
+
+    /**
+     * True while startRound() waits for new threads, and while drain() waits for this partition to become idle
+     */
+    private boolean waitingForThreads;
+    private boolean draining;
+
+    /**
+     * True while requests are executed sequentially by the delivery thread instead of by UDS threads, see
+     * {@link UDSPartitions#enterSequentialExecution()}
+     */
+    private static volatile boolean sequentialExecution;
+
+    /**
+     * Switch between UDS and sequential execution requested from within a request, null if none, see
+     * {@link #takeRequestedSequentialExecution()}
+     */
+    private static final AtomicReference<Boolean> requestedSequentialExecution = new AtomicReference<>();
+
+    /**
+     * Index of this scheduler among the UDS partitions of this JVM, see {@link UDSPartitions}
+     */
+    private final int partition;
+
+    /**
+     * The number of primaries of the current round. Equals the configured number of primaries unless the round was
+     * cut short by a barrier.
+     */
+    private int roundPrimaries;
+
+    /**
+     * Records the schedule of this partition, null if tracing is disabled (see {@link UDSOptions#TRACE})
+     */
+    private final UDSTraceRecorder trace;
+
+    /**
+     * Runtime metrics of this partition, null if disabled (see {@link UDSOptions#METRICS}), and the state needed to
+     * compute them for the current round
+     */
+    private final UDSMetrics metrics;
+    private long roundStartedAt;
+    private int stepsConsumed;
+
+    /**
+     * How UDS threads of this partition wait for hand-offs, see {@link UDSWaitStrategy}
+     */
+    private volatile UDSWaitStrategy waitStrategy;
 
     /**
      * Logging
@@ -110,45 +217,168 @@ public class UDScheduler {
     private static final Logger logger = Logger.getLogger(UDScheduler.class.getName());
 
     /**
-     * Singleton. Not instantiable.
+     * Singleton (one instance per partition). Not instantiable.
      */
-    private UDScheduler() {
+    private UDScheduler(int partition) {
         logger.setLevel(ClientWorker.GLOBAL_LOGGING_LEVEL);
 
-        this.threads = new LinkedList<>();
-        this.primaries = new ArrayList<>(64);
+        this.partition = partition;
+        this.metrics = UDSOptions.METRICS ? new UDSMetrics(this) : null;
+        this.threads = new ThreadRing(128);
+        this.primaries = new UDSThread[64];
+        this.primaryCount = 0;
+        this.stepsLeft = new int[64];
         this.admissionThread = null;
         this.round = 0;
         this.numberOfThreadsScheduled = 0;
         this.numberOfThreadsTerminated = 0;
+        this.adaptationPolicy = UDSOptions.ADAPTIVE_PRIMARIES ? new UDSAdaptationPolicy(
+                UDSOptions.ADAPTIVE_MIN_PRIMARIES, UDSOptions.ADAPTIVE_MAX_PRIMARIES, UDSOptions.ADAPTIVE_WINDOW,
+                UDSOptions.ADAPTIVE_HYSTERESIS) : null;
+        this.waitStrategy = UDSWaitStrategy.parse(System.getProperty("uds.waitStrategy." + partition,
+                UDSOptions.WAIT_STRATEGY));
+        this.trace = UDSTraceRecorder.open(partition);
+        if(trace != null) {
+            Runtime.getRuntime().addShutdownHook(new Thread(this::closeTrace, "uds-trace-" + partition));
+        }
+
+        if(UDSOptions.POOLED_EXECUTION) {
+            AtomicInteger workerNo = new AtomicInteger(0);
+            ThreadPoolExecutor workers = new ThreadPoolExecutor(UDSOptions.POOL_SIZE, UDSOptions.POOL_SIZE,
+                    60, TimeUnit.SECONDS, new LinkedBlockingQueue<>(),
+                    r -> new Thread(UDSOptions.AFFINITY ? UDSAffinity.pinned(r) : r, "uds-worker-" +
+                            (partition > 0 ? partition + "-" : "") + workerNo.getAndIncrement()));
+            // pre-warm all workers so no thread creation happens while scheduling
+            workers.prestartAllCoreThreads();
+            this.udsThreadPool = workers;
+            this.replyThreadPool = Executors.newCachedThreadPool();
+        } else if(UDSOptions.VIRTUAL_EXECUTION) {
+            // UDS threads only ever block on Conditions of schedulerLock, which do not pin their carrier thread
+            this.udsThreadPool = VirtualThreads.newVirtualThreadPerTaskExecutor();
+            this.replyThreadPool = udsThreadPool;
+            if(UDSOptions.AFFINITY) {
+                logger.warning("The carrier threads of virtual UDS threads cannot be pinned to cores, ignoring " +
+                        "uds.affinity");
+            }
+        } else {
+            if("virtual".equalsIgnoreCase(UDSOptions.EXECUTION_MODE)) {
+                logger.warning("Virtual threads are not supported by this JVM (Java 21+ required). Falling back to " +
+                        "a cached thread pool.");
+            }
+            this.udsThreadPool = UDSOptions.AFFINITY ?
+                    Executors.newCachedThreadPool(r -> new Thread(UDSAffinity.pinned(r))) :
+                    Executors.newCachedThreadPool();
+            this.replyThreadPool = udsThreadPool;
+        }
 
         // set initial configuration 1 prim 1 step
         // set new number of primaries
         this.requestedUDSConfiguration.setN(1);
 
-        int[] test = new int[]{1, 2};
-
         // create and set new total order
-        List<Integer> newTotalOrder = new ArrayList<Integer>(1);
-        newTotalOrder.add(0);
-        this.requestedUDSConfiguration.setTotalOrder(newTotalOrder);
+        this.requestedUDSConfiguration.setTotalOrder(new int[]{0});
     }
 
 
     /**
-     * Singleton pattern
+     * Singleton pattern, with one instance per UDS partition
      */
     private static class LazySingletonHolder {
-        static final UDScheduler instance = new UDScheduler();
+        static final UDScheduler[] partitions = new UDScheduler[Math.max(1, UDSOptions.PARTITIONS)];
+        static {
+            for(int i = 0; i < partitions.length; i++) {
+                partitions[i] = new UDScheduler(i);
+            }
+        }
     }
 
     /**
-     * Get the Singleton instance of this UDS Scheduler
+     * Get the Singleton instance of this UDS Scheduler. With several UDS partitions, this is the scheduler of
+     * partition 0.
      *
      * @return Singleton UDS Scheduler instance
      */
     public static UDScheduler getInstance() {
-        return LazySingletonHolder.instance;
+        return LazySingletonHolder.partitions[0];
+    }
+
+    /**
+     * Get the UDS Scheduler instance of a partition
+     *
+     * @param partition index of the partition, between 0 and the number of partitions - 1
+     */
+    static UDScheduler getPartition(int partition) {
+        return LazySingletonHolder.partitions[partition];
+    }
+
+    static int getPartitionCount() {
+        return LazySingletonHolder.partitions.length;
+    }
+
+    /**
+     * Get the scheduler of the current UDS Thread
+     */
+    static UDScheduler getCurrentScheduler() {
+        return currentUDSThread.get().getScheduler();
+    }
+
+    public int getPartition() {
+        return partition;
+    }
+
+    /**
+     * @return the runtime metrics of this partition, null if they are disabled (see {@link UDSOptions#METRICS})
+     */
+    public UDSMetrics getMetrics() {
+        return metrics;
+    }
+
+    public UDSWaitStrategy getWaitStrategy() {
+        return waitStrategy;
+    }
+
+    /**
+     * Changes how UDS threads of this partition wait for hand-offs. Applies to waits that start afterwards.
+     */
+    public void setWaitStrategy(UDSWaitStrategy waitStrategy) {
+        if(waitStrategy == null) {
+            throw new IllegalArgumentException("UDS wait strategy must not be null");
+        }
+        this.waitStrategy = waitStrategy;
+    }
+
+    /**
+     * Adds an event to the trace of this partition, if tracing is enabled.
+     * Can only be called when holding the scheduler lock.
+     *
+     * @param type     event type, see {@link UDSTraceRecorder}
+     * @param t        the thread the event is about, null for events of the whole round
+     * @param argument depends on the event type
+     */
+    void trace(short type, UDSThread t, int argument) {
+        if(trace != null) {
+            trace.record(type, round, t == null ? -1 : t.getId(), argument);
+        }
+    }
+
+    /**
+     * Writes the remaining trace records on shutdown. Does not wait long for the scheduler lock, since a UDS thread
+     * might hold it while the JVM exits.
+     */
+    private void closeTrace() {
+        try {
+            if(schedulerLock.tryLock(1, TimeUnit.SECONDS)) {
+                try {
+                    trace.close();
+                } finally {
+                    schedulerLock.unlock();
+                }
+            } else {
+                logger.warning("Could not close the UDS trace of partition " + partition + ", the scheduler is busy");
+            }
+        } catch(InterruptedException e) {
+            logger.warning("Interrupted while closing the UDS trace of partition " + partition);
+        }
     }
 
     /**
@@ -166,24 +396,57 @@ public class UDScheduler {
      * @param r Runnable responsible for fulfilling a client request, added to UDS for scheduling purposes.
      */
     public void addRequest(Runnable r, Runnable replyRunnable) {
+        addRequest(r, replyRunnable, null);
+    }
+
+    /**
+     * Adds a request like {@link #addRequest(Runnable, Runnable)}, together with the IDs of the locks it will take
+     * exclusively. The lock set is only a hint for choosing primaries that do not conflict with each other (see
+     * {@link UDSOptions#CONFLICT_AWARE_PRIMARIES}); it does not restrict which locks the request may actually take.
+     *
+     * @param r             Runnable responsible for fulfilling a client request
+     * @param replyRunnable Runnable sending the reply
+     * @param lockSet       IDs of the locks the request will take exclusively, null if unknown
+     */
+    public void addRequest(Runnable r, Runnable replyRunnable, int[] lockSet) {
+        addRequest(r, replyRunnable, lockSet, false);
+    }
+
+    /**
+     * Adds a request that runs alone in this partition: it only becomes primary once all threads added before it
+     * have terminated, and threads added after it do not run before it has terminated. Used for requests spanning
+     * several partitions, see {@link UDSPartitions}. Blocks(!) like addRequest().
+     *
+     * The request must not wait on a condition, since no other thread of the partition could signal it.
+     *
+     * @param r             Runnable responsible for fulfilling a client request
+     * @param replyRunnable Runnable sending the reply
+     */
+    void addExclusiveRequest(Runnable r, Runnable replyRunnable) {
+        addRequest(r, replyRunnable, null, true);
+    }
+
+    private void addRequest(Runnable r, Runnable replyRunnable, int[] lockSet, boolean exclusive) {
         // Take schedulerLock to guard against another thread messing with the
         // thread queue while we add and start the new one
         schedulerLock.lock();
-        String prefix= "{" + Thread.currentThread().getName() + "} addRequest: ";
+        String prefix = "";
+        if(logger.isLoggable(Level.FINE)) {
+            prefix = "{" + Thread.currentThread().getName() + "} addRequest: ";
+        }
         try {
             /*
              * Create the UDS thread and its runnable with boiler plate code for correct termination
              */
-            UDSThread thread = new UDSThread();
-            thread.initTask(r, replyRunnable);
+            UDSThread thread = newThread(r, replyRunnable, lockSet);
+            thread.setExclusive(exclusive);
 
             if(logger.isLoggable(Level.FINE)) {
                 logger.fine(prefix + "processing thread " + thread.getIdString());
             }
 
             // Implementation of back-pressure if there are too many pending threads in the system
-            // TODO: Maximum size is a good guess but far from being evaluated or tuned
-            if(this.threads.size() > ((udsConfiguration.getN() * 2) + 50)) {
+            if(this.threads.size() > admissionLimit()) {
                 if(logger.isLoggable(Level.FINEST)) {
                     logger.finest(prefix + "blocking due to too many threads");
                 }
@@ -197,11 +460,10 @@ public class UDScheduler {
             }
             this.threads.add(thread);
             numberOfThreadsScheduled++;
+            ensureWorkers();
 
             if(logger.isLoggable(Level.FINER)) {
-                String threadListStatus = threads.stream().map(UDSThread::getIdString).
-                        collect(Collectors.joining(", ", prefix + "current threadList: [", "]"));
-                logger.finer(threadListStatus);
+                logger.finer(prefix + "current threadList: " + threads);
             }
 
             // start the thread
@@ -218,6 +480,103 @@ public class UDScheduler {
         }
     }
 
+    /**
+     * Adds a whole batch of requests (e.g. all requests of one consensus decision) to the UDS scheduling queue in
+     * the given order. Back-pressure is applied once for the whole batch: blocks(!) until the internal UDS thread list
+     * is empty enough, then adds and starts all threads while holding the scheduler lock, so no other request can be
+     * added in between. The thread list may therefore exceed the admission limit by up to the size of one batch.
+     *
+     * @param requests       Runnables responsible for fulfilling client requests, in the order they were decided
+     * @param replyRunnables Runnables sending the replies, one for every request
+     */
+    public void addRequests(List<Runnable> requests, List<Runnable> replyRunnables) {
+        addRequests(requests, replyRunnables, null);
+    }
+
+    /**
+     * Adds a batch of requests like {@link #addRequests(List, List)}, together with the lock sets the requests
+     * declared, see {@link #addRequest(Runnable, Runnable, int[])}.
+     *
+     * @param requests       Runnables responsible for fulfilling client requests, in the order they were decided
+     * @param replyRunnables Runnables sending the replies, one for every request
+     * @param lockSets       IDs of the locks every request will take exclusively (entries may be null), or null if
+     *                       no request declared its locks
+     */
+    public void addRequests(List<Runnable> requests, List<Runnable> replyRunnables, List<int[]> lockSets) {
+        if(requests.size() != replyRunnables.size()) {
+            throw new IllegalArgumentException("Every request needs exactly one reply Runnable (" + requests.size() +
+                    " requests, " + replyRunnables.size() + " reply Runnables)");
+        }
+        if(lockSets != null && lockSets.size() != requests.size()) {
+            throw new IllegalArgumentException("Every request needs exactly one lock set (" + requests.size() +
+                    " requests, " + lockSets.size() + " lock sets)");
+        }
+        if(requests.isEmpty()) {
+            return;
+        }
+
+        schedulerLock.lock();
+        String prefix = "";
+        if(logger.isLoggable(Level.FINE)) {
+            prefix = "{" + Thread.currentThread().getName() + "} addRequests: ";
+        }
+        try {
+            UDSThread first = newThread(requests.get(0), replyRunnables.get(0),
+                    lockSets != null ? lockSets.get(0) : null);
+
+            // Implementation of back-pressure at batch granularity
+            while(this.threads.size() > admissionLimit()) {
+                if(logger.isLoggable(Level.FINEST)) {
+                    logger.finest(prefix + "blocking batch of " + requests.size() + " requests due to too many " +
+                            "threads");
+                }
+                admissionThread = first;
+                first.awaitAdmission();
+            }
+
+            // add all threads in order, then start them
+            UDSThread[] added = new UDSThread[requests.size()];
+            for(int i = 0; i < added.length; i++) {
+                added[i] = i == 0 ? first : newThread(requests.get(i), replyRunnables.get(i),
+                        lockSets != null ? lockSets.get(i) : null);
+                this.threads.add(added[i]);
+                numberOfThreadsScheduled++;
+            }
+            // a batch is admitted as a whole and may exceed the admission window
+            ensureWorkers();
+            for(UDSThread thread : added) {
+                thread.start();
+            }
+
+            if(logger.isLoggable(Level.FINER)) {
+                logger.finer(prefix + "added " + requests.size() + " threads, current threadList: " + threads);
+            }
+
+            // signal scheduling thread waiting for threads in startRound() once for the whole batch
+            threadExists.signalAll();
+        } finally {
+            schedulerLock.unlock();
+        }
+    }
+
+    /**
+     * Creates a new UDS thread for a request, reusing a recycled thread if there is one (pooled execution mode).
+     * Can only be called when holding the scheduler lock.
+     */
+    private UDSThread newThread(Runnable r, Runnable replyRunnable, int[] lockSet) {
+        UDSThread thread = recycledThreads.isEmpty() ? new UDSThread() : recycledThreads.pollFirst().reset();
+        thread.initTask(r, replyRunnable, lockSet);
+        return thread;
+    }
+
+    /**
+     * Number of threads in the thread list above which addRequest() blocks (back-pressure)
+     * TODO: Maximum size is a good guess but far from being evaluated or tuned
+     */
+    private int admissionLimit() {
+        return (udsConfiguration.getN() * 2) + UDSOptions.ADMISSION_SLACK;
+    }
+
     /**
      * Method for adding a UDSRequest and immediately filling the current round, so that it can end and start the
      * next one. Useful for e.g. reconfiguration decisions for autoscaling, etc.
@@ -228,7 +587,7 @@ public class UDScheduler {
 
         // if the current round is not yet full and we don't have enough threads in the thread list that could fill it,
         // add dummy requests until the round can be started
-        int mt = udsConfiguration.getN() - (threads.size() + primaries.size());
+        int mt = udsConfiguration.getN() - (threads.size() + primaryCount);
         for(int i = 0; i < mt; i++) {
             addRequest(() -> {}, () -> {});
         }
@@ -244,6 +603,8 @@ public class UDScheduler {
     private void startRound() {
         int i;
         int n;
+        int skipped = 0;
+        boolean cutShort = false;
         String prefix = "";
         if(logger.isLoggable(Level.FINE)) {
             prefix = currentUDSThread.get().getIdString() + " startRound(): ";
@@ -255,10 +616,12 @@ public class UDScheduler {
             this.round++;
 
             // empty the set of primaries
-            primaries.clear();
-            
-            // reconfigure UDS
+            clearPrimaries();
+
+            // reconfigure UDS, then start collecting the statistics of the new round
             reconfigure(progress);
+            this.progress = false;
+            this.roundPrimaries = udsConfiguration.getN();
             if(logger.isLoggable(Level.FINE)) {
             	logger.info(prefix + "starting round " + this.round + ", total order " +
             			totalOrderToString() + ", with " + udsConfiguration.getN() + " primaries by adding threads to " + 
@@ -266,35 +629,85 @@ public class UDScheduler {
             }
 
             // fill with threads
+            claimedLocks.clear();
             for(i = 0, n = 0; true; i++) {
                 while(threads.size() <= i || !threads.get(i).isStarted()) {
                     if(logger.isLoggable(Level.FINER)) {
                         logger.finer(prefix + " waiting for new threads (round " + this.round + ")");
                     }
+                    waitingForThreads = true;
+                    if(draining) {
+                        drainProgress.signalAll();
+                    }
                     try {
 	                    threadExists.await();
                     } catch( InterruptedException e ) {
-                        logger.info(prefix + "has been interrupted while waiting on " +
-                                "threadExists. Re-waiting ...");
+                        logger.info(currentUDSThread.get().getIdString() + " startRound(): has been interrupted " +
+                                "while waiting on threadExists. Re-waiting ...");
                     }
                 }
+                waitingForThreads = false;
                 if(logger.isLoggable(Level.FINER)) {
                     logger.finer(prefix + "was woken up by signal to threadExists (Round " + this.round + ")");
                 }
                 UDSThread t = threads.get(i);
 
+                // A barrier or an exclusive thread ends the search for primaries: threads added after it must not run
+                // before it is released or has terminated
+                if((t.isBarrier() || t.isExclusive()) && !t.isTerminated()) {
+                    if(n > 0) {
+                        // run the threads before it in a smaller round
+                        cutRoundShort(n);
+                        cutShort = true;
+                        break;
+                    }
+                    if(t.isExclusive()) {
+                        // all threads before the exclusive thread have terminated, so it runs alone
+                        if(logger.isLoggable(Level.FINER)) {
+                            logger.finer(prefix + "adding exclusive thread " + t.getIdString() + " as only primary");
+                        }
+                        t.setPrimarySlot(0);
+                        this.primaries[0] = t;
+                        this.primaryCount = 1;
+                        t.setPrimary(true);
+                        cutRoundShort(1);
+                        break;
+                    }
+                    // all threads before the barrier have terminated (or wait on a condition), so nothing runs in
+                    // this partition. Hold the partition until the barrier is released, then drop the barrier
+                    awaitBarrierRelease(t);
+                    numberOfThreadsTerminated++;
+                    continue;
+                }
+
                 // If a thread is not already terminated and the prim()-predicate allows it, add thread to primaries
                 if(!t.isTerminated() && prim(t)) {
+                    // pass over threads whose declared locks are taken by primaries chosen before, but only for a
+                    // bounded number of threads per round and rounds per thread
+                    if(UDSOptions.CONFLICT_AWARE_PRIMARIES) {
+                        if(conflictsWithPrimaries(t) && skipped < udsConfiguration.getN()
+                                && t.getSkippedRounds() < UDSOptions.CONFLICT_STARVATION_BOUND) {
+                            if(logger.isLoggable(Level.FINER)) {
+                                logger.finer(prefix + "passing over " + t.getIdString() + " because of conflicting " +
+                                        "locks");
+                            }
+                            t.setSkippedRounds(t.getSkippedRounds() + 1);
+                            skipped++;
+                            continue;
+                        }
+                        claimLocks(t);
+                        t.setSkippedRounds(0);
+                    }
                     if(logger.isLoggable(Level.FINER)) {
                         logger.finer(prefix + "adding thread " + t.getIdString() + " to primaries");
                     }
+                    t.setPrimarySlot(n);
+                    this.primaries[n] = t;
+                    this.primaryCount = n + 1;
                     t.setPrimary(true);
-                    this.primaries.add(t);
 
                     if(logger.isLoggable(Level.FINER)) {
-                        String primariesStatus = primaries.stream().map(UDSThread::getIdString).
-                                collect(Collectors.joining(", ", prefix + "new primaries [", "]"));
-                        logger.finer(primariesStatus);
+                        logger.finer(prefix + "new primaries " + primariesToString());
                     }
 
                     // If we have enough primaries for this round, stop looking for more primaries
@@ -303,7 +716,14 @@ public class UDScheduler {
                     }
                 }
             }
-
+            roundStartedAt = metrics != null ? System.nanoTime() : 0;
+            stepsConsumed = 0;
+            if(trace != null) {
+                trace(UDSTraceRecorder.ROUND_START, null, primaryCount);
+                for(int p = 0; p < primaryCount; p++) {
+                    trace(UDSTraceRecorder.PRIMARY, primaries[p], p);
+                }
+            }
 
             // update the number of seen threads
             if(highestThreadNo < i) {
@@ -313,13 +733,13 @@ public class UDScheduler {
                 highestThreadNo = i;
             }
             
-            // prune thread list by removing all terminated threads
-            int removedThreads = threads.size();
-            if(threads.removeIf(UDSThread::isTerminated)) {
+            // prune thread list by removing all terminated threads. Only primaries terminate, and primaries are
+            // always among the threads seen so far, so only these have to be checked
+            int removedThreads = pruneTerminatedThreads(highestThreadNo + 1);
+            if(removedThreads > 0) {
             	// some space for new threads
 
-            	// compute removed threads and correct number of seen threads
-            	removedThreads -= threads.size();
+            	// correct number of seen threads
             	highestThreadNo -= removedThreads;
                 if(logger.isLoggable(Level.FINEST)) {
                     logger.finest(prefix + "corrected highestThreadNo to " + highestThreadNo);
@@ -334,17 +754,99 @@ public class UDScheduler {
             		admissionThread= null;
             	}
             }
+
+            // the primaries found before a barrier may all have terminated while this method waited for more
+            // threads, in which case no primary is left to detect the end of the round
+            if(cutShort) {
+                checkForEndOfRound();
+            }
         } finally {
             schedulerLock.unlock();
         }
     }
 
+    /**
+     * Removes all terminated threads among the first seen threads from the thread list. In pooled execution mode,
+     * the removed threads are kept for reuse, unless they are primaries of the round being started: a primary may
+     * terminate while startRound() waits for more threads, and resetting it would keep the round from ever ending.
+     * Can only be called when holding the scheduler lock.
+     *
+     * @param seen number of threads at the start of the thread list that may contain terminated threads
+     * @return the number of removed threads
+     */
+    private int pruneTerminatedThreads(int seen) {
+        return threads.removeTerminated(seen, UDSOptions.POOLED_EXECUTION ? recycledThreads : null);
+    }
+
+    /**
+     * Empties the set of primaries. Can only be called when holding the scheduler lock.
+     */
+    private void clearPrimaries() {
+        for(int i = 0; i < primaryCount; i++) {
+            primaries[i].setPrimarySlot(-1);
+            primaries[i] = null;
+        }
+        primaryCount = 0;
+    }
+
+    /**
+     * Returns the primary slot owning the step at the head of the total order, skipping the remaining steps of
+     * primaries which have been removed from the total order. Can only be called when holding the scheduler lock.
+     *
+     * @return the primary slot at the head of the total order, or -1 if no steps are left in this round
+     */
+    private int headOfTotalOrder() {
+        int[] totalOrder = udsConfiguration.getTotalOrder();
+        while(totalOrderHead < totalOrder.length && stepsLeft[totalOrder[totalOrderHead]] == 0) {
+            totalOrderHead++;
+        }
+        return totalOrderHead < totalOrder.length ? totalOrder[totalOrderHead] : -1;
+    }
+
+    /**
+     * Signals the primary owning the step at the head of the total order, if there are steps left and the primary
+     * is already known. Can only be called when holding the scheduler lock.
+     */
+    private void signalHeadOfTotalOrder() {
+        int head = headOfTotalOrder();
+        if(head >= 0 && primaryCount > head) {
+            primaries[head].setWaitingForTurn(false);
+        }
+    }
+
+    /**
+     * Makes sure that every thread admitted by addRequest() or addRequests() or forked by a running thread gets a
+     * worker in pooled execution mode, so primaries never wait for a worker held by a thread that is not yet allowed
+     * to proceed. Detached threads still running their remainder hold workers as well. Can only be called when
+     * holding the scheduler lock.
+     */
+    private void ensureWorkers() {
+        if(!UDSOptions.POOLED_EXECUTION) {
+            return;
+        }
+        ThreadPoolExecutor workers = (ThreadPoolExecutor) udsThreadPool;
+        // admission window of addRequest() (exceeded by batches and forked threads) plus the delivery thread's thread waiting for
+        // admission, and the detached threads which have left the thread list
+        int required = Math.max(admissionLimit(), threads.size()) + detachedThreads + 2;
+        if(workers.getMaximumPoolSize() < required) {
+            if(logger.isLoggable(Level.INFO)) {
+                logger.info("Growing UDS worker pool to " + required + " workers");
+            }
+            workers.setMaximumPoolSize(required);
+            workers.setCorePoolSize(required);
+            workers.prestartAllCoreThreads();
+        }
+    }
+
     /**
      * Checks whether the current scheduling round meets all conditions to end.
      */
     public void checkForEndOfRound() {
         schedulerLock.lock();
-        String prefix = getCurrentUDSThread().getIdString() + " checkForEndOfRound(): ";
+        String prefix = "";
+        if(logger.isLoggable(Level.FINE)) {
+            prefix = getCurrentUDSThread().getIdString() + " checkForEndOfRound(): ";
+        }
         
         try {
             // check all primaries whether they are finished/terminated/waiting
@@ -354,7 +856,7 @@ public class UDScheduler {
 
             // if there are currently less primaries than there should be (as per the udsConfiguration
             // for the current round), then the round is not yet over and we have to wait for more primaries
-            if(primaries.size() < n(round)) {
+            if(primaryCount < n(round)) {
                 if(logger.isLoggable(Level.FINER)) {
                     logger.finer(prefix + "did not yet see all primaries");
                 }
@@ -364,13 +866,15 @@ public class UDScheduler {
             if(logger.isLoggable(Level.FINEST)) {
                 logger.finest(prefix + "checks status of all primaries");
             }
-            for(UDSThread t : primaries) {
+            for(int i = 0; i < primaryCount; i++) {
+                UDSThread t = primaries[i];
                 // if any primary is still running/has steps/is waiting for its turn, round is not over
                 if(logger.isLoggable(Level.FINEST)) {
                     logger.finest(t.toString());
                 }
                 if( !t.isTerminated()
                 		&& t.getEnqueued() == null
+                        && !t.isAwaitingSignal()
                         && !t.isFinished()
                         && !t.isWaitingForTurn()) {
                     if(logger.isLoggable(Level.FINE)) {
@@ -383,14 +887,24 @@ public class UDScheduler {
             if(logger.isLoggable(Level.FINE)) {
                 logger.fine(prefix + "end of round " + round + " detected");
             }
-            for(UDSThread t : primaries) {
+            if(metrics != null) {
+                recordRoundMetrics();
+            }
+            blockedPrimaries = 0;
+            for(int i = 0; i < primaryCount; i++) {
+                UDSThread t = primaries[i];
+                if(t.getEnqueued() != null || t.isAwaitingSignal()) {
+                    blockedPrimaries++;
+                }
                 t.setPrimary(false);
                 t.setFinished(false);
                 t.setWaitingForTurn(false);
                 t.dequeueThread();
+                t.endTimedWait();
             }
+            trace(UDSTraceRecorder.ROUND_END, null, blockedPrimaries);
             // reset primaries
-            primaries.clear();
+            clearPrimaries();
 
             // signal waiting threads to re-check their changed conditions
             // don't signal primaries, since we cleared primaries and no thread could possibly be primary
@@ -406,14 +920,48 @@ public class UDScheduler {
         }
     }
 
+    /**
+     * Records the metrics of the round that just ended. Can only be called when holding the scheduler lock, before
+     * the primaries are reset.
+     */
+    private void recordRoundMetrics() {
+        long now = System.nanoTime();
+        for(int i = 0; i < primaryCount; i++) {
+            UDSThread t = primaries[i];
+            if(t.isTerminated() || t.isFinished()) {
+                metrics.primaryIdled(now - t.getIdleSince());
+            }
+        }
+        // steps of the total order that belonged to a primary of this round, but were not used by it
+        int steps = 0;
+        for(int slot : udsConfiguration.getTotalOrder()) {
+            if(slot < primaryCount) {
+                steps++;
+            }
+        }
+        metrics.roundEnded(now - roundStartedAt, steps - stepsConsumed);
+    }
+
     /**
      * Called whenever total order needs to be obeyed by a UDSThread.
      */
     public void waitForTurn() {
         schedulerLock.lock();
         UDSThread t = getCurrentUDSThread();
-        String logPrefix = t.getIdString() + " waitForTurn(): ";
+        String logPrefix = "";
+        if(logger.isLoggable(Level.FINE)) {
+            logPrefix = t.getIdString() + " waitForTurn(): ";
+        }
         try {
+            if(t.getScheduler() != this) {
+                throw new IllegalStateException(t.getIdString() + " waitForTurn(): thread of UDS partition " +
+                        t.getScheduler().getPartition() + " tried to wait for its turn in partition " + partition);
+            }
+            if(t.isDetached()) {
+                throw new IllegalStateException(t.getIdString() + " waitForTurn(): thread has been detached from " +
+                        "the schedule and cannot use UDS locks or conditions anymore");
+            }
+
             // bootstrap
             if(round == 0) {
                 setProgress(true);
@@ -433,11 +981,16 @@ public class UDScheduler {
                 }
 
                 // check whether we have any steps left in total order
-                if(!udsConfiguration.getTotalOrder().contains(primaries.indexOf(t))) {
+                int head = headOfTotalOrder();
+                if(stepsLeft[t.getPrimarySlot()] == 0) {
                     t.setFinished(true);
+                    if(metrics != null) {
+                        t.setIdleSince(System.nanoTime());
+                    }
                     checkForEndOfRound();
                     // The round is not yet over, but we have no steps in the total order. So wait for
                     // the signal isFinished = false, which means the next round has started and we can try again.
+                    waitStrategy.spin(schedulerLock, t.nextRoundStarted);
                     while(t.isFinished()) {
                         if(logger.isLoggable(Level.FINER)) {
                             logger.finer(logPrefix + "before awaiting isFinished");
@@ -447,25 +1000,23 @@ public class UDScheduler {
                             logger.finer(logPrefix + "after woken up by signal to isFinished");
                         }
                     }
-                } else if(udsConfiguration.getTotalOrder().size() > 0
-                        && primaries.size() > udsConfiguration.getTotalOrder().get(0)
-                        && primaries.get(udsConfiguration.getTotalOrder().get(0)).equals(t)) {
+                } else if(head == t.getPrimarySlot()) {
                     // if current thread is first in total order, it may continue and remove the step from total order
                     if(logger.isLoggable(Level.FINE)) {
                         logger.fine(logPrefix + "is removing its step from the tip of the total order");
                     }
 
-                    udsConfiguration.getTotalOrder().remove(0);
+                    totalOrderHead++;
+                    stepsLeft[head]--;
+                    stepsConsumed++;
+                    trace(UDSTraceRecorder.STEP, t, head);
 
                     if(logger.isLoggable(Level.FINER)) {
                     	logger.finer(logPrefix + "total order left is " + totalOrderToString());
                     }
 
                     // wake up next thread in total order if still some steps left and if enough primaries
-                    if(udsConfiguration.getTotalOrder().size() > 0
-                            && primaries.size() > udsConfiguration.getTotalOrder().get(0)) {
-                        primaries.get(udsConfiguration.getTotalOrder().get(0)).setWaitingForTurn(false);
-                    }
+                    signalHeadOfTotalOrder();
                     break;
                 } else {
                     // wait for step / first in total order
@@ -483,10 +1034,10 @@ public class UDScheduler {
                 }
             }
         } catch(InterruptedException e) {
-            logger.info(logPrefix + " waitForTurn(): has been interrupted while waiting on " +
+            logger.info(t.getIdString() + " waitForTurn(): has been interrupted while waiting on " +
                     "isPrimary. Re-waiting ...");
         } catch(ClassCastException e) {
-            logger.severe(logPrefix + " waitForTurn(): tried to cast a non-UDSThread to UDSThread");
+            logger.severe(t.getIdString() + " waitForTurn(): tried to cast a non-UDSThread to UDSThread");
             System.exit(1);
         } finally {
             schedulerLock.unlock();
@@ -494,26 +1045,17 @@ public class UDScheduler {
     }
 
     private void removeFromOrder(UDSThread t) {
-        // remove all steps of t in total order
-        Integer i = primaries.indexOf(t);
+        // remove all steps of t in total order; they are skipped lazily when looking for the head of the total order
         if(logger.isLoggable(Level.FINER)) {
             logger.finer(t.getIdString() + " removeFromOrder(): removes all its steps from the total order");
         }
-        while(udsConfiguration.getTotalOrder().remove(i)) {}
+        stepsLeft[t.getPrimarySlot()] = 0;
         if(logger.isLoggable(Level.FINEST)) {
         	logger.finest(t.getIdString() + " removeFromOrder: new total order " +
         					totalOrderToString() );
         }
         // signal next thread in total order if there are steps left in this round
-        if(udsConfiguration.getTotalOrder().size() > 0
-                && primaries.size() > udsConfiguration.getTotalOrder().get(0)) {
-            schedulerLock.lock();
-            try {
-                primaries.get(udsConfiguration.getTotalOrder().get(0)).setWaitingForTurn(false);
-            } finally {
-                schedulerLock.unlock();
-            }
-        }
+        signalHeadOfTotalOrder();
     }
 
     /**
@@ -523,23 +1065,50 @@ public class UDScheduler {
      */
     private void reconfigure(boolean progress) {
         schedulerLock.lock();
-        String prefix = UDScheduler.currentUDSThread.get().getIdString() + " reconfigure(): ";
+        String prefix = "";
+        if(logger.isLoggable(Level.FINE)) {
+            prefix = UDScheduler.currentUDSThread.get().getIdString() + " reconfigure(): ";
+        }
         if(logger.isLoggable(Level.FINE)) {
             logger.fine(prefix + "start reconfiguration");
         }
         try {
+            // let the adaptation policy change the requested configuration based on the finished round
+            if(adaptationPolicy != null && round > 1) {
+                int n = requestedUDSConfiguration.getN();
+                int adaptedN = adaptationPolicy.nextPrimaries(udsConfiguration.getN(), progress, blockedPrimaries);
+                if(adaptedN != n) {
+                    int stepsPerPrimary = requestedUDSConfiguration.getTotalOrder().length / n;
+                    requestedUDSConfiguration.setN(adaptedN);
+                    requestedUDSConfiguration.setTotalOrder(roundRobinTotalOrder(adaptedN, stepsPerPrimary));
+                }
+            }
+
             // reconfigure UDS by copying contents of requestedUDSConfiguration
-            udsConfiguration.setN(requestedUDSConfiguration.getN());
-            udsConfiguration.setTotalOrder(new ArrayList<>(this.requestedUDSConfiguration.getTotalOrder()));
-            if(logger.isLoggable(Level.FINER)) {
-            	String totalOrderStatus = udsConfiguration.getTotalOrder().stream().map(Object::toString).
-            			collect(Collectors.joining(", ", prefix +
-            					"new total order [", "] and " + udsConfiguration.getN() +
-            					" primaries"));
-            	logger.finer(totalOrderStatus);
+            // (total orders are never modified once requested, so the array can be shared)
+            int n = requestedUDSConfiguration.getN();
+            int[] totalOrder = requestedUDSConfiguration.getTotalOrder();
+            udsConfiguration.setN(n);
+            udsConfiguration.setTotalOrder(totalOrder);
+
+            // reset the state of the total order for the new round
+            if(primaries.length < n) {
+                primaries = Arrays.copyOf(primaries, Math.max(n, primaries.length * 2));
+            }
+            if(stepsLeft.length < n) {
+                stepsLeft = new int[Math.max(n, stepsLeft.length * 2)];
             }
+            Arrays.fill(stepsLeft, 0);
+            for(int slot : totalOrder) {
+                stepsLeft[slot]++;
+            }
+            totalOrderHead = 0;
 
-            // TODO if no progress was made, increase number of primaries for next round
+            ensureWorkers();
+            if(logger.isLoggable(Level.FINER)) {
+            	logger.finer(prefix + "new total order " + Arrays.toString(totalOrder) + " and " +
+                        udsConfiguration.getN() + " primaries");
+            }
         } finally {
             schedulerLock.unlock();
         }
@@ -560,21 +1129,12 @@ public class UDScheduler {
             logger.fine(t.getIdString() + " terminateThread()" );
         }
         try {
-        	// If we haven't had any critical ops yet, start a round so we don't wait forever on becoming primary
-        	if(round == 0) {
-        		startRound();
-        	}
-        	setProgress(true);
-
-            if(logger.isLoggable(Level.FINER)) {
-                logger.finer(t.getIdString() + " terminateThread(): before waitForPrimary()");
+            // a detached thread has already left the schedule, and now gives back its worker
+            if(t.isDetached()) {
+                detachedThreads--;
+            } else {
+                retire(t);
             }
-            t.waitForPrimary();
-            
-            // Thread can be marked as terminated and retire itself
-            t.setTerminated(true);
-            removeFromOrder(t);
-            checkForEndOfRound();
             numberOfThreadsTerminated++;
             // nothing left to do, thread should stop itself after returning
         } finally {
@@ -583,26 +1143,413 @@ public class UDScheduler {
     }
 
     /**
-     * Predicate function for deciding whether a thread can be added to primaries.
-     * Terminated threads are obviously out.
-     * Can be used for fine-tuning UDS.
+     * Round-overlapping ("pipelined") execution: removes the current UDS thread from the schedule before it has
+     * terminated, because it will not use any UDS lock or condition anymore. Its remaining steps are given up like at
+     * termination, so the current round can end and the next one can start while the thread still executes the
+     * lock-free remainder of its request, e.g. a long computation after its last unlock.
      *
-     * @param udsThread the thread that is trying to become primary
-     * @return true if the thread may become primary, false otherwise
+     * Detaching happens at a fixed point of the thread's program, so the schedule stays deterministic. The thread must
+     * not hold any UDS lock, since it would be released at a point in time unrelated to the schedule.
+     *
+     * @throws IllegalStateException if the current thread is not a UDS thread
      */
-    private boolean prim(UDSThread udsThread) {
-        return true;
+    public static void detachCurrentThread() {
+        UDSThread t = currentUDSThread.get();
+        if(t == null) {
+            throw new IllegalStateException(Thread.currentThread().getName() + " is not a UDS thread and cannot be " +
+                    "detached from a UDS round");
+        }
+        t.getScheduler().detach(t);
     }
 
-    /**
-     * Returns the number of primaries for the current round
-     * // TODO properly implement
+    private void detach(UDSThread t) {
+        schedulerLock.lock();
+        try {
+            if(t.isDetached()) {
+                return;
+            }
+            if(t.getForkedTask() != null) {
+                throw new IllegalStateException(t.getIdString() + " detach(): a forked thread cannot be detached, " +
+                        "its parent has to see when it terminates");
+            }
+            if(logger.isLoggable(Level.FINE)) {
+                logger.fine(t.getIdString() + " detach(): leaves the schedule before terminating");
+            }
+            // before retiring, so that pruning does not recycle the thread while it is still executing
+            t.setDetached(true);
+            retire(t);
+            // the thread keeps its worker, while the threads admitted in its place need workers of their own
+            detachedThreads++;
+            ensureWorkers();
+        } finally {
+            schedulerLock.unlock();
+        }
+    }
+
+    /**
+     * Removes a thread from the schedule once it is primary, so that it does not keep its round from ending.
+     * Can only be called when holding the scheduler lock.
+     */
+    private void retire(UDSThread t) {
+        // If we haven't had any critical ops yet, start a round so we don't wait forever on becoming primary
+        if(round == 0) {
+            startRound();
+        }
+        setProgress(true);
+
+        if(logger.isLoggable(Level.FINER)) {
+            logger.finer(t.getIdString() + " retire(): before waitForPrimary()");
+        }
+        t.waitForPrimary();
+
+        // Thread can be marked as terminated and retire itself
+        t.setTerminated(true);
+        if(t.getForkedTask() != null) {
+            t.getForkedTask().setDone(round);
+        }
+        trace(UDSTraceRecorder.TERMINATE, t, 0);
+        if(metrics != null) {
+            t.setIdleSince(System.nanoTime());
+        }
+        removeFromOrder(t);
+        checkForEndOfRound();
+    }
+
+    /**
+     * Forks a task from the current UDS thread, so that a CPU-heavy request can use more than one core. The task is
+     * executed by a new child UDS thread, which is inserted into the thread list right before its parent (behind the
+     * children the parent forked before), so it takes over its parent's position in the order of threads instead of
+     * queueing behind all requests added meanwhile, and becomes primary before its parent does again. Like every UDS
+     * thread, the child starts executing right away and only obeys the total order at UDS lock operations.
+     *
+     * Forking is a scheduling point that waits for the parent's turn in the total order like a lock operation, so the
+     * place of the child in the thread list is the same on all replicas. A forked task must not be detached (see
+     * {@link #detachCurrentThread()}) and should not wait on a UDSCondition, since its joining parent could keep the
+     * signalling thread from becoming primary.
+     *
+     * A thread which is not a UDS thread (sequential execution, other schedulers) executes the task right away.
+     *
+     * @param task the task to execute in parallel
+     * @return the forked task, for {@link UDSTask#join()}
+     */
+    public static <T> UDSTask<T> fork(Supplier<T> task) {
+        UDSThread t = currentUDSThread.get();
+        if(t == null) {
+            UDSTask<T> executed = new UDSTask<>(null, task);
+            executed.run();
+            return executed;
+        }
+        return t.getScheduler().fork(t, task);
+    }
+
+    private <T> UDSTask<T> fork(UDSThread parent, Supplier<T> task) {
+        waitForTurn();
+        schedulerLock.lock();
+        try {
+            UDSTask<T> forked = new UDSTask<>(parent, task);
+            UDSThread child = newThread(forked::run, null, null);
+            child.setForkedTask(forked);
+
+            int index = threads.indexOf(parent);
+            threads.insert(index, child);
+            if(index <= highestThreadNo) {
+                highestThreadNo++;
+            }
+            numberOfThreadsScheduled++;
+            if(logger.isLoggable(Level.FINE)) {
+                logger.fine(parent.getIdString() + " fork(): forked " + child.getIdString() + ", current threadList: " +
+                        threads);
+            }
+            ensureWorkers();
+            child.start();
+            threadExists.signalAll();
+            return forked;
+        } finally {
+            schedulerLock.unlock();
+        }
+    }
+
+    /**
+     * Waits until the child executing a forked task has terminated, see {@link UDSTask#join()}. The waiting thread
+     * gives up its remaining steps of the round and checks again after its first step in the next round in which it
+     * is primary. Since the children are before their parent in the thread list, they become primaries first.
+     */
+    void join(UDSTask<?> task) {
+        UDSThread t = currentUDSThread.get();
+        if(t != task.getParent()) {
+            throw new IllegalStateException((t != null ? t.getIdString() : "{" + Thread.currentThread().getName() +
+                    "}") + " join(): only the thread that forked a task can join it");
+        }
+        while(true) {
+            schedulerLock.lock();
+            try {
+                // a child that terminated in the current round may not have terminated yet on other replicas
+                if(task.isDone() && task.getDoneInRound() < round) {
+                    return;
+                }
+                if(logger.isLoggable(Level.FINER)) {
+                    logger.finer(t.getIdString() + " join(): forked task is not done in round " + round);
+                }
+                setProgress(true);
+                removeFromOrder(t);
+            } finally {
+                schedulerLock.unlock();
+            }
+            waitForTurn();
+        }
+    }
+
+    /**
+     * Checks whether a thread declared any lock that is already declared by a primary of the current round
+     */
+    private boolean conflictsWithPrimaries(UDSThread t) {
+        int[] lockSet = t.getLockSet();
+        if(lockSet == null) {
+            return false;
+        }
+        for(int lockID : lockSet) {
+            if(lockID >= 0 && claimedLocks.get(lockID)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Marks the declared locks of a new primary as taken for the current round
+     */
+    private void claimLocks(UDSThread t) {
+        int[] lockSet = t.getLockSet();
+        if(lockSet == null) {
+            return;
+        }
+        for(int lockID : lockSet) {
+            if(lockID >= 0) {
+                claimedLocks.set(lockID);
+            }
+        }
+    }
+
+    /**
+     * Predicate function for deciding whether a thread can be added to primaries.
+     * Terminated threads are obviously out, and so are threads waiting for a signal on a {@link UDSCondition}, since
+     * they could not make any progress in the round.
+     * Can be used for fine-tuning UDS.
+     *
+     * @param udsThread the thread that is trying to become primary
+     * @return true if the thread may become primary, false otherwise
+     */
+    private boolean prim(UDSThread udsThread) {
+        return !udsThread.isAwaitingSignal();
+    }
+
+    /**
+     * Returns the number of primaries for the current round
+     * // TODO properly implement
      *
      * @param round unused atm
      * @return number of primaries for a round
      */
     private int n(int round) {
-        return udsConfiguration.getN();
+        return roundPrimaries;
+    }
+
+    /**
+     * Ends the search for primaries of the current round early, with fewer primaries than configured. The steps of
+     * the missing primaries are removed from the total order. Can only be called when holding the scheduler lock.
+     *
+     * @param n the number of primaries found so far
+     */
+    private void cutRoundShort(int n) {
+        if(logger.isLoggable(Level.FINER)) {
+            logger.finer("{P" + partition + "} cutRoundShort(): round " + round + " only gets " + n + " primaries");
+        }
+        roundPrimaries = n;
+        for(int slot = n; slot < udsConfiguration.getN(); slot++) {
+            stepsLeft[slot] = 0;
+        }
+        signalHeadOfTotalOrder();
+    }
+
+    /**
+     * Adds a barrier to the end of the thread list. Once all threads added before the barrier have terminated, the
+     * partition stops scheduling until the barrier is released; threads added after the barrier do not run before
+     * that. Used for requests spanning several partitions, see {@link UDSPartitions}.
+     * Blocks(!) like addRequest() if there are too many threads in the thread list.
+     *
+     * @return the barrier, for awaitBarrier() and releaseBarrier()
+     */
+    UDSThread addBarrier() {
+        schedulerLock.lock();
+        try {
+            UDSThread barrier = newThread(null, null, null);
+            barrier.setBarrier(true);
+            while(this.threads.size() > admissionLimit()) {
+                admissionThread = barrier;
+                barrier.awaitAdmission();
+            }
+            if(logger.isLoggable(Level.FINE)) {
+                logger.fine("{" + Thread.currentThread().getName() + "} addBarrier: adding barrier " +
+                        barrier.getIdString() + " to partition " + partition);
+            }
+            this.threads.add(barrier);
+            numberOfThreadsScheduled++;
+            // a barrier has nothing to execute, it only has to be seen by startRound()
+            barrier.setStarted();
+            threadExists.signalAll();
+            return barrier;
+        } finally {
+            schedulerLock.unlock();
+        }
+    }
+
+    /**
+     * Waits until all threads added to this partition have terminated and the partition waits at a round boundary
+     * for new threads. A round that cannot be filled with the remaining threads would keep its primaries from ever
+     * finishing, so it is filled with empty requests. Threads waiting on a UDSCondition keep the drain from completing
+     * until they are signalled.
+     * No other thread may add requests to this partition meanwhile.
+     */
+    void drain() {
+        schedulerLock.lock();
+        try {
+            draining = true;
+            while(!isIdle()) {
+                if(waitingForThreads && hasRunnableThreads()) {
+                    if(logger.isLoggable(Level.FINER)) {
+                        logger.finer("{" + Thread.currentThread().getName() + "} drain: filling round " + round +
+                                " of partition " + partition + " with an empty request");
+                    }
+                    addRequest(() -> {}, () -> {});
+                    // startRound() sets it again if the round is still not full
+                    waitingForThreads = false;
+                } else {
+                    drainProgress.awaitUninterruptibly();
+                }
+            }
+            if(logger.isLoggable(Level.FINE)) {
+                logger.fine("{" + Thread.currentThread().getName() + "} drain: partition " + partition +
+                        " is idle in round " + round);
+            }
+        } finally {
+            draining = false;
+            schedulerLock.unlock();
+        }
+    }
+
+    /**
+     * @return true if no thread of this partition is left to run and no round is in progress.
+     * Can only be called when holding the scheduler lock.
+     */
+    private boolean isIdle() {
+        if(round == 0) {
+            return threads.size() == 0;
+        }
+        if(!waitingForThreads) {
+            return false;
+        }
+        for(int i = 0; i < threads.size(); i++) {
+            if(!threads.get(i).isTerminated()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return true if a thread of this partition that has not terminated does not wait on a UDSCondition.
+     * Can only be called when holding the scheduler lock.
+     */
+    private boolean hasRunnableThreads() {
+        for(int i = 0; i < threads.size(); i++) {
+            UDSThread t = threads.get(i);
+            if(!t.isTerminated() && !t.isAwaitingSignal()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return true while requests are executed sequentially instead of by UDS threads, see
+     * {@link UDSPartitions#enterSequentialExecution()}
+     */
+    public static boolean isSequentialExecution() {
+        return sequentialExecution;
+    }
+
+    static void setSequentialExecution(boolean sequential) {
+        sequentialExecution = sequential;
+        requestedSequentialExecution.set(null);
+    }
+
+    /**
+     * Takes the switch between UDS and sequential execution requested from within a request with
+     * {@link #requestReconfigurationPrimaries(int)}, e.g. by an autoscaler. Must be called by the delivery thread,
+     * at a position in the delivered order at which the requesting request has completed on every replica.
+     *
+     * @return true if sequential execution, false if UDS execution has been requested, null if neither
+     */
+    public static Boolean takeRequestedSequentialExecution() {
+        return requestedSequentialExecution.getAndSet(null);
+    }
+
+    /**
+     * Makes sure that a UDS lock is used by a thread which is not a UDS thread only while requests are executed
+     * sequentially
+     *
+     * @param method the lock method being called, for the error message
+     */
+    static void checkSequentialExecution(String method) {
+        if(!sequentialExecution) {
+            throw new IllegalStateException("{" + Thread.currentThread().getName() + "} " + method + ": called by " +
+                    "a thread which is not a UDS thread, while UDS does not execute requests sequentially");
+        }
+    }
+
+    /**
+     * Waits until the given barrier of this partition has been reached, i.e. all threads added before it have
+     * terminated and the partition is held.
+     */
+    void awaitBarrier(UDSThread barrier) {
+        schedulerLock.lock();
+        try {
+            while(!barrier.isBarrierReached()) {
+                barrierChanged.awaitUninterruptibly();
+            }
+        } finally {
+            schedulerLock.unlock();
+        }
+    }
+
+    /**
+     * Releases a barrier of this partition, so scheduling continues with the threads added after it
+     */
+    void releaseBarrier(UDSThread barrier) {
+        schedulerLock.lock();
+        try {
+            barrier.setBarrierReleased();
+            barrierChanged.signalAll();
+        } finally {
+            schedulerLock.unlock();
+        }
+    }
+
+    /**
+     * Marks a barrier as reached and waits until it is released. Afterwards, the barrier is marked as terminated so
+     * it is pruned from the thread list. Can only be called by startRound().
+     */
+    private void awaitBarrierRelease(UDSThread barrier) {
+        if(logger.isLoggable(Level.FINE)) {
+            logger.fine("{P" + partition + "} startRound(): reached barrier " + barrier.getIdString() +
+                    ", holding partition until it is released");
+        }
+        barrier.setBarrierReached();
+        barrierChanged.signalAll();
+        while(!barrier.isBarrierReleased()) {
+            barrierChanged.awaitUninterruptibly();
+        }
+        barrier.setTerminated(true);
     }
 
     /**
@@ -640,75 +1587,167 @@ public class UDScheduler {
      * @param primaries       The number of primaries that should be used in all following rounds that are started
      * @param stepsPerPrimary The number of steps each primary receives in all following rounds
      */
-    int requestReconfiguration(int primaries, int stepsPerPrimary) {
+    @Override
+    public int requestReconfiguration(int primaries, int stepsPerPrimary) {
         schedulerLock.lock();
-        // TODO implement different total orders (all at once, random, etc)
-        // TODO sanity checks on input parameters (e.g. no prims/steps < 0, etc)
+        try {
+            awaitReconfigurationTurn();
+            return reconfigure(primaries, stepsPerPrimary);
+        } finally {
+            schedulerLock.unlock();
+        }
+    }
 
-        // wait for turn so we stay deterministic when reconfiguring UDS
-        waitForTurn();
+    /**
+     * Waits for the turn of the calling UDS thread, so reconfigurations stay deterministic. During sequential
+     * execution, the delivery thread executes requests itself, so there are no turns to wait for; the requested
+     * configuration is then updated directly and used once UDS executes requests again. Requires the schedulerLock.
+     */
+    private void awaitReconfigurationTurn() {
+        if(sequentialExecution && getCurrentUDSThread() == null) {
+            if(logger.isLoggable(Level.FINE)) {
+                logger.fine("{" + Thread.currentThread().getName() + "} requestConfiguration: called during " +
+                        "sequential execution, updating the requested configuration directly");
+            }
+        } else {
+            waitForTurn();
+        }
+    }
 
+    /**
+     * Sets the requested configuration. Requires the schedulerLock and the turn of the calling thread.
+     *
+     * @return the new number of primaries
+     */
+    private int reconfigure(int primaries, int stepsPerPrimary) {
+        // TODO implement different total orders (all at once, random, etc)
+        // TODO sanity checks on input parameters (e.g. no prims/steps < 0, etc)
         if(logger.isLoggable(Level.WARNING)) {
             logger.warning("{" + Thread.currentThread().getName() + "} requestConfiguration: " +
                     "new UDS configuration requested (" + primaries + " " +
                     "prims, " + stepsPerPrimary + " steps per prim)");
         }
-        try {
-            // set new number of primaries
-            this.requestedUDSConfiguration.setN(primaries);
-
-            // create and set new total order
-            List<Integer> newTotalOrder = new ArrayList<>(primaries * stepsPerPrimary + 1);
-            for(int i = 0; i < stepsPerPrimary; i++) {
-                for(int j = 0; j < primaries; j++) {
-                    newTotalOrder.add(j);
-                }
-            }
-            this.requestedUDSConfiguration.setTotalOrder(newTotalOrder);
-        } finally {
-            schedulerLock.unlock();
-        }
+
+        // set new number of primaries
+        this.requestedUDSConfiguration.setN(primaries);
+
+        // create and set new total order
+        this.requestedUDSConfiguration.setTotalOrder(roundRobinTotalOrder(primaries, stepsPerPrimary));
 
         // return new number of primaries
         return this.requestedUDSConfiguration.getN();
     }
 
+    /**
+     * @return the number of steps per primary of the requested configuration (implicitly encoded in the length of
+     * the total order)
+     */
+    private int requestedStepsPerPrimary() {
+        return requestedUDSConfiguration.getTotalOrder().length / requestedUDSConfiguration.getN();
+    }
+
+    /**
+     * Creates a "round robin" total order, in which each of the primaries takes one step after another
+     */
+    private static int[] roundRobinTotalOrder(int primaries, int stepsPerPrimary) {
+        int[] totalOrder = new int[primaries * stepsPerPrimary];
+        for(int i = 0; i < stepsPerPrimary; i++) {
+            for(int j = 0; j < primaries; j++) {
+                totalOrder[i * primaries + j] = j;
+            }
+        }
+        return totalOrder;
+    }
+
     /**
      * Reconfigure only the primaries, while keeping the steps from the previous configuration.
-     * See
-     * @param primaries
-     * @return
+     *
+     * UDS cannot run with 0 primaries; instead, a switch to sequential execution is requested, and the
+     * configuration is left as it is. Likewise, any other number requested during sequential execution also requests
+     * the switch back to UDS. Both switches are done by the delivery thread, see
+     * {@link #takeRequestedSequentialExecution()}.
+     *
+     * @param primaries the number of primaries, 0 for sequential execution
+     * @return the requested number of primaries
      */
     public int requestReconfigurationPrimaries(int primaries) {
-        // get the current number of steps (implicitly encoded in the length of the total order)
-        int currentSteps = requestedUDSConfiguration.getTotalOrder().size() / requestedUDSConfiguration.getN();
-        // request the new configuration
-        return requestReconfiguration(primaries, currentSteps);
+        schedulerLock.lock();
+        try {
+            // the turn is also waited for to request a switch, so it is requested at the same position on every
+            // replica
+            awaitReconfigurationTurn();
+            if(primaries == 0) {
+                if(logger.isLoggable(Level.WARNING)) {
+                    logger.warning("{" + Thread.currentThread().getName() + "} requestReconfigurationPrimaries: " +
+                            "sequential execution requested");
+                }
+                requestedSequentialExecution.set(Boolean.TRUE);
+                return 0;
+            }
+            if(sequentialExecution) {
+                requestedSequentialExecution.set(Boolean.FALSE);
+            }
+            // keep the steps of the requested configuration
+            return reconfigure(primaries, requestedStepsPerPrimary());
+        } finally {
+            schedulerLock.unlock();
+        }
+    }
+
+    @Override
+    public int requestReconfigurationPrimariesBy(int delta) {
+        schedulerLock.lock();
+        try {
+            awaitReconfigurationTurn();
+            // read at the turn, so every replica changes the same configuration
+            return reconfigure(Math.max(1, requestedUDSConfiguration.getN() + delta), requestedStepsPerPrimary());
+        } finally {
+            schedulerLock.unlock();
+        }
     }
 
     public void requestReconfigurationSteps(int steps) {
-        // get the current number of primaries
-        int currentPrimaries = requestedUDSConfiguration.getN();
-        // request the new configuration
-        requestReconfiguration(currentPrimaries, steps);
+        schedulerLock.lock();
+        try {
+            awaitReconfigurationTurn();
+            // keep the primaries of the requested configuration
+            reconfigure(requestedUDSConfiguration.getN(), steps);
+        } finally {
+            schedulerLock.unlock();
+        }
     }
 
     /**
-     * Create log string with total order
+     * Create log string with the steps left in the total order
      */
     private String totalOrderToString() {
-    	return udsConfiguration.getTotalOrder().stream().map(Object::toString).
-    				collect(Collectors.joining(", ", "[", "] is ")) +
-    		   udsConfiguration.getTotalOrder().stream().map(
-    					(Object o)-> { 	try {
-    										return primaries.get((Integer)o).getIdString();
-    									}
-    									catch (IndexOutOfBoundsException e) {
-    										return "(not yet known)";
-    									}
-    								 }
-    				).
-    				collect(Collectors.joining(", ", "[", "]"));    				
+        int[] totalOrder = udsConfiguration.getTotalOrder();
+        StringBuilder slots = new StringBuilder("[");
+        StringBuilder threadIds = new StringBuilder("[");
+        for(int i = totalOrderHead; i < totalOrder.length; i++) {
+            int slot = totalOrder[i];
+            if(stepsLeft[slot] == 0) {
+                continue;
+            }
+            if(slots.length() > 1) {
+                slots.append(", ");
+                threadIds.append(", ");
+            }
+            slots.append(slot);
+            threadIds.append(slot < primaryCount ? primaries[slot].getIdString() : "(not yet known)");
+        }
+        return slots.append("] is ").append(threadIds).append(']').toString();
+    }
+
+    /**
+     * Create log string with the primaries of the current round
+     */
+    private String primariesToString() {
+        StringBuilder sb = new StringBuilder("[");
+        for(int i = 0; i < primaryCount; i++) {
+            sb.append(i > 0 ? ", " : "").append(primaries[i].getIdString());
+        }
+        return sb.append(']').toString();
     }
 
     /**
@@ -732,6 +1771,19 @@ public class UDScheduler {
         return numberOfThreadsTerminated;
     }
 
+    /**
+     * UDSLocks are not bound to a scheduler, they always use the scheduler of the calling UDS thread
+     */
+    @Override
+    public Lock newLock(int id) {
+        return new UDSLock(id);
+    }
+
+    @Override
+    public ReadWriteLock newReadWriteLock(int id) {
+        return new UDSReadWriteLock(id);
+    }
+
     /**
      * The current configuration of the UDS Scheduler.
      * Should only be changed via reconfigure().
@@ -744,17 +1796,16 @@ public class UDScheduler {
         private int n;
 
         /**
-         * The total order of the current round
+         * The total order of the current round, as primary slots. Never modified once set.
          */
-        private List<Integer> totalOrder;
+        private int[] totalOrder;
 
         /**
          * Create a basic configuration with 1 primary and 1 step
          */
         private UDSConfiguration() {
             this.n = 1;
-            this.totalOrder = new ArrayList<>(2);
-            totalOrder.add(0);
+            this.totalOrder = new int[]{0};
         }
 
         private int getN() {
@@ -765,15 +1816,123 @@ public class UDScheduler {
             this.n = n;
         }
 
-        private List<Integer> getTotalOrder() {
+        private int[] getTotalOrder() {
             return totalOrder;
         }
 
-        private void setTotalOrder(List<Integer> totalOrder) {
+        private void setTotalOrder(int[] totalOrder) {
             this.totalOrder = totalOrder;
         }
     }
 
+    /**
+     * Index-addressable ring buffer holding the ordered thread list. New threads are appended at the tail, terminated
+     * threads are only ever found near the head (among the threads seen by the last round start), so pruning does
+     * not have to scan the whole list. Can only be used when holding the scheduler lock.
+     */
+    private static final class ThreadRing {
+
+        private UDSThread[] buffer;
+
+        /**
+         * Index of the first thread in buffer; buffer.length is always a power of two
+         */
+        private int head;
+
+        private int size;
+
+        private ThreadRing(int initialCapacity) {
+            this.buffer = new UDSThread[Integer.highestOneBit(Math.max(initialCapacity, 2) - 1) << 1];
+        }
+
+        private int size() {
+            return size;
+        }
+
+        private UDSThread get(int i) {
+            return buffer[(head + i) & (buffer.length - 1)];
+        }
+
+        private void set(int i, UDSThread t) {
+            buffer[(head + i) & (buffer.length - 1)] = t;
+        }
+
+        private void add(UDSThread t) {
+            if(size == buffer.length) {
+                UDSThread[] grown = new UDSThread[buffer.length * 2];
+                for(int i = 0; i < size; i++) {
+                    grown[i] = get(i);
+                }
+                buffer = grown;
+                head = 0;
+            }
+            set(size++, t);
+        }
+
+        /**
+         * Inserts a thread at the given index, moving the threads from there on towards the tail
+         */
+        private void insert(int index, UDSThread t) {
+            add(t);
+            for(int i = size - 1; i > index; i--) {
+                set(i, get(i - 1));
+            }
+            set(index, t);
+        }
+
+        /**
+         * @return the index of the given thread, -1 if it is not in the list
+         */
+        private int indexOf(UDSThread t) {
+            for(int i = 0; i < size; i++) {
+                if(get(i) == t) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        /**
+         * Removes all terminated threads among the first count threads, keeping the order of the remaining ones.
+         *
+         * @param count    number of threads at the head of the list to check
+         * @param recycled if not null, removed threads which are not primaries are added to it. Detached threads are
+         *                 left out, since they are still executing
+         * @return the number of removed threads
+         */
+        private int removeTerminated(int count, ArrayDeque<UDSThread> recycled) {
+            count = Math.min(count, size);
+            // move surviving threads towards the end of the checked range, then advance the head past the gap
+            int w = count - 1;
+            for(int r = count - 1; r >= 0; r--) {
+                UDSThread t = get(r);
+                if(t.isTerminated()) {
+                    if(recycled != null && !t.isPrimary() && !t.isDetached()) {
+                        recycled.addFirst(t);
+                    }
+                } else {
+                    set(w--, t);
+                }
+            }
+            int removed = w + 1;
+            for(int i = 0; i < removed; i++) {
+                set(i, null);
+            }
+            head = (head + removed) & (buffer.length - 1);
+            size -= removed;
+            return removed;
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder sb = new StringBuilder("[");
+            for(int i = 0; i < size; i++) {
+                sb.append(i > 0 ? ", " : "").append(get(i).getIdString());
+            }
+            return sb.append(']').toString();
+        }
+    }
+
 
     /**
      * UDS's own thread class to manage UDS threads
@@ -785,17 +1944,23 @@ public class UDScheduler {
         /**
          * Thread ID
          */
-        private final int id;
+        private int id;
 
         /**
          * e.g. for logging purposes
          */
-        private final String idString;
+        private String idString;
+
+        /**
+         * The task of this thread; the same Runnable for every request this UDSThread object is used for
+         */
+        private final Runnable task = this::execute;
 
         /**
-         * The task of this thread
+         * The request to execute and the Runnable sending its reply
          */
-        private Runnable task;
+        private Runnable request;
+        private Runnable replyRunnable;
 
         /**
          * True if thread was already started by UDS
@@ -805,12 +1970,44 @@ public class UDScheduler {
         /**
          * The lock the thread is currently enqueued for waiting for lock acquisition
          */
-        private UDSLock enqueued;
+        private volatile UDSWaitQueue enqueued;
 
         /**
          * True if thread is primary
          */
-        private boolean primary;
+        private volatile boolean primary;
+
+        /**
+         * Index of this thread in the primaries of the current round, -1 if it is not primary
+         */
+        private int primarySlot = -1;
+
+        /**
+         * IDs of the locks this thread declared it will take exclusively, null if unknown
+         */
+        private int[] lockSet;
+
+        /**
+         * True if this thread is a barrier without a task (see addBarrier()), and the state of the barrier
+         */
+        private boolean barrier;
+        private boolean barrierReached;
+        private boolean barrierReleased;
+
+        /**
+         * True if this thread has to run alone in its partition (see addExclusiveRequest())
+         */
+        private boolean exclusive;
+
+        /**
+         * When this primary terminated or used up its steps, for the idle primary metrics
+         */
+        private long idleSince;
+
+        /**
+         * Number of rounds in a row in which this thread was passed over as primary because of conflicting locks
+         */
+        private int skippedRounds;
 
         /**
          * Condition for scheduler's lock to wait until thread becomes primary
@@ -826,27 +2023,68 @@ public class UDScheduler {
          * Condition for being enqueued at a lock
          */
         private final Condition enqueuedCondition;
-        
+
+        /**
+         * The UDSCondition the thread is currently waiting on for a signal, null if it does not wait
+         */
+        private volatile UDSCondition awaitedCondition;
+
+        /**
+         * True if the thread stops waiting on awaitedCondition at the end of the round (timed wait)
+         */
+        private boolean awaitingUntilEndOfRound;
+
+        /**
+         * True if the last wait on a UDSCondition ended because of a signal
+         */
+        private boolean signalled;
+
+        /**
+         * Condition for scheduler's lock to wait until the thread was signalled on a UDSCondition
+         */
+        private final Condition signalCondition;
+
+        /**
+         * The forked task this thread executes, null if it executes a request, see fork()
+         */
+        private UDSTask<?> forkedTask;
+
         /**
          * True if thread has terminated its usual processing, but is not yet removed by UDS
          */
         private boolean terminated;
 
+        /**
+         * True if the thread has left the schedule before terminating, see {@link #detachCurrentThread()}. Such a
+         * thread is marked as terminated for scheduling while it is still executing.
+         */
+        private boolean detached;
+
         /**
          * True if thread has finished its round
          */
-        private boolean finished;
+        private volatile boolean finished;
 
         /**
          * True if thread waits for its turn in the total UDS order
          */
-        private boolean waitingForTurn;
+        private volatile boolean waitingForTurn;
 
         /**
          * Condition for scheduler's lock to wait until it's the thread's turn
          */
         private Condition waitingForTurnCondition;
 
+        /**
+         * Hand-offs the thread waits for, checked by the wait strategy without holding the scheduler lock. Created
+         * once per thread, so waiting does not allocate.
+         */
+        private final BooleanSupplier becamePrimary = () -> primary;
+        private final BooleanSupplier gotTurn = () -> !waitingForTurn;
+        private final BooleanSupplier dequeued = () -> enqueued == null;
+        private final BooleanSupplier stoppedAwaitingSignal = () -> awaitedCondition == null;
+        private final BooleanSupplier nextRoundStarted = () -> !finished;
+
         /**
          * Constructor of UDS threads
          */
@@ -856,6 +2094,7 @@ public class UDScheduler {
             this.started = false;
             this.enqueued = null;
             this.terminated = false;
+            this.detached = false;
             this.finished = false;
             this.waitingForTurn = false;
 
@@ -864,25 +2103,106 @@ public class UDScheduler {
             waitingForTurnCondition = schedulerLock.newCondition();
             admissionCondition = schedulerLock.newCondition();
             enqueuedCondition = schedulerLock.newCondition();
+            signalCondition = schedulerLock.newCondition();
 
             if(logger.isLoggable(Level.FINEST)) {
                 logger.finest( getIdString() + " UDSThread(): was created" );
             }
         }
 
+        /**
+         * Prepares a terminated and pruned UDSThread for being used for a new request. Its Condition objects are
+         * kept. Can only be called when holding the scheduler lock.
+         *
+         * @return this UDSThread
+         */
+        UDSThread reset() {
+            this.id = threadID.getAndIncrement();
+            this.idString = "(T" + id + ")";
+            this.started = false;
+            this.enqueued = null;
+            this.primary = false;
+            this.primarySlot = -1;
+            this.awaitedCondition = null;
+            this.barrier = false;
+            this.barrierReached = false;
+            this.barrierReleased = false;
+            this.exclusive = false;
+            this.forkedTask = null;
+            this.terminated = false;
+            this.finished = false;
+            this.waitingForTurn = false;
+            return this;
+        }
+
         public String getIdString() {
             return idString;
         }
 
+        int getId() {
+            return id;
+        }
+
         boolean isStarted() {
             return started;
         }
 
-        public UDSLock getEnqueued() {
+        private void setStarted() {
+            this.started = true;
+        }
+
+        /**
+         * @return the scheduler (partition) this thread belongs to
+         */
+        UDScheduler getScheduler() {
+            return UDScheduler.this;
+        }
+
+        boolean isBarrier() {
+            return barrier;
+        }
+
+        private long getIdleSince() {
+            return idleSince;
+        }
+
+        private void setIdleSince(long idleSince) {
+            this.idleSince = idleSince;
+        }
+
+        private boolean isExclusive() {
+            return exclusive;
+        }
+
+        private void setExclusive(boolean exclusive) {
+            this.exclusive = exclusive;
+        }
+
+        private void setBarrier(boolean barrier) {
+            this.barrier = barrier;
+        }
+
+        private boolean isBarrierReached() {
+            return barrierReached;
+        }
+
+        private void setBarrierReached() {
+            this.barrierReached = true;
+        }
+
+        private boolean isBarrierReleased() {
+            return barrierReleased;
+        }
+
+        private void setBarrierReleased() {
+            this.barrierReleased = true;
+        }
+
+        UDSWaitQueue getEnqueued() {
             return this.enqueued;
         }
 
-        public void setEnqueued(UDSLock l) {
+        void setEnqueued(UDSWaitQueue l) {
             this.enqueued = l;
         }
 
@@ -890,6 +2210,26 @@ public class UDScheduler {
             return this.primary;
         }
 
+        int getPrimarySlot() {
+            return primarySlot;
+        }
+
+        void setPrimarySlot(int primarySlot) {
+            this.primarySlot = primarySlot;
+        }
+
+        int[] getLockSet() {
+            return lockSet;
+        }
+
+        int getSkippedRounds() {
+            return skippedRounds;
+        }
+
+        void setSkippedRounds(int skippedRounds) {
+            this.skippedRounds = skippedRounds;
+        }
+
         void setPrimary(boolean primary) {
         	boolean oldPrimary= this.primary;
             this.primary = primary;
@@ -910,6 +2250,7 @@ public class UDScheduler {
             if(logger.isLoggable(Level.FINER)) {
                 logger.finer(getIdString() + " waitForPrimary()");
             }
+            waitStrategy.spin(schedulerLock, becamePrimary);
             while(!primary) {
                 try {
                     isPrimaryCondition.await();
@@ -931,6 +2272,7 @@ public class UDScheduler {
             if(logger.isLoggable(Level.FINER)) {
                 logger.finer("{" + Thread.currentThread().getName() + "} awaitAdmission(): waits for admission of thread " + getIdString());
             }
+            long waitStart = metrics != null ? System.nanoTime() : 0;
            	while(true) {
            		try {
            			admissionCondition.await();
@@ -940,6 +2282,9 @@ public class UDScheduler {
 						"} awaitAdmission(): was interrupted, re-waiting for admission");
            		}
            	}
+            if(metrics != null) {
+                metrics.admissionWaited(System.nanoTime() - waitStart);
+            }
             if(logger.isLoggable(Level.FINER)) {
                 logger.finer("{" + Thread.currentThread().getName() + "} awaitAdmission: thread " + getIdString() +
                         " admitted");
@@ -952,6 +2297,10 @@ public class UDScheduler {
         void awaitDequeueing() {
             if(logger.isLoggable(Level.FINER)) {
                 logger.finer(getIdString() + " awaitDequeueing(): waits for dequeueing");
+            }
+            waitStrategy.spin(schedulerLock, dequeued);
+            if(enqueued == null) {
+                return;
             }
            	while(true) {
         		try {
@@ -977,6 +2326,70 @@ public class UDScheduler {
             }      	
         }
 
+        boolean isAwaitingSignal() {
+            return this.awaitedCondition != null;
+        }
+
+        /**
+         * Marks this thread as waiting on a UDSCondition. Can only be called when holding the scheduler lock.
+         */
+        void setAwaitedCondition(UDSCondition condition, boolean untilEndOfRound) {
+            this.awaitedCondition = condition;
+            this.awaitingUntilEndOfRound = untilEndOfRound;
+            this.signalled = false;
+        }
+
+        /**
+         * Wait until this thread stops waiting on its UDSCondition. Can only be called when holding the scheduler
+         * lock.
+         *
+         * @return true if the thread was signalled, false if its timed wait ended with the round
+         */
+        boolean awaitSignal() {
+            waitStrategy.spin(schedulerLock, stoppedAwaitingSignal);
+            while(awaitedCondition != null) {
+                try {
+                    signalCondition.await();
+                } catch(InterruptedException e) {
+                    logger.finest(getIdString() + " awaitSignal(): was interrupted, re-waiting for signal");
+                }
+            }
+            return signalled;
+        }
+
+        /**
+         * Ends this thread's wait on its UDSCondition. Can only be called when holding the scheduler lock.
+         *
+         * @param signalled true if the thread was signalled, false if its wait timed out
+         */
+        void signalAwaitedCondition(boolean signalled) {
+            this.signalled = signalled;
+            this.awaitedCondition = null;
+            signalCondition.signal();
+        }
+
+        /**
+         * Ends a timed wait on a UDSCondition at the end of the round. Can only be called when holding the scheduler
+         * lock.
+         */
+        void endTimedWait() {
+            if(awaitedCondition != null && awaitingUntilEndOfRound) {
+                if(logger.isLoggable(Level.FINER)) {
+                    logger.finer(getIdString() + " endTimedWait(): stops waiting on its condition");
+                }
+                awaitedCondition.removeWaitingThread(this);
+                signalAwaitedCondition(false);
+            }
+        }
+
+        UDSTask<?> getForkedTask() {
+            return forkedTask;
+        }
+
+        private void setForkedTask(UDSTask<?> task) {
+            this.forkedTask = task;
+        }
+
         boolean isTerminated() {
             return this.terminated;
         }
@@ -985,6 +2398,14 @@ public class UDScheduler {
             this.terminated = terminated;
         }
 
+        boolean isDetached() {
+            return detached;
+        }
+
+        private void setDetached(boolean detached) {
+            this.detached = detached;
+        }
+
         public boolean isFinished() {
             return this.finished;
         }
@@ -1014,6 +2435,7 @@ public class UDScheduler {
          * This method can only be called when holding the scheduler lock
          */
         void awaitTurn() {
+            waitStrategy.spin(schedulerLock, gotTurn);
             while(waitingForTurn) {
                 try {
                     waitingForTurnCondition.await();
@@ -1027,10 +2449,12 @@ public class UDScheduler {
         @Override
         public String toString() {
             return "Thread " + getIdString() + ": " +
+                    (isBarrier() ? (barrierReached ? "reached barrier, " : "barrier, ") : "") +
                     (isPrimary() ? "primary" : "not primary") + ", " +
                     (isTerminated() ? "terminated " : (
                     		(isFinished() ? "finished round" : "") + 
                     		(enqueued!=null ? "is enqueued" : "") +
+                    		(awaitedCondition!=null ? "awaits signal" : "") +
                     		(isWaitingForTurn() ? "waits for turn" : "running") ) );
         }
 
@@ -1039,23 +2463,36 @@ public class UDScheduler {
          *
          * @param r the task to run
          */
-        void initTask(Runnable r, Runnable replyRunnable) {
-            task = () -> {
-                try {
-                    currentUDSThread.set(this);
-                    r.run();
-                    udsThreadPool.submit(replyRunnable);
-                } finally {
-                    UDScheduler.getInstance().terminateThread(this);
+        void initTask(Runnable r, Runnable replyRunnable, int[] lockSet) {
+            this.request = r;
+            this.replyRunnable = replyRunnable;
+            this.lockSet = lockSet;
+            this.skippedRounds = 0;
+        }
+
+        private void execute() {
+            Runnable r = request;
+            Runnable reply = replyRunnable;
+            // drop references before terminating, this object may be reused right afterwards
+            request = null;
+            replyRunnable = null;
+            try {
+                currentUDSThread.set(this);
+                r.run();
+                // forked threads have nothing to reply
+                if(reply != null) {
+                    replyThreadPool.execute(reply);
                 }
-            };
+            } finally {
+                terminateThread(this);
+            }
         }
 
         /**
          * Start the UDS thread
          */
         public void start() {
-            udsThreadPool.submit(task);
+            udsThreadPool.execute(task);
             started = true;
         }
     }
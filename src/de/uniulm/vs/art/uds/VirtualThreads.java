@@ -0,0 +1,42 @@
+package de.uniulm.vs.art.uds;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Access to JDK virtual threads (Java 21+) via reflection, so the code base can still be compiled for and run on
+ * older JVMs.
+ */
+final class VirtualThreads {
+
+    /**
+     * Not instantiable.
+     */
+    private VirtualThreads() {
+    }
+
+    /**
+     * @return true if the running JVM supports virtual threads
+     */
+    static boolean isSupported() {
+        try {
+            Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return true;
+        } catch(NoSuchMethodException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Creates an executor that runs every task on a new virtual thread.
+     *
+     * @return the executor, or null if the running JVM does not support virtual threads
+     */
+    static ExecutorService newVirtualThreadPerTaskExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch(ReflectiveOperationException e) {
+            return null;
+        }
+    }
+}